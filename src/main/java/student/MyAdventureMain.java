@@ -4,11 +4,18 @@ import org.glassfish.grizzly.http.server.HttpServer;
 import student.adventure.GameEngine;
 import student.server.AdventureResource;
 
+import static student.server.AdventureServer.createBinaryServer;
 import static student.server.AdventureServer.createServer;
 
 public class MyAdventureMain {
     // The flag to determine whether run game locally. Set to false will result in run game in server.
     private static final boolean RUN_LOCALLY = true;
+    // The SQLite file keeping the results of finished games, when -Dadventure.results.db is not set
+    private static final String RESULTS_DB = "adventure-results.db";
+    // The directory of the command journal, when -Dadventure.journal.dir is not set
+    private static final String JOURNAL_DIR = "adventure-journal";
+    // The port of the binary protocol listener started with the server, none if not set (-Dadventure.binary.port)
+    private static final Integer BINARY_PORT = Integer.getInteger("adventure.binary.port");
 
     /**
      * This method launches and starts the game.
@@ -18,8 +25,19 @@ public class MyAdventureMain {
         if (RUN_LOCALLY) {
             game.runGameTerminal("game.json");
         } else {
+            // The server keeps the results of finished games unless another file is given
+            if (System.getProperty("adventure.results.db") == null) {
+                System.setProperty("adventure.results.db", RESULTS_DB);
+            }
+            // The games are rebuilt from the journal after a restart
+            if (System.getProperty("adventure.journal.dir") == null) {
+                System.setProperty("adventure.journal.dir", JOURNAL_DIR);
+            }
             HttpServer httpServer = createServer(AdventureResource.class);
             httpServer.start();
+            if (BINARY_PORT != null) {
+                createBinaryServer(BINARY_PORT).start();
+            }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,25 @@
+package student.adventure;
+
+/**
+ * Thrown when a command of a batch fails after the commands before it were applied to the game.
+ * Those commands stay applied, and the status and version of the game already include them.
+ */
+public class BatchCommandException extends RuntimeException {
+    private final int applied;
+
+    /**
+     * @param applied The number of commands of the batch applied before the failure
+     * @param cause What the failing command threw
+     */
+    public BatchCommandException(int applied, RuntimeException cause) {
+        super("Batch failed after " + applied + " commands: " + cause.getMessage(), cause);
+        this.applied = applied;
+    }
+
+    /**
+     * @return The number of commands of the batch applied before the failure.
+     */
+    public int getApplied() {
+        return applied;
+    }
+}
@@ -0,0 +1,300 @@
+package student.adventure;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntPredicate;
+
+/**
+ * Keeps idle game instances off the heap, in fixed size slots of a memory mapped file, so a server with
+ * millions of mostly idle instances only keeps the recently used ones as objects. The file is mapped in
+ * regions added as slots run out, and freed slots are reused. Slots are found by id in a primitive open
+ * addressing index, so an idle instance costs two ints on the heap. The file only lives as long as the
+ * store: durability is the job of the journal and snapshots. This class is not thread safe.
+ */
+public class ColdSessionStore {
+    private static final int INITIAL_INDEX = 16;
+    private final FileChannel channel;
+    private final int slotBytes;
+    private final int slotsPerRegion;
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+    // The index from id to slot, a slot of -1 marks an empty entry
+    private int[] indexIds = new int[INITIAL_INDEX];
+    private int[] indexSlots = new int[INITIAL_INDEX];
+    private int size;
+    private int[] freeSlots = new int[0];
+    private int freeCount;
+    private long promotions;
+    private long demotions;
+    private long rejected;
+
+    /**
+     * @param directory The directory of the file, which is deleted when the store is closed
+     * @param slotBytes The size of a slot, instances needing more stay on the heap
+     * @param regionBytes The size of each mapped region of the file
+     */
+    public ColdSessionStore(Path directory, int slotBytes, int regionBytes) throws IOException {
+        if (slotBytes <= 8 || regionBytes < slotBytes) {
+            throw new IllegalArgumentException("A region must hold at least one slot of more than 8 bytes");
+        }
+        this.slotBytes = slotBytes;
+        this.slotsPerRegion = regionBytes / slotBytes;
+        Files.createDirectories(directory);
+        Path file = Files.createTempFile(directory, "sessions-", ".cold");
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        Arrays.fill(indexSlots, -1);
+    }
+
+    private static int hash(int id) {
+        int h = id * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private int indexOf(int id) {
+        int mask = indexIds.length - 1;
+        for (int entry = hash(id) & mask; indexSlots[entry] >= 0; entry = (entry + 1) & mask) {
+            if (indexIds[entry] == id) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Whether an instance is in the store.
+     */
+    public boolean contains(int id) {
+        return indexOf(id) >= 0;
+    }
+
+    /**
+     * This method is used to get a free slot for an instance being moved off the heap.
+     * @param id The id of the instance, which must not be in the store
+     * @return The slot, from its start to its end, to be written
+     */
+    ByteBuffer claim(int id) throws IOException {
+        if (freeCount == 0) {
+            addRegion();
+        }
+        int slot = freeSlots[--freeCount];
+        if ((size + 1) * 4L > indexIds.length * 3L) {
+            resizeIndex(indexIds.length * 2);
+        }
+        put(id, slot);
+        size++;
+        demotions++;
+        return view(slot);
+    }
+
+    private void addRegion() throws IOException {
+        long offset = (long) regions.size() * slotsPerRegion * slotBytes;
+        regions.add(channel.map(FileChannel.MapMode.READ_WRITE, offset, (long) slotsPerRegion * slotBytes));
+        int first = (regions.size() - 1) * slotsPerRegion;
+        // Room for every slot of the file, all of them may be freed
+        freeSlots = Arrays.copyOf(freeSlots, regions.size() * slotsPerRegion);
+        // The lowest slots are handed out first
+        for (int i = 0; i < slotsPerRegion; i++) {
+            freeSlots[freeCount++] = first + slotsPerRegion - 1 - i;
+        }
+    }
+
+    private void put(int id, int slot) {
+        int mask = indexIds.length - 1;
+        int entry = hash(id) & mask;
+        while (indexSlots[entry] >= 0) {
+            entry = (entry + 1) & mask;
+        }
+        indexIds[entry] = id;
+        indexSlots[entry] = slot;
+    }
+
+    private void resizeIndex(int capacity) {
+        int[] oldIds = indexIds;
+        int[] oldSlots = indexSlots;
+        indexIds = new int[capacity];
+        indexSlots = new int[capacity];
+        Arrays.fill(indexSlots, -1);
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldSlots[i] >= 0) {
+                put(oldIds[i], oldSlots[i]);
+            }
+        }
+    }
+
+    private ByteBuffer view(int slot) {
+        ByteBuffer view = regions.get(slot / slotsPerRegion).duplicate();
+        int start = (slot % slotsPerRegion) * slotBytes;
+        view.limit(start + slotBytes).position(start);
+        return view.slice();
+    }
+
+    /**
+     * This method is used to read the slot of an instance, which stays in the store.
+     * @param id The id of the instance
+     * @return The slot from its start, or null if the instance is not in the store
+     */
+    ByteBuffer find(int id) {
+        int entry = indexOf(id);
+        return entry < 0 ? null : view(indexSlots[entry]);
+    }
+
+    /**
+     * This method is used to take an instance back to the heap. Its slot is freed, but stays as it is
+     * until the next claim, so it can be read right after.
+     * @param id The id of the instance
+     * @return The slot from its start, or null if the instance is not in the store
+     */
+    ByteBuffer take(int id) {
+        ByteBuffer view = find(id);
+        if (view != null) {
+            remove(id);
+            promotions++;
+        }
+        return view;
+    }
+
+    /**
+     * This method is used to drop an instance, such as an ended game.
+     * @param id The id of the instance
+     * @return false if the instance is not in the store
+     */
+    public boolean remove(int id) {
+        int entry = indexOf(id);
+        if (entry < 0) {
+            return false;
+        }
+        freeSlots[freeCount++] = indexSlots[entry];
+        // Shift back the following entries of the probe sequence so that lookups never stop at a hole
+        int mask = indexIds.length - 1;
+        int hole = entry;
+        for (int next = (hole + 1) & mask; indexSlots[next] >= 0; next = (next + 1) & mask) {
+            int home = hash(indexIds[next]) & mask;
+            boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+            if (movable) {
+                indexIds[hole] = indexIds[next];
+                indexSlots[hole] = indexSlots[next];
+                hole = next;
+            }
+        }
+        indexSlots[hole] = -1;
+        size--;
+        return true;
+    }
+
+    /**
+     * This method is used to drop every instance whose id matches.
+     * @param filter Tells the ids to drop
+     * @return The number of instances dropped
+     */
+    public int removeIf(IntPredicate filter) {
+        int[] ids = ids();
+        int removed = 0;
+        for (int id : ids) {
+            if (filter.test(id) && remove(id)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * This method is used to pick a few instances from a random place of the index, to choose one to drop.
+     * @param count The most ids to pick
+     * @return The ids picked, fewer if the store holds fewer instances
+     */
+    public int[] sample(int count) {
+        int[] ids = new int[Math.min(count, size)];
+        int entry = ThreadLocalRandom.current().nextInt(indexIds.length);
+        for (int picked = 0; picked < ids.length; entry = (entry + 1) & (indexIds.length - 1)) {
+            if (indexSlots[entry] >= 0) {
+                ids[picked++] = indexIds[entry];
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return The ids of every instance in the store, in no order.
+     */
+    public int[] ids() {
+        int[] ids = new int[size];
+        int count = 0;
+        for (int entry = 0; entry < indexIds.length; entry++) {
+            if (indexSlots[entry] >= 0) {
+                ids[count++] = indexIds[entry];
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * This method is used to count an instance left on the heap because it did not fit in a slot.
+     */
+    void rejected() {
+        rejected++;
+    }
+
+    /**
+     * @return The number of instances in the store.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The size of a slot, the most bytes an instance may take in the store.
+     */
+    public int getSlotBytes() {
+        return slotBytes;
+    }
+
+    /**
+     * @return The number of instances taken back to the heap.
+     */
+    public long getPromotions() {
+        return promotions;
+    }
+
+    /**
+     * @return The number of instances moved off the heap.
+     */
+    public long getDemotions() {
+        return demotions;
+    }
+
+    /**
+     * @return The number of instances left on the heap because they did not fit in a slot.
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return The bytes of the file mapped so far.
+     */
+    public long getMappedBytes() {
+        return (long) regions.size() * slotsPerRegion * slotBytes;
+    }
+
+    /**
+     * This method is used to close and delete the file. The mapped regions are released by the garbage
+     * collector once nothing refers to them.
+     */
+    public void close() throws IOException {
+        // Instances are forgotten, so a late lookup finds nothing instead of an unmapped region
+        Arrays.fill(indexSlots, -1);
+        regions.clear();
+        size = 0;
+        freeCount = 0;
+        channel.close();
+    }
+}
@@ -0,0 +1,15 @@
+package student.adventure;
+
+/**
+ * Told when a player of the server reaches the ending room of the layout, once per game.
+ * It is called on the thread running the command, while the engine is in use.
+ */
+public interface CompletionListener {
+    /**
+     * @param id The id of the game
+     * @param moves The number of moves taken to get there
+     * @param items The number of items held when getting there
+     * @param elapsedMillis The wall clock time since the game started
+     */
+    void runCompleted(int id, long moves, int items, long elapsedMillis);
+}
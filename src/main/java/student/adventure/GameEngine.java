@@ -1,35 +1,51 @@
 package student.adventure;
 
-import java.io.File;
-import org.apache.commons.io.FileUtils;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import student.server.AdventureState;
 import student.server.Command;
 import student.server.GameStatus;
+import student.server.StatusFragment;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.StringJoiner;
 import java.util.stream.Collectors;
 
 public class GameEngine {
     private final int GO_PREFIX = 3;
     private final int TAKE_PREFIX = 5;
+    // Layouts are shared by all engines so that starting a game does not parse the json file again
+    private static final LayoutCache SHARED_LAYOUT_CACHE = new LayoutCache();
+    private final LayoutCache layoutCache;
     // Only setting runLocalFlag to true will result in print out the comments in terminal
     private boolean runLocalFlag = false;
     private Map<String, Room> roomsMap = new HashMap<>();
+    // The rooms of the current layout indexed by their id in the room graph, used when running in terminal
+    private Room[] roomsById = new Room[0];
+    private Layout currentLayout;
+    // The file of the current layout, or null if it was set directly
+    private String currentLayoutFile;
+    // The read only world shared by all the players in server
+    private RoomGraph graph;
+    // The pre-encoded static part of the statuses of each room of the graph, built when first shown
+    private StatusFragment[] fragments = new StatusFragment[0];
     // Record the items picked by the player in terminal
     private List<String> itemsCollected;
-    // Record the items picked by the multiple players by ID in server
-    private Map<Integer, List<String>> playerItemsCollected = new HashMap<>();
-    // Record multiple players' position by ID in server
-    private Map<Integer, Room> playerPosition = new HashMap<>();
-    // Record history traversal of each player
-    private Map<Integer, List<String>> playerTraversalHistory = new HashMap<>();
+    // Record each player's position (room id in the room graph), items picked, changes to the items of
+    // the shared rooms, traversal history and latest status by ID in server
+    private final SessionTable sessions = new SessionTable();
+    // Told when a player reaches the ending room, or null
+    private CompletionListener completionListener;
+    // Holds the games moved off the heap while idle, or null to keep every game on the heap
+    private ColdSessionStore coldStore;
+    // The most history entries kept per player in server, 0 for no limit; older entries are dropped
+    private int historyLimit = 10000;
+    // Whether repeated visits to the same room share one history entry
+    private boolean historyRunLength = true;
     private List<String> traversalHistory = new ArrayList<>();
     private final String imageURL  = "https://www.ft.com/__origami/service/image/v2/images/raw/https%253A%252F%252Fs3-ap-" +
             "northeast-1.amazonaws.com%252Fpsh-ex-ftnikkei-3937bb4%252Fimages%252F7%252F3%252F4%252F1%252F30221" +
@@ -38,36 +54,52 @@ public class GameEngine {
             "20201027010904_Data.jpg?width=700&fit=cover&gravity=faces&dpr=2&quality=medium&source=nar-cms";
 
     public GameEngine() {
+        this(SHARED_LAYOUT_CACHE);
+    }
+
+    public GameEngine(LayoutCache layoutCache) {
+        this.layoutCache = layoutCache;
         itemsCollected = new ArrayList<>();
     }
 
     /**
      * This method is used to load json file into the class objects.
+     * The file is only read and parsed when it is not in the layout cache or has changed on disk.
      * @param jsonName A string represents name of the input json file
      * @return A Layout variable parse from json showing the map of this adventure game.
      * @throws IOException throws exception for reading json file
      */
     public Layout loadJson(String jsonName) throws IOException {
-        Gson gson = new GsonBuilder().create();
-        File file = new File(jsonName);
-        String content = FileUtils.readFileToString(file);
-        Layout layout = gson.fromJson(content, Layout.class);
-        // Check null and invalid map including missing start / ending / room
-        gameValidity(layout);
+        Layout layout = layoutCache.get(jsonName);
         setMapLayout(layout);
+        currentLayoutFile = jsonName;
         return layout;
     }
 
     /**
      * This method is used to convert layout game map into a map of rooms with key(String: room name).
+     * The rooms are copied so that taking and dropping items never changes the cached layout.
      * @param layoutInput A Layout variable parses from json showing the map of this adventure game.
      * @return The map with room name as key and room object as value.
+     * @throws IllegalStateException If games in server still use another layout
      */
     public Map<String, Room> setMapLayout(Layout layoutInput) {
+        if (layoutInput != currentLayout && getSessionCount() > 0) {
+            throw new IllegalStateException("The layout cannot change while games in server use it");
+        }
+        if (layoutInput != currentLayout) {
+            this.currentLayoutFile = null;
+        }
         Room[] roomArray = layoutInput.getRooms();
+        this.currentLayout = layoutInput;
+        this.graph = layoutInput.getGraph();
+        this.fragments = new StatusFragment[graph.getRoomCount()];
+        this.roomsById = new Room[roomArray.length];
         this.roomsMap = new HashMap<>();
-        for (Room room:roomArray) {
-            this.roomsMap.put(room.getName(), room);
+        // The layout already returns copies, so items taken in this engine never change the shared layout
+        for (int i = 0; i < roomArray.length; i++) {
+            this.roomsById[i] = roomArray[i];
+            this.roomsMap.put(roomArray[i].getName(), this.roomsById[i]);
         }
         return this.roomsMap;
     }
@@ -80,35 +112,93 @@ public class GameEngine {
      * @throws Exception Throw adventure exceptions
      */
     public GameStatus startGame(String inputFile, int currentId) throws Exception {
-        Layout layout = loadJson(inputFile);
-        Room startRoom = roomsMap.get(layout.getStartingRoom());
-        AdventureState currentState = new AdventureState();
-        GameStatus currentGame = new GameStatus(false, currentId, startRoom.getDescription(),
-                imageURL, null, currentState, getCommandOptions(startRoom, currentId));
-        playerPosition.put(currentId, startRoom);
-        List<String> traversed = new ArrayList<>();
-        traversed.add(startRoom.getName());
-        playerTraversalHistory.put(currentId, traversed);
+        useLayout(inputFile);
+        int slot = startSession(currentId);
+        GameStatus currentGame = buildStatus(slot, currentId, false);
+        sessions.setStatus(slot, currentGame);
         return currentGame;
     }
 
+    /**
+     * This method is called by MyAdventureService for starting many games at once. The layout is looked
+     * up once, and the status of each game is only built when it is first asked for.
+     * @param inputFile A string represents name of the input json file
+     * @param firstId The id of the first game
+     * @param count The number of games
+     * @param stride The difference between the ids of consecutive games
+     * @throws Exception Throw adventure exceptions
+     */
+    public void startGames(String inputFile, int firstId, int count, int stride) throws Exception {
+        useLayout(inputFile);
+        sessions.ensureCapacity(sessions.size() + count);
+        for (int i = 0; i < count; i++) {
+            startSession(firstId + i * stride);
+        }
+    }
+
+    private void useLayout(String inputFile) throws IOException {
+        Layout layout = layoutCache.get(inputFile);
+        if (layout == currentLayout) {
+            return;
+        }
+        // Games hold room and item ids of the layout they started in, so the layout stays until they
+        // are all gone. A change of the file on disk is picked up by the games started after that.
+        if (getSessionCount() > 0) {
+            if (inputFile.equals(currentLayoutFile)) {
+                return;
+            }
+            throw new IllegalStateException("The games in server use " + currentLayoutFile + ", not " + inputFile);
+        }
+        // Players share the read only world, so the rooms are only rebuilt when the layout changes
+        setMapLayout(layout);
+        currentLayoutFile = inputFile;
+    }
+
+    // Put a player in the starting room with nothing changed, without building a status
+    private int startSession(int currentId) {
+        int startPosition = graph.getStartingRoom();
+        int slot = sessions.insert(currentId);
+        sessions.setRoomItems(slot, ItemOverlay.EMPTY);
+        sessions.setInventory(slot, null);
+        sessions.setPosition(slot, startPosition);
+        TraversalHistory traversed = new TraversalHistory(historyLimit, historyRunLength);
+        traversed.add(startPosition);
+        sessions.setHistory(slot, traversed);
+        sessions.setStatus(slot, null);
+        sessions.setVersion(slot, 0);
+        sessions.setStartTime(slot, System.currentTimeMillis());
+        return slot;
+    }
+
+    // The latest status of a player, built from the current state if none was built yet
+    private GameStatus statusOf(int slot) {
+        GameStatus status = sessions.getStatus(slot);
+        if (status == null) {
+            status = buildStatus(slot, sessions.getId(slot), false);
+            sessions.setStatus(slot, status);
+        }
+        return status;
+    }
+
     /**
      * This method is used to create map for all the commands of current status.
-     * @param currentRoom The room where the player stay
-     * @param playerID The playerId who send this command
+     * @param currentPosition The id of the room where the player stay
+     * @param slot The slot of the player in the session table
      * @return Map of all possible commands
      */
-    private Map<String, List<String>> getCommandOptions(Room currentRoom, int playerID) {
+    private Map<String, List<String>> getCommandOptions(int currentPosition, int slot) {
         Map<String, List<String>> allCommands = new HashMap<>();
-        List<String> goList = currentRoom.getDirections();
+        List<String> goList = graph.getDirectionNames(currentPosition);
         allCommands.put("go", goList);
-        List<String> itemList = currentRoom.getItems();
+        // Item lists are only built here, from the item ids, when the status is sent
+        List<String> itemList = sessions.getRoomItems(slot).apply(graph, currentPosition);
         allCommands.put("take", itemList);
         List<String> examineList = new ArrayList<>();
         examineList.add("");
         allCommands.put("examine", examineList);
         allCommands.put("view history", examineList);
-        allCommands.put("drop", playerItemsCollected.get(playerID));
+        Inventory inventory = sessions.getInventory(slot);
+        allCommands.put("drop", inventory == null ? null : inventory.toNames(graph));
         return allCommands;
     }
 
@@ -119,43 +209,449 @@ public class GameEngine {
      * @return The game status after current command
      */
     public GameStatus runGameServer(GameStatus currentGame, Command currentCommand) {
-        String convertedCommand;
         int currentId = currentGame.getId();
-        Room currentRoom = playerPosition.get(currentGame.getId());
-        AdventureState newState = new AdventureState();
-        if (currentCommand.getCommandName().equals("examine")) {
-            convertedCommand = "examine";
-        } else {
-            // Convert the input command from web to the one that can be accepted by functions for terminal.
-            convertedCommand = currentCommand.getCommandName() + " " + currentCommand.getCommandValue();
+        // The session is looked up once, then read and written by slot
+        int slot = findSession(currentId);
+        if (slot < 0) {
+            throw new IllegalArgumentException("No game found with id " + currentId);
         }
+        GameStatus newStatus = runCommand(slot, currentId, currentCommand);
+        sessions.setStatus(slot, newStatus);
+        sessions.setVersion(slot, sessions.getVersion(slot) + 1);
+        return newStatus;
+    }
+
+    /**
+     * This method is used to find the first command of a batch that cannot be run.
+     * @param commands The commands of the batch
+     * @return The index of the first command that is null or has no name, or -1 if all can be run
+     */
+    public static int findInvalidCommand(List<Command> commands) {
+        for (int i = 0; i < commands.size(); i++) {
+            Command command = commands.get(i);
+            if (command == null || command.getCommandName() == null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * This method is used to run several commands of one game in server, in order. The game is looked
+     * up once and only the status after the last command is built. Every command is checked before
+     * any is run, so an invalid batch leaves the game as it was.
+     * @param id The id of the game
+     * @param commands The commands sent from service by player
+     * @param stepRooms If not null, gets the name of the room the player is in after each command
+     * @return The game status after the last command, or null if there is no such game
+     * @throws IllegalArgumentException If a command is null or has no name, before anything is run
+     * @throws BatchCommandException If a command fails after others were run. The status and version
+     *         of the game then include the commands run before it.
+     */
+    public GameStatus runGameServer(int id, List<Command> commands, List<String> stepRooms) {
+        int invalid = findInvalidCommand(commands);
+        if (invalid >= 0) {
+            throw new IllegalArgumentException("Command " + invalid + " of the batch has no name");
+        }
+        int slot = findSession(id);
+        if (slot < 0) {
+            return null;
+        }
+        if (commands.isEmpty()) {
+            return statusOf(slot);
+        }
+        int applied = 0;
+        try {
+            for (Command command : commands) {
+                long elapsed = applyCommand(slot, command);
+                applied++;
+                if (stepRooms != null) {
+                    stepRooms.add(graph.getName(sessions.getPosition(slot)));
+                }
+                if (elapsed >= 0) {
+                    finishRun(slot, elapsed);
+                }
+            }
+        } catch (RuntimeException exception) {
+            if (applied > 0) {
+                // The cached status is built again from the game as it is now
+                sessions.setStatus(slot, null);
+                sessions.setVersion(slot, sessions.getVersion(slot) + 1);
+            }
+            throw new BatchCommandException(applied, exception);
+        }
+        GameStatus newStatus = buildStatus(slot, id, isHistory(commands.get(commands.size() - 1)));
+        sessions.setStatus(slot, newStatus);
+        sessions.setVersion(slot, sessions.getVersion(slot) + 1);
+        return newStatus;
+    }
+
+    private GameStatus runCommand(int slot, int currentId, Command currentCommand) {
+        long elapsed = applyCommand(slot, currentCommand);
+        if (elapsed >= 0) {
+            finishRun(slot, elapsed);
+        }
+        return buildStatus(slot, currentId, isHistory(currentCommand));
+    }
+
+    // Change the position, history and items of the player for a command, without building a status.
+    // Returns the time the game took if the command ended it for the first time, or -1.
+    private long applyCommand(int slot, Command currentCommand) {
+        int currentPosition = sessions.getPosition(slot);
         if (currentCommand.getCommandName().equals("go")) {
-            Room newRoom = goGame(currentRoom.getName(), convertedCommand);
-            GameStatus newStatus = new GameStatus(false, currentId, newRoom.getDescription(),
-                    imageURL, null, newState, getCommandOptions(newRoom, currentId));
-            playerPosition.put(currentId, newRoom);
+            int newPosition = goGame(currentPosition, currentCommand.getCommandValue());
+            sessions.setPosition(slot, newPosition);
             // Update current room to the player history
-            List<String> traversed = playerTraversalHistory.get(currentId);
-            traversed.add(newRoom.getName());
-            playerTraversalHistory.put(currentId, traversed);
-            return newStatus;
-        } else if (currentCommand.getCommandName().equals("view history")) {
-            // Customized function. Print all traversed history
-            String description =  playerTraversalHistory.get(currentId).stream().map(n -> String.valueOf(n))
-                    .collect(Collectors.joining("->", "Your traversed history is: {", "}"));
-            return new GameStatus(false, currentId, description,
-                    null, null, newState, getCommandOptions(currentRoom, currentId));
+            sessions.getHistory(slot).add(newPosition);
+            if (newPosition == graph.getEndingRoom() && sessions.getStartTime(slot) != 0) {
+                long elapsed = Math.max(0, System.currentTimeMillis() - sessions.getStartTime(slot));
+                sessions.setStartTime(slot, 0);
+                return elapsed;
+            }
         } else if (currentCommand.getCommandName().equals("take") || currentCommand.getCommandName().equals("drop")) {
+            // Convert the input command from web to the one that can be accepted by functions for terminal.
+            String convertedCommand = currentCommand.getCommandName() + " " + currentCommand.getCommandValue();
             // Run wrapper of take/drop function to get update on player item list.
-            checkOperateItemForWeb(currentRoom, convertedCommand, currentId);
-            playerPosition.put(currentGame.getId(), currentRoom);
-            return new GameStatus(false, currentId, currentRoom.getDescription(),
-                    imageURL, null, newState, getCommandOptions(currentRoom, currentId));
-        } else {
-            // Case for examine, print current room information even has view history as last stage.
-            return new GameStatus(false, currentId, currentRoom.getDescription(),
-                    imageURL, null, newState, getCommandOptions(currentRoom, currentId));
+            checkOperateItemForWeb(slot, currentPosition, convertedCommand);
+        }
+        return -1;
+    }
+
+    // Score a game that reached the ending room, once its command is applied
+    private void finishRun(int slot, long elapsed) {
+        if (completionListener == null) {
+            return;
+        }
+        Inventory inventory = sessions.getInventory(slot);
+        // The starting room is the first visit of the history, and visits dropped over its limit still count
+        TraversalHistory history = sessions.getHistory(slot);
+        completionListener.runCompleted(sessions.getId(slot), history.size() + history.getDroppedVisits() - 1,
+                inventory == null ? 0 : inventory.size(), elapsed);
+    }
+
+    private static boolean isHistory(Command command) {
+        return command.getCommandName().equals("view history");
+    }
+
+    // Build the status shown after a command, describing the history instead of the room if asked
+    private GameStatus buildStatus(int slot, int currentId, boolean showHistory) {
+        int currentPosition = sessions.getPosition(slot);
+        AdventureState newState = new AdventureState();
+        if (showHistory) {
+            // Customized function. Print all traversed history
+            String description = describeHistory(sessions.getHistory(slot));
+            return new GameStatus(false, currentId, description,
+                    null, null, newState, getCommandOptions(currentPosition, slot));
+        }
+        // Case for go, take, drop and examine, print current room information even has view history as last stage.
+        GameStatus status = new GameStatus(false, currentId, graph.getDescription(currentPosition),
+                imageURL, null, newState, getCommandOptions(currentPosition, slot));
+        status.setFragment(fragmentOf(currentPosition));
+        return status;
+    }
+
+    private StatusFragment fragmentOf(int room) {
+        if (fragments[room] == null) {
+            fragments[room] = StatusFragment.of(graph.getDescription(room), imageURL, null,
+                    graph.getDirectionNames(room));
+        }
+        return fragments[room];
+    }
+
+    /**
+     * This method is used to describe the whole traversal history of a player.
+     * @param history The history of the player
+     * @return The rooms joined by arrows, starting with "..." if older rooms were dropped
+     */
+    private String describeHistory(TraversalHistory history) {
+        StringJoiner joiner = new StringJoiner("->", "Your traversed history is: {", "}");
+        if (history.getDroppedVisits() > 0) {
+            joiner.add("...");
+        }
+        history.forEach(room -> joiner.add(graph.getName(room)));
+        return joiner.toString();
+    }
+
+    /**
+     * This method is used to get a page of the traversal history of a game in server.
+     * @param id The id of the game
+     * @param offset The index of the first room of the page, 0 is the oldest room kept
+     * @param limit The most rooms in the page
+     * @return The names of the rooms in the page, or null if there is no such game
+     */
+    public List<String> getHistoryPage(int id, long offset, int limit) {
+        int slot = findSession(id);
+        if (slot < 0) {
+            return null;
+        }
+        List<String> page = new ArrayList<>();
+        sessions.getHistory(slot).forEach(offset, limit, room -> page.add(graph.getName(room)));
+        return page;
+    }
+
+    /**
+     * @return The number of rooms kept in the traversal history of a game, or -1 if there is no such game.
+     */
+    public long getHistorySize(int id) {
+        int slot = findSession(id);
+        if (slot < 0) {
+            return -1;
+        }
+        return sessions.getHistory(slot).size();
+    }
+
+    /**
+     * This method is used to get the latest status of a game in server.
+     * @param id The id of the game
+     * @return The status after the latest command, or null if there is no such game
+     */
+    public GameStatus getGameStatus(int id) {
+        int slot = findSession(id);
+        if (slot < 0) {
+            return null;
+        }
+        return statusOf(slot);
+    }
+
+    /**
+     * This method is used to get the version of the state of a game in server. The version starts at 0
+     * and goes up by one with each command or batch of commands, so an unchanged version means an
+     * unchanged status.
+     * @param id The id of the game
+     * @return The version, or -1 if there is no such game
+     */
+    public int getGameVersion(int id) {
+        int slot = findSession(id);
+        if (slot < 0) {
+            return -1;
+        }
+        return sessions.getVersion(slot);
+    }
+
+    /**
+     * This method is used to end a game in server and release everything kept for it.
+     * @param id The id of the game
+     * @return false if there is no such game
+     */
+    public boolean endGame(int id) {
+        boolean ended = sessions.remove(id);
+        return coldStore != null && coldStore.remove(id) || ended;
+    }
+
+    /**
+     * This method is used to find the slot of a game in server, taking it back to the heap if it was
+     * moved off it while idle.
+     * @param id The id of the game
+     * @return The slot of the game, or -1 if there is no such game
+     */
+    public int findSession(int id) {
+        int slot = sessions.find(id);
+        if (slot >= 0 || coldStore == null) {
+            return slot;
+        }
+        ByteBuffer in = coldStore.take(id);
+        if (in == null) {
+            return -1;
+        }
+        in.getInt();
+        int lastAccess = in.getInt();
+        // The id and length written by the codec
+        in.getInt();
+        in.getInt();
+        slot = SessionCodec.read(sessions, in, id, historyLimit, historyRunLength);
+        sessions.setLastAccess(slot, lastAccess);
+        return slot;
+    }
+
+    /**
+     * This method is used to move an idle game off the heap, into the cold store. Its cached status is
+     * dropped, it is built again when the game comes back.
+     * @param id The id of the game
+     * @return false if the game is not on the heap, there is no cold store, or the game does not fit a slot
+     */
+    public boolean demoteSession(int id) throws IOException {
+        int slot = sessions.find(id);
+        if (slot < 0 || coldStore == null) {
+            return false;
+        }
+        int size = SessionCodec.sizeOf(sessions, slot);
+        // A slot holds the size and last access of the game before the game itself
+        if (8 + size > coldStore.getSlotBytes()) {
+            coldStore.rejected();
+            return false;
+        }
+        ByteBuffer out = coldStore.claim(id);
+        out.putInt(size).putInt(sessions.getLastAccess(slot));
+        SessionCodec.write(sessions, slot, out);
+        sessions.remove(id);
+        return true;
+    }
+
+    /**
+     * This method is used to read when a game in the cold store was last used, without taking it back.
+     * @param id The id of the game
+     * @return The last access tick of the game, or -1 if it is not in the cold store
+     */
+    public int getColdLastAccess(int id) {
+        ByteBuffer in = coldStore == null ? null : coldStore.find(id);
+        return in == null ? -1 : in.getInt(4);
+    }
+
+    /**
+     * This method is used to end the least recently used of a few games sampled from the cold store.
+     * @param samples The number of games looked at
+     * @return false if the cold store holds no game
+     */
+    public boolean endColdLeastRecentlyUsed(int samples) {
+        if (coldStore == null || coldStore.size() == 0) {
+            return false;
+        }
+        int[] ids = coldStore.sample(Math.max(1, samples));
+        int victim = ids[0];
+        for (int i = 1; i < ids.length; i++) {
+            if (getColdLastAccess(ids[i]) < getColdLastAccess(victim)) {
+                victim = ids[i];
+            }
         }
+        return endGame(victim);
+    }
+
+    /**
+     * @return The fingerprint of the layout of the games in server, or 0 if no layout is used yet.
+     */
+    public long getLayoutFingerprint() {
+        return graph == null ? 0 : graph.getFingerprint();
+    }
+
+    /**
+     * This method is used to get the fingerprint of the layout of a json file as it is now on disk.
+     * @param inputFile A string represents name of the input json file
+     * @return The fingerprint of its room graph
+     * @throws IOException throws exception for reading json file
+     */
+    public long getLayoutFingerprint(String inputFile) throws IOException {
+        return layoutCache.get(inputFile).getGraph().getFingerprint();
+    }
+
+    /**
+     * @return The number of games in server, on the heap or in the cold store.
+     */
+    public int getSessionCount() {
+        return sessions.size() + (coldStore == null ? 0 : coldStore.size());
+    }
+
+    /**
+     * This method is used to write every game in server as bytes, for a snapshot taken on the thread
+     * running the games, between two commands. Games in the cold store are copied as they are.
+     * @return A buffer holding the number of games then each game, from its start to its limit
+     */
+    public ByteBuffer snapshotSessions() {
+        long size = 4;
+        for (int slot = 0; slot < sessions.getCapacity(); slot++) {
+            if (sessions.isUsed(slot)) {
+                size += SessionCodec.sizeOf(sessions, slot);
+            }
+        }
+        int[] coldIds = coldStore == null ? new int[0] : coldStore.ids();
+        for (int id : coldIds) {
+            size += coldStore.find(id).getInt(0);
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many games for one snapshot buffer");
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) size);
+        out.putInt(sessions.size() + coldIds.length);
+        for (int slot = 0; slot < sessions.getCapacity(); slot++) {
+            if (sessions.isUsed(slot)) {
+                SessionCodec.write(sessions, slot, out);
+            }
+        }
+        // Games in the cold store are already written the same way, after their size and last access
+        for (int id : coldIds) {
+            ByteBuffer in = coldStore.find(id);
+            in.limit(8 + in.getInt(0)).position(8);
+            out.put(in);
+        }
+        out.flip();
+        return out;
+    }
+
+    /**
+     * This method is used to put back the games of a buffer written by snapshotSessions, only keeping
+     * the ids equal to a residue modulo a modulus, such as the games of one shard of a service.
+     * @param inputFile A string represents name of the input json file the games were started from
+     * @param in The buffer read from its position
+     * @param residue Only ids with this remainder are put back
+     * @param modulus The divisor of the ids, 1 for every id
+     * @return The ids of the games put back
+     */
+    public int[] restoreSessions(String inputFile, ByteBuffer in, int residue, int modulus) throws IOException {
+        useLayout(inputFile);
+        int count = in.getInt();
+        sessions.ensureCapacity(sessions.size() + count / modulus);
+        int[] ids = new int[count];
+        int restored = 0;
+        for (int i = 0; i < count; i++) {
+            int id = in.getInt();
+            int length = in.getInt();
+            if (Math.floorMod(id, modulus) != residue) {
+                in.position(in.position() + length);
+                continue;
+            }
+            SessionCodec.read(sessions, in, id, historyLimit, historyRunLength);
+            ids[restored++] = id;
+        }
+        return Arrays.copyOf(ids, restored);
+    }
+
+    /**
+     * This method is used to end every game in server with an id in a range.
+     * @param firstId The first id of the range
+     * @param lastId The last id of the range, included
+     * @return The number of games ended
+     */
+    public int endGames(int firstId, int lastId) {
+        return endGames(firstId, lastId, 0, 1);
+    }
+
+    /**
+     * This method is used to end the games in server with an id in a range and equal to a residue modulo a
+     * modulus, such as the games one shard of a service ended.
+     * @param firstId The first id of the range
+     * @param lastId The last id of the range, included
+     * @param residue Only ids with this remainder are ended
+     * @param modulus The divisor of the ids, 1 for every id
+     * @return The number of games ended
+     */
+    public int endGames(int firstId, int lastId, int residue, int modulus) {
+        if (lastId < firstId) {
+            return 0;
+        }
+        int ended = coldStore == null ? 0 : coldStore.removeIf(id -> id >= firstId && id <= lastId
+                && Math.floorMod(id, modulus) == residue);
+        if (((long) lastId - firstId) / modulus < sessions.getCapacity()) {
+            long first = firstId + Math.floorMod(residue - firstId, modulus);
+            for (long id = first; id <= lastId; id += modulus) {
+                if (sessions.remove((int) id)) {
+                    ended++;
+                }
+            }
+            return ended;
+        }
+        // The range is larger than the table, so walk the table instead. Removing shifts entries back,
+        // so the ids are collected before anything is removed.
+        int[] ids = new int[sessions.size()];
+        int count = 0;
+        for (int slot = 0; slot < sessions.getCapacity(); slot++) {
+            int id = sessions.getId(slot);
+            if (sessions.isUsed(slot) && id >= firstId && id <= lastId && Math.floorMod(id, modulus) == residue) {
+                ids[count++] = id;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            sessions.remove(ids[i]);
+        }
+        return ended + count;
     }
 
     /**
@@ -206,33 +702,50 @@ public class GameEngine {
      * @return A room variable represents the name of the room after running the player's command.
      */
     public Room goGame(String roomInput, String userDirection) {
-        Room currRoom = roomsMap.get(roomInput);
+        int currRoom = graph.getRoomId(roomInput);
+        if (currRoom == RoomGraph.NO_ROOM) {
+            return null;
+        }
         // GO_PREFIX is the length of string "go ", so a valid command should have length larger than that
         if (userDirection.length() <= GO_PREFIX) {
             if (runLocalFlag) {
                 System.out.println("I don't understand \"" + userDirection + "\"!");
             }
         } else {
-            if (userDirection.toLowerCase().startsWith("go ")) {
-                // The direction word without the prefix "go " and ignore starting space and case
-                String cleanedUserDirection = userDirection.substring(3).trim().toLowerCase();
-                // currDirections is the map of directions in current room with lower case room name as the key
-                Map<String, String> currDirections = currRoom.constructDirectionMap();
-                String newRoomKey = currDirections.get(cleanedUserDirection);
-                if (newRoomKey == null) {
+            if (userDirection.regionMatches(true, 0, "go ", 0, GO_PREFIX)) {
+                // The direction word after the prefix "go ", resolved ignoring surrounding spaces and case
+                int newRoom = graph.move(currRoom, userDirection, GO_PREFIX, userDirection.length());
+                if (newRoom == RoomGraph.NO_ROOM) {
                     if (runLocalFlag) {
                         System.out.println("I can't go \"" + userDirection + "\" !");
                     }
-                    return currRoom;
+                    return roomsById[currRoom];
                 }
-                currRoom = roomsMap.get(newRoomKey);
+                currRoom = newRoom;
             } else {
                 if (runLocalFlag) {
                     System.out.println("I don't understand \"" + userDirection + "\".");
                 }
             }
         }
-        return currRoom;
+        return roomsById[currRoom];
+    }
+
+    /**
+     * This method is used to run a go command of the server on the room graph without allocating.
+     * @param currentPosition The id of the current room.
+     * @param direction The direction name sent by the player.
+     * @return The id of the room after the move, which is the current room if the direction does not exist.
+     */
+    private int goGame(int currentPosition, String direction) {
+        if (direction == null) {
+            return currentPosition;
+        }
+        int newPosition = graph.move(currentPosition, direction);
+        if (newPosition == RoomGraph.NO_ROOM) {
+            return currentPosition;
+        }
+        return newPosition;
     }
 
     /**
@@ -267,29 +780,39 @@ public class GameEngine {
     }
 
     /**
-     * This method is a wrapper of checkOperateItem for dealing with multiple player
-     * @param currRoom A Room variable represent current room
-     * @param userInput The input of user in command line
-     * @param playerID ID of the player who sends this command
+     * This method is the take/drop command for dealing with multiple player in server.
+     * The shared rooms are never changed: the change is recorded in the item overlay of the player.
+     * @param slot The slot of the player in the session table
+     * @param currentPosition The id of the room where the player stay
+     * @param userInput The take/drop command of the player
      */
-    public void checkOperateItemForWeb(Room currRoom, String userInput, int playerID) {
-        boolean pickSuccessful = checkOperateItem(currRoom, userInput);
-        if (!pickSuccessful) {
+    private void checkOperateItemForWeb(int slot, int currentPosition, String userInput) {
+        if (userInput.length() <= TAKE_PREFIX) {
             return;
         }
-        String item = userInput.substring(TAKE_PREFIX);
-        if (userInput.toLowerCase().startsWith("take ")) {
-            if (!playerItemsCollected.containsKey(playerID)) {
-                List<String> items = new ArrayList<>();
-                playerItemsCollected.put(playerID, items);
+        // An item that is in no room of the layout can neither be taken nor held
+        int item = graph.getItemId(userInput.substring(TAKE_PREFIX));
+        if (item < 0) {
+            return;
+        }
+        ItemOverlay roomItems = sessions.getRoomItems(slot);
+        Inventory playerCollected = sessions.getInventory(slot);
+        if (userInput.regionMatches(true, 0, "take ", 0, TAKE_PREFIX)) {
+            // Take case, check if current room still contains the item for this player
+            if (roomItems.count(graph, currentPosition, item) <= 0) {
+                return;
+            }
+            sessions.setRoomItems(slot, roomItems.withDelta(currentPosition, item, -1));
+            if (playerCollected == null) {
+                playerCollected = new Inventory(graph.getItemCount());
+                sessions.setInventory(slot, playerCollected);
+            }
+            playerCollected.add(item);
+        } else if (userInput.regionMatches(true, 0, "drop ", 0, TAKE_PREFIX)) {
+            // Drop case: need to check if current player hold the item
+            if (playerCollected != null && playerCollected.remove(item)) {
+                sessions.setRoomItems(slot, roomItems.withDelta(currentPosition, item, 1));
             }
-            List<String> PlayerCollected = playerItemsCollected.get(playerID);
-            PlayerCollected.add(item);
-            playerItemsCollected.put(playerID, PlayerCollected);
-        } else {
-            List<String> PlayerCollected = playerItemsCollected.get(playerID);
-            PlayerCollected.remove(item);
-            playerItemsCollected.put(playerID, PlayerCollected);
         }
     }
 
@@ -335,32 +858,6 @@ public class GameEngine {
         return findItem;
     }
 
-    /**
-     * A helper function uses to check if the json file parsed is valid.
-     * @param layoutInput A Layout variable parse from json showing the map of this adventure game.
-     * @throws IllegalArgumentException
-     */
-    private void gameValidity(Layout layoutInput) throws IllegalArgumentException {
-        String[] roomNames = layoutInput.getRoomsName();
-        if (layoutInput.getRooms() == null || layoutInput.getRooms().length == 0) {
-            throw new IllegalArgumentException("No room available");
-        }
-        if (layoutInput.getStartingRoom() == null) {
-            throw new IllegalArgumentException("Starting room is null");
-        } else {
-            if (!Arrays.asList(roomNames).contains(layoutInput.getStartingRoom())) {
-                throw new IllegalArgumentException("Starting room does not exist");
-            }
-        }
-        if (layoutInput.getEndingRoom() == null) {
-            throw new IllegalArgumentException("Ending room is null");
-        } else {
-            if (!Arrays.asList(roomNames).contains(layoutInput.getEndingRoom())) {
-                throw new IllegalArgumentException("Ending room does not exist");
-            }
-        }
-    }
-
     /**
      * This method is used to check whether the player win or exit.
      * @param quitFlag A boolean variable shows whether current game is exited.
@@ -416,10 +913,57 @@ public class GameEngine {
         }
     }
 
+    /**
+     * This method is used to build a map of the items picked by every player in server, by ID.
+     * @return A new map holding the item list of each player who picked something
+     */
     public Map<Integer, List<String>> getPlayerItemsCollected() {
+        Map<Integer, List<String>> playerItemsCollected = new HashMap<>();
+        for (int slot = 0; slot < sessions.getCapacity(); slot++) {
+            if (sessions.isUsed(slot) && sessions.getInventory(slot) != null) {
+                playerItemsCollected.put(sessions.getId(slot), sessions.getInventory(slot).toNames(graph));
+            }
+        }
         return playerItemsCollected;
     }
 
+    public SessionTable getSessions() {
+        return sessions;
+    }
+
+    public LayoutCache getLayoutCache() {
+        return layoutCache;
+    }
+
+    /**
+     * @param coldStore Holds the games moved off the heap while idle, or null to keep every game on the heap
+     */
+    public void setColdStore(ColdSessionStore coldStore) {
+        this.coldStore = coldStore;
+    }
+
+    public ColdSessionStore getColdStore() {
+        return coldStore;
+    }
+
+    /**
+     * @param completionListener Told when a player reaches the ending room, or null
+     */
+    public void setCompletionListener(CompletionListener completionListener) {
+        this.completionListener = completionListener;
+    }
+
+    /**
+     * @param historyLimit The most history entries kept for games started from now on, 0 for no limit
+     */
+    public void setHistoryLimit(int historyLimit) {
+        this.historyLimit = historyLimit;
+    }
+
+    public void setHistoryRunLength(boolean historyRunLength) {
+        this.historyRunLength = historyRunLength;
+    }
+
     public void setRunLocalFlag(boolean runLocalFlag) {
         this.runLocalFlag = runLocalFlag;
     }
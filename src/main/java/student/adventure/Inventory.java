@@ -0,0 +1,168 @@
+package student.adventure;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The items held by a player in server, as a bitset over the item ids of the room graph.
+ * Bit i is set when the player holds at least one of item i. Counts are only kept once the player
+ * holds two of the same item, so a player holding distinct items costs one bit per item of the layout.
+ * Taking, dropping and checking an item never allocates once the bitset is sized. This class is not
+ * thread safe.
+ */
+public class Inventory {
+    private final long[] bits;
+    // How many of each item are held, null until some item is held twice
+    private int[] counts;
+
+    /**
+     * @param itemCount The number of items in the item dictionary of the room graph
+     */
+    public Inventory(int itemCount) {
+        bits = new long[(itemCount + 63) >>> 6];
+    }
+
+    private Inventory(long[] bits, int[] counts) {
+        this.bits = bits;
+        this.counts = counts;
+    }
+
+    public boolean contains(int item) {
+        return (bits[item >>> 6] & (1L << item)) != 0;
+    }
+
+    /**
+     * @return How many of the item are held.
+     */
+    public int count(int item) {
+        if (counts != null) {
+            return counts[item];
+        }
+        return contains(item) ? 1 : 0;
+    }
+
+    /**
+     * This method is used to add one of an item.
+     * @param item The id of the item
+     */
+    public void add(int item) {
+        if (contains(item) && counts == null) {
+            // The first duplicate: switch to counting
+            counts = new int[bits.length << 6];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = contains(i) ? 1 : 0;
+            }
+        }
+        if (counts != null) {
+            counts[item]++;
+        }
+        bits[item >>> 6] |= 1L << item;
+    }
+
+    /**
+     * This method is used to remove one of an item.
+     * @param item The id of the item
+     * @return false if the player does not hold the item
+     */
+    public boolean remove(int item) {
+        if (!contains(item)) {
+            return false;
+        }
+        if (counts == null || --counts[item] == 0) {
+            bits[item >>> 6] &= ~(1L << item);
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of items held, counting each copy.
+     */
+    public int size() {
+        int size = 0;
+        for (int word = 0; word < bits.length; word++) {
+            long remaining = bits[word];
+            if (counts == null) {
+                size += Long.bitCount(remaining);
+                continue;
+            }
+            for (; remaining != 0; remaining &= remaining - 1) {
+                size += counts[(word << 6) + Long.numberOfTrailingZeros(remaining)];
+            }
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        for (long word : bits) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method is used to list the held items by their names in the layout, in item id order.
+     * @param graph The room graph the item ids belong to
+     * @return A new list with each item repeated as many times as it is held
+     */
+    public List<String> toNames(RoomGraph graph) {
+        List<String> names = new ArrayList<>();
+        for (int word = 0; word < bits.length; word++) {
+            long remaining = bits[word];
+            while (remaining != 0) {
+                int item = (word << 6) + Long.numberOfTrailingZeros(remaining);
+                for (int i = count(item); i > 0; i--) {
+                    names.add(graph.getItemName(item));
+                }
+                remaining &= remaining - 1;
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @return The number of bytes writeTo writes.
+     */
+    int encodedSize() {
+        return 4 + bits.length * 8 + 4 + (counts == null ? 0 : counts.length * 4);
+    }
+
+    /**
+     * This method is used to write the bitset and the counts, to be read back by readFrom.
+     * @param out The buffer written at its position
+     */
+    void writeTo(ByteBuffer out) {
+        out.putInt(bits.length);
+        for (long word : bits) {
+            out.putLong(word);
+        }
+        if (counts == null) {
+            out.putInt(-1);
+            return;
+        }
+        out.putInt(counts.length);
+        for (int count : counts) {
+            out.putInt(count);
+        }
+    }
+
+    /**
+     * This method is used to read an inventory written by writeTo.
+     * @param in The buffer read from its position
+     * @return The inventory
+     */
+    static Inventory readFrom(ByteBuffer in) {
+        long[] bits = new long[in.getInt()];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = in.getLong();
+        }
+        int countLength = in.getInt();
+        int[] counts = countLength < 0 ? null : new int[countLength];
+        for (int i = 0; counts != null && i < counts.length; i++) {
+            counts[i] = in.getInt();
+        }
+        return new Inventory(bits, counts);
+    }
+}
@@ -0,0 +1,182 @@
+package student.adventure;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The changes one game instance made to the items of the shared, read only rooms.
+ * An overlay is immutable: taking or dropping an item returns a new overlay holding one more or one
+ * less delta, and leaves the rooms and every other instance untouched. Each delta is keyed by the room
+ * id in the high half and the item id of the room graph in the low half of a long, and the keys are
+ * kept sorted, so an instance that changed nothing costs nothing but EMPTY.
+ */
+public final class ItemOverlay {
+    public static final ItemOverlay EMPTY = new ItemOverlay(new long[0], new int[0]);
+    private final long[] keys;
+    // How many of the item were dropped (positive) or taken (negative) in the room, never zero
+    private final int[] deltas;
+
+    private ItemOverlay(long[] keys, int[] deltas) {
+        this.keys = keys;
+        this.deltas = deltas;
+    }
+
+    private static long key(int room, int item) {
+        return ((long) room << 32) | (item & 0xffffffffL);
+    }
+
+    /**
+     * This method is used to record that an item was taken from or dropped into a room.
+     * @param room The id of the room
+     * @param item The id of the item
+     * @param delta -1 for a take, 1 for a drop
+     * @return The overlay with the change applied
+     */
+    public ItemOverlay withDelta(int room, int item, int delta) {
+        long key = key(room, item);
+        int index = Arrays.binarySearch(keys, key);
+        if (index >= 0) {
+            int newDelta = deltas[index] + delta;
+            if (newDelta == 0) {
+                return remove(index);
+            }
+            int[] newDeltas = deltas.clone();
+            newDeltas[index] = newDelta;
+            return new ItemOverlay(keys, newDeltas);
+        }
+        int insert = -index - 1;
+        int size = keys.length;
+        long[] newKeys = new long[size + 1];
+        int[] newDeltas = new int[size + 1];
+        System.arraycopy(keys, 0, newKeys, 0, insert);
+        System.arraycopy(deltas, 0, newDeltas, 0, insert);
+        newKeys[insert] = key;
+        newDeltas[insert] = delta;
+        System.arraycopy(keys, insert, newKeys, insert + 1, size - insert);
+        System.arraycopy(deltas, insert, newDeltas, insert + 1, size - insert);
+        return new ItemOverlay(newKeys, newDeltas);
+    }
+
+    private ItemOverlay remove(int index) {
+        int size = keys.length;
+        if (size == 1) {
+            return EMPTY;
+        }
+        long[] newKeys = new long[size - 1];
+        int[] newDeltas = new int[size - 1];
+        System.arraycopy(keys, 0, newKeys, 0, index);
+        System.arraycopy(deltas, 0, newDeltas, 0, index);
+        System.arraycopy(keys, index + 1, newKeys, index, size - index - 1);
+        System.arraycopy(deltas, index + 1, newDeltas, index, size - index - 1);
+        return new ItemOverlay(newKeys, newDeltas);
+    }
+
+    /**
+     * @return The change of the count of the item in the room, 0 if it was not changed.
+     */
+    public int getDelta(int room, int item) {
+        int index = Arrays.binarySearch(keys, key(room, item));
+        if (index < 0) {
+            return 0;
+        }
+        return deltas[index];
+    }
+
+    /**
+     * This method is used to count an item in a room as this instance sees it.
+     * @param graph The room graph holding the shared items
+     * @param room The id of the room
+     * @param item The id of the item
+     * @return How many of the item are in the room
+     */
+    public int count(RoomGraph graph, int room, int item) {
+        return graph.countItem(room, item) + getDelta(room, item);
+    }
+
+    /**
+     * This method is used to list the lower case items of a room as this instance sees them. Taken
+     * items are removed from the front like Room.takeItem does, and dropped items are added at the end.
+     * @param graph The room graph holding the shared items
+     * @param room The id of the room
+     * @return The items in the room, the shared list of the graph if the room was not changed
+     */
+    public List<String> apply(RoomGraph graph, int room) {
+        int first = firstOf(room);
+        int end = firstOf(room + 1);
+        if (first == end) {
+            return graph.getItems(room);
+        }
+        int[] toRemove = new int[end - first];
+        for (int i = first; i < end; i++) {
+            toRemove[i - first] = Math.max(0, -deltas[i]);
+        }
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < graph.getRoomItemCount(room); i++) {
+            int item = graph.getRoomItem(room, i);
+            int index = Arrays.binarySearch(keys, first, end, key(room, item));
+            if (index >= 0 && toRemove[index - first] > 0) {
+                toRemove[index - first]--;
+            } else {
+                result.add(graph.getItemKey(item));
+            }
+        }
+        for (int i = first; i < end; i++) {
+            for (int j = 0; j < deltas[i]; j++) {
+                result.add(graph.getItemKey((int) keys[i]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of deltas held by this overlay.
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    // The index of the first delta of the room or of a later room
+    private int firstOf(int room) {
+        int index = Arrays.binarySearch(keys, key(room, 0));
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * @return The number of bytes writeTo writes.
+     */
+    int encodedSize() {
+        return 4 + keys.length * (8 + 4);
+    }
+
+    /**
+     * This method is used to write the deltas, to be read back by readFrom.
+     * @param out The buffer written at its position
+     */
+    void writeTo(ByteBuffer out) {
+        out.putInt(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            out.putLong(keys[i]).putInt(deltas[i]);
+        }
+    }
+
+    /**
+     * This method is used to read an overlay written by writeTo.
+     * @param in The buffer read from its position
+     * @return The overlay, EMPTY if it holds no delta
+     */
+    static ItemOverlay readFrom(ByteBuffer in) {
+        int size = in.getInt();
+        if (size == 0) {
+            return EMPTY;
+        }
+        long[] keys = new long[size];
+        int[] deltas = new int[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = in.getLong();
+            deltas[i] = in.getInt();
+        }
+        return new ItemOverlay(keys, deltas);
+    }
+}
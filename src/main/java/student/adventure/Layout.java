@@ -6,6 +6,8 @@ public class Layout {
     // the String name of the room the player must reach to win
     private String endingRoom = null;
     private Room[] rooms = {};
+    // Compiled on first use and shared by every engine using this layout
+    private transient volatile RoomGraph graph;
 
     public Layout(String inputStartingRoom, String inputEndingRoom, Room[] inputRooms) {
         this.startingRoom = inputStartingRoom;
@@ -21,8 +23,20 @@ public class Layout {
         return endingRoom;
     }
 
+    /**
+     * This method is used to return the rooms of the layout. Copies of the rooms are returned, with their
+     * own item and direction lists, so that a layout shared through LayoutCache cannot be changed by its users.
+     * @return An array of all the rooms.
+     */
     public Room[] getRooms() {
-        return rooms;
+        if (this.rooms == null) {
+            return null;
+        }
+        Room[] copies = new Room[rooms.length];
+        for (int i = 0; i < rooms.length; i++) {
+            copies[i] = rooms[i] == null ? null : rooms[i].copy();
+        }
+        return copies;
     }
 
     public String[] getRoomsName() {
@@ -35,4 +49,22 @@ public class Layout {
         }
         return roomNames;
     }
+
+    /**
+     * This method is used to return the compiled room graph of a validated layout.
+     * @return The RoomGraph of this layout, compiled on the first call.
+     */
+    public RoomGraph getGraph() {
+        RoomGraph result = graph;
+        if (result == null) {
+            synchronized (this) {
+                result = graph;
+                if (result == null) {
+                    result = RoomGraph.compile(this);
+                    graph = result;
+                }
+            }
+        }
+        return result;
+    }
 }
@@ -0,0 +1,93 @@
+package student.adventure;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of parsed and validated layouts, keyed by the canonical path of the json file.
+ * Files compiled by WorldCompiler are memory mapped instead of parsed.
+ * An entry is reused as long as the modification time and size of the file are unchanged,
+ * so creating a new game does not read or parse the file again.
+ */
+public class LayoutCache {
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loadTimeNanos = new AtomicLong();
+
+    /**
+     * One cached layout together with the file metadata it was loaded from.
+     */
+    private static class Entry {
+        private final long lastModified;
+        private final long length;
+        private final Layout layout;
+
+        Entry(long lastModified, long length, Layout layout) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.layout = layout;
+        }
+    }
+
+    /**
+     * This method is used to get the layout of a json file, loading it only if it is not cached or has changed.
+     * The returned layout is shared, so the rooms inside it must not be modified.
+     * @param jsonName A string represents name of the input json file
+     * @return A validated Layout variable parse from json showing the map of this adventure game.
+     * @throws IOException throws exception for reading json file
+     */
+    public Layout get(String jsonName) throws IOException {
+        File file = new File(jsonName);
+        String key = file.getCanonicalPath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        Entry entry = entries.get(key);
+        if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+            hits.incrementAndGet();
+            return entry.layout;
+        }
+        misses.incrementAndGet();
+        long start = System.nanoTime();
+        Layout layout;
+        if (MappedWorld.isWorldFile(jsonName)) {
+            // Compiled worlds were already validated when they were compiled
+            layout = MappedWorld.open(jsonName).toLayout();
+        } else {
+            // The loader checks null and invalid map including missing start / ending / room while reading
+            layout = new StreamingLayoutLoader().load(jsonName);
+        }
+        loadTimeNanos.addAndGet(System.nanoTime() - start);
+        entries.put(key, new Entry(lastModified, length, layout));
+        return layout;
+    }
+
+    /**
+     * Removes all cached layouts. The counters are kept.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Total time in nanoseconds spent reading, parsing and validating files on cache misses.
+     */
+    public long getLoadTimeNanos() {
+        return loadTimeNanos.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
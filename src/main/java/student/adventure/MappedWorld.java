@@ -0,0 +1,224 @@
+package student.adventure;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read only view of a binary world file written by WorldCompiler.
+ * The file is memory mapped, so opening it costs the same for any world size, and every JVM on the
+ * host reading the same file shares the pages in the OS page cache. Rooms are read from the mapping
+ * when they are asked for; toLayout builds the Room objects used by GameEngine.
+ * Files must be smaller than 2 GB.
+ */
+public class MappedWorld {
+    private final ByteBuffer buffer;
+    private final int roomCount;
+    private final int startingRoom;
+    private final int endingRoom;
+    private final int stringOffsetsPos;
+    private final int stringDataPos;
+    private final int roomsPos;
+    private final int itemsPos;
+    private final int directionsPos;
+    private final int nameIndexPos;
+
+    private MappedWorld(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.capacity() < WorldCompiler.HEADER_SIZE || buffer.getInt(0) != WorldCompiler.MAGIC) {
+            throw new IllegalArgumentException("Not a compiled world file");
+        }
+        if (buffer.getInt(4) != WorldCompiler.VERSION) {
+            throw new IllegalArgumentException("Unsupported world file version " + buffer.getInt(4));
+        }
+        roomCount = buffer.getInt(12);
+        startingRoom = buffer.getInt(24);
+        endingRoom = buffer.getInt(28);
+        stringOffsetsPos = buffer.getInt(32);
+        stringDataPos = buffer.getInt(36);
+        roomsPos = buffer.getInt(40);
+        itemsPos = buffer.getInt(44);
+        directionsPos = buffer.getInt(48);
+        nameIndexPos = buffer.getInt(52);
+    }
+
+    /**
+     * This method is used to memory map a binary world file.
+     * @param worldName A string represents name of the binary world file
+     * @return The mapped world
+     * @throws IOException throws exception for reading the world file
+     */
+    public static MappedWorld open(String worldName) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(worldName, "r");
+             FileChannel channel = file.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedWorld(mapped);
+        }
+    }
+
+    /**
+     * This method checks whether a file is a compiled world by its first bytes.
+     * @param fileName A string represents name of the file
+     * @return Whether the file starts with the magic number of a compiled world
+     */
+    public static boolean isWorldFile(String fileName) {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r")) {
+            return file.length() >= WorldCompiler.HEADER_SIZE && file.readInt() == WorldCompiler.MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public int getRoomCount() {
+        return roomCount;
+    }
+
+    public int getStartingRoom() {
+        return startingRoom;
+    }
+
+    public int getEndingRoom() {
+        return endingRoom;
+    }
+
+    public String getRoomName(int room) {
+        return getString(roomField(room, 0));
+    }
+
+    public String getDescription(int room) {
+        return getString(roomField(room, 1));
+    }
+
+    /**
+     * @return The number of items in the room, or -1 if the room has no item list.
+     */
+    public int getItemCount(int room) {
+        return roomField(room, 3);
+    }
+
+    public String getItem(int room, int index) {
+        return getString(buffer.getInt(itemsPos + (roomField(room, 2) + index) * 4));
+    }
+
+    /**
+     * @return The number of directions from the room, or -1 if the room has no direction list.
+     */
+    public int getDirectionCount(int room) {
+        return roomField(room, 5);
+    }
+
+    public String getDirectionName(int room, int index) {
+        return getString(directionField(room, index, 0));
+    }
+
+    /**
+     * @return The name of the room the direction points to, even if no room has that name.
+     */
+    public String getDirectionRoomName(int room, int index) {
+        return getString(directionField(room, index, 1));
+    }
+
+    /**
+     * @return The index of the room the direction points to, or -1 if no room has that name.
+     */
+    public int getDirectionTarget(int room, int index) {
+        return directionField(room, index, 2);
+    }
+
+    /**
+     * This method is used to find a room by its name with a binary search over the name index.
+     * @param name The name of the room
+     * @return The index of the room, or -1 if there is no room with this name
+     */
+    public int findRoom(String name) {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = roomCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int room = buffer.getInt(nameIndexPos + middle * 4);
+            int compare = compareString(roomField(room, 0), key);
+            if (compare < 0) {
+                low = middle + 1;
+            } else if (compare > 0) {
+                high = middle - 1;
+            } else {
+                return room;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * This method is used to build the Layout of the world, with the same rooms as the json it was compiled from.
+     * @return A Layout variable showing the map of this adventure game.
+     */
+    public Layout toLayout() {
+        Room[] rooms = new Room[roomCount];
+        for (int room = 0; room < roomCount; room++) {
+            List<String> items = null;
+            int itemCount = getItemCount(room);
+            if (itemCount != WorldCompiler.NONE) {
+                items = new ArrayList<>(itemCount);
+                for (int i = 0; i < itemCount; i++) {
+                    items.add(getItem(room, i));
+                }
+            }
+            List<Direction> directions = null;
+            int directionCount = getDirectionCount(room);
+            if (directionCount != WorldCompiler.NONE) {
+                directions = new ArrayList<>(directionCount);
+                for (int i = 0; i < directionCount; i++) {
+                    directions.add(new Direction(getDirectionName(room, i), getDirectionRoomName(room, i)));
+                }
+            }
+            rooms[room] = new Room(getRoomName(room), getDescription(room), items, directions);
+        }
+        return new Layout(getRoomName(startingRoom), getRoomName(endingRoom), rooms);
+    }
+
+    private int roomField(int room, int field) {
+        if (room < 0 || room >= roomCount) {
+            throw new IndexOutOfBoundsException("No room " + room);
+        }
+        return buffer.getInt(roomsPos + room * WorldCompiler.ROOM_RECORD_SIZE + field * 4);
+    }
+
+    private int directionField(int room, int index, int field) {
+        int direction = roomField(room, 4) + index;
+        return buffer.getInt(directionsPos + direction * WorldCompiler.DIRECTION_RECORD_SIZE + field * 4);
+    }
+
+    private String getString(int id) {
+        if (id == WorldCompiler.NONE) {
+            return null;
+        }
+        int start = buffer.getInt(stringOffsetsPos + id * 4);
+        int end = buffer.getInt(stringOffsetsPos + (id + 1) * 4);
+        byte[] bytes = new byte[end - start];
+        // An absolute read through a duplicate keeps the shared buffer position untouched
+        ByteBuffer view = buffer.duplicate();
+        view.position(stringDataPos + start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int compareString(int id, byte[] key) {
+        int start = stringDataPos + buffer.getInt(stringOffsetsPos + id * 4);
+        int length = stringDataPos + buffer.getInt(stringOffsetsPos + (id + 1) * 4) - start;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (buffer.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - key.length;
+    }
+}
@@ -18,6 +18,23 @@ public class Room {
         this.directions = directions;
     }
 
+    /**
+     * This method is used to create a copy of the room whose item and direction lists can be changed
+     * independently. Directions cannot be changed, so they are shared.
+     * @return A new Room with the same name, description, items and directions.
+     */
+    Room copy() {
+        List<String> itemsCopy = null;
+        if (this.items != null) {
+            itemsCopy = new ArrayList<>(this.items);
+        }
+        List<Direction> directionsCopy = null;
+        if (this.directions != null) {
+            directionsCopy = new ArrayList<>(this.directions);
+        }
+        return new Room(this.name, this.description, itemsCopy, directionsCopy);
+    }
+
     /**
      * This method is used to construct a direction map (key: move name, value: direction name).
      * @return A String to String map showing all directions.
@@ -38,6 +55,20 @@ public class Room {
         return this.description;
     }
 
+    /**
+     * @return The item list of the room as it was loaded, which may be null.
+     */
+    List<String> getRawItems() {
+        return this.items;
+    }
+
+    /**
+     * @return The direction list of the room as it was loaded, which may be null.
+     */
+    List<Direction> getRawDirections() {
+        return this.directions;
+    }
+
     /**
      * This method is used to return all the direction from the room in lower case.
      * @return A list of String represents all the possible direction.
@@ -0,0 +1,313 @@
+package student.adventure;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled, read only form of a layout used on the move path.
+ * Rooms get dense int ids in layout order, and the directions of all rooms are stored in compressed
+ * sparse row arrays: the directions of room r are the entries offsets[r] until offsets[r + 1] of
+ * targets (the id of the room the direction leads to) and symbols (the id of the lower case
+ * direction name). Resolving a move only reads these arrays and allocates nothing.
+ * Items are interned the same way into dense item ids (ignoring case), and the items of room r are
+ * the entries itemOffsets[r] until itemOffsets[r + 1] of roomItems, in layout order.
+ */
+public class RoomGraph {
+    // Used for a direction that leads to a room which does not exist
+    public static final int NO_ROOM = -1;
+    private final String[] names;
+    private final String[] descriptions;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] symbols;
+    // Lower case direction names, indexed by symbol
+    private final String[] symbolNames;
+    private final Map<String, Integer> roomIds;
+    // The "go" options of each room, built once
+    private final List<List<String>> directionLists;
+    // The lower case items of each room in the shared world, null for a room without an item list
+    private final List<List<String>> itemLists;
+    private final int[] itemOffsets;
+    private final int[] roomItems;
+    // Lower case item names and the spelling first seen in the layout, indexed by item id
+    private final String[] itemKeys;
+    private final String[] itemNames;
+    private final Map<String, Integer> itemIds;
+    private final int startingRoom;
+    private final int endingRoom;
+    private final long fingerprint;
+
+    private RoomGraph(Layout layout) {
+        Room[] rooms = layout.getRooms();
+        names = new String[rooms.length];
+        descriptions = new String[rooms.length];
+        offsets = new int[rooms.length + 1];
+        roomIds = new HashMap<>();
+        for (int i = 0; i < rooms.length; i++) {
+            names[i] = rooms[i].getName();
+            descriptions[i] = rooms[i].getDescription();
+            // Like GameEngine.setMapLayout, the last room with a name wins
+            roomIds.put(names[i], i);
+            List<Direction> directions = rooms[i].getRawDirections();
+            offsets[i + 1] = offsets[i] + (directions == null ? 0 : directions.size());
+        }
+        targets = new int[offsets[rooms.length]];
+        symbols = new int[offsets[rooms.length]];
+        Map<String, Integer> symbolIds = new HashMap<>();
+        List<String> symbolList = new ArrayList<>();
+        directionLists = new ArrayList<>(rooms.length);
+        itemLists = new ArrayList<>(rooms.length);
+        for (int i = 0; i < rooms.length; i++) {
+            List<String> items = rooms[i].getItems();
+            itemLists.add(items == null ? null : Collections.unmodifiableList(items));
+            List<Direction> directions = rooms[i].getRawDirections();
+            List<String> directionNames = new ArrayList<>();
+            for (int edge = offsets[i]; edge < offsets[i + 1]; edge++) {
+                Direction direction = directions.get(edge - offsets[i]);
+                String symbolName = direction.getDirectionName().toLowerCase();
+                Integer symbol = symbolIds.get(symbolName);
+                if (symbol == null) {
+                    symbol = symbolList.size();
+                    symbolIds.put(symbolName, symbol);
+                    symbolList.add(symbolName);
+                }
+                symbols[edge] = symbol;
+                Integer target = roomIds.get(direction.getRoom());
+                targets[edge] = target == null ? NO_ROOM : target;
+                directionNames.add(symbolList.get(symbol));
+            }
+            directionLists.add(Collections.unmodifiableList(directionNames));
+        }
+        symbolNames = symbolList.toArray(new String[0]);
+        itemOffsets = new int[rooms.length + 1];
+        itemIds = new HashMap<>();
+        List<String> itemKeyList = new ArrayList<>();
+        List<String> itemNameList = new ArrayList<>();
+        List<Integer> roomItemList = new ArrayList<>();
+        for (int i = 0; i < rooms.length; i++) {
+            List<String> items = rooms[i].getRawItems();
+            if (items != null) {
+                for (String item : items) {
+                    String key = item.toLowerCase();
+                    Integer id = itemIds.get(key);
+                    if (id == null) {
+                        id = itemKeyList.size();
+                        itemIds.put(key, id);
+                        itemKeyList.add(key);
+                        itemNameList.add(item);
+                    }
+                    roomItemList.add(id);
+                }
+            }
+            itemOffsets[i + 1] = roomItemList.size();
+        }
+        itemKeys = itemKeyList.toArray(new String[0]);
+        itemNames = itemNameList.toArray(new String[0]);
+        roomItems = new int[roomItemList.size()];
+        for (int i = 0; i < roomItems.length; i++) {
+            roomItems[i] = roomItemList.get(i);
+        }
+        startingRoom = roomIds.get(layout.getStartingRoom());
+        endingRoom = roomIds.get(layout.getEndingRoom());
+        fingerprint = computeFingerprint();
+    }
+
+    // A 64 bit FNV-1a hash of everything the room and item ids depend on, never 0
+    private long computeFingerprint() {
+        long hash = 0xcbf29ce484222325L;
+        hash = mix(hash, names.length);
+        for (String name : names) {
+            hash = mix(hash, name.hashCode());
+        }
+        for (int[] values : new int[][] {offsets, targets, symbols, itemOffsets, roomItems}) {
+            hash = mix(hash, values.length);
+            for (int value : values) {
+                hash = mix(hash, value);
+            }
+        }
+        for (String[] strings : new String[][] {symbolNames, itemKeys}) {
+            hash = mix(hash, strings.length);
+            for (String string : strings) {
+                hash = mix(hash, string.hashCode());
+            }
+        }
+        hash = mix(mix(hash, startingRoom), endingRoom);
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static long mix(long hash, int value) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            hash = (hash ^ ((value >>> shift) & 0xFF)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * This method is used to compile a validated layout into a room graph.
+     * @param layout A Layout variable showing the map of this adventure game.
+     * @return The compiled graph
+     */
+    public static RoomGraph compile(Layout layout) {
+        return new RoomGraph(layout);
+    }
+
+    /**
+     * This method is used to resolve a move from a room, ignoring case and surrounding spaces.
+     * If a room has several directions with the same name, the last one is used.
+     * @param room The id of the current room
+     * @param text The text holding the direction name
+     * @param start The index in text where the direction name starts
+     * @param end The index in text where the direction name ends
+     * @return The id of the room the direction leads to, or NO_ROOM if the direction does not exist
+     */
+    public int move(int room, String text, int start, int end) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        int length = end - start;
+        for (int edge = offsets[room + 1] - 1; edge >= offsets[room]; edge--) {
+            String symbolName = symbolNames[symbols[edge]];
+            if (symbolName.length() == length && symbolName.regionMatches(true, 0, text, start, length)) {
+                return targets[edge];
+            }
+        }
+        return NO_ROOM;
+    }
+
+    /**
+     * This method is used to resolve a move from a room by the whole direction name.
+     * @param room The id of the current room
+     * @param direction The direction name
+     * @return The id of the room the direction leads to, or NO_ROOM if the direction does not exist
+     */
+    public int move(int room, String direction) {
+        return move(room, direction, 0, direction.length());
+    }
+
+    /**
+     * @return The id of the room with the name, or NO_ROOM if there is no such room.
+     */
+    public int getRoomId(String name) {
+        Integer id = roomIds.get(name);
+        if (id == null) {
+            return NO_ROOM;
+        }
+        return id;
+    }
+
+    public int getRoomCount() {
+        return names.length;
+    }
+
+    public String getName(int room) {
+        return names[room];
+    }
+
+    public String getDescription(int room) {
+        return descriptions[room];
+    }
+
+    /**
+     * @return The lower case names of all the directions from the room. The list cannot be changed.
+     */
+    public List<String> getDirectionNames(int room) {
+        return directionLists.get(room);
+    }
+
+    /**
+     * @return The lower case items of the room in the shared world, or null. The list cannot be changed.
+     */
+    public List<String> getItems(int room) {
+        return itemLists.get(room);
+    }
+
+    /**
+     * @return The number of different items in the layout, the size of the item dictionary.
+     */
+    public int getItemCount() {
+        return itemKeys.length;
+    }
+
+    /**
+     * This method is used to find the id of an item, ignoring case and surrounding spaces.
+     * @param item The name of the item
+     * @return The id of the item, or -1 if no room of the layout has this item
+     */
+    public int getItemId(String item) {
+        Integer id = itemIds.get(item.trim().toLowerCase());
+        if (id == null) {
+            return -1;
+        }
+        return id;
+    }
+
+    /**
+     * @return The lower case name of the item, as shown in the "take" options.
+     */
+    public String getItemKey(int item) {
+        return itemKeys[item];
+    }
+
+    /**
+     * @return The name of the item as first spelled in the layout, as shown in the "drop" options.
+     */
+    public String getItemName(int item) {
+        return itemNames[item];
+    }
+
+    /**
+     * @return How many of the item the room holds in the shared world.
+     */
+    public int countItem(int room, int item) {
+        int count = 0;
+        for (int i = itemOffsets[room]; i < itemOffsets[room + 1]; i++) {
+            if (roomItems[i] == item) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Whether the room has an item list in the layout, even an empty one.
+     */
+    public boolean hasItemList(int room) {
+        return itemLists.get(room) != null;
+    }
+
+    /**
+     * @return The number of item entries of the room in the shared world.
+     */
+    public int getRoomItemCount(int room) {
+        return itemOffsets[room + 1] - itemOffsets[room];
+    }
+
+    /**
+     * @return The id of an item entry of the room, in layout order.
+     */
+    public int getRoomItem(int room, int index) {
+        return roomItems[itemOffsets[room] + index];
+    }
+
+    public int getStartingRoom() {
+        return startingRoom;
+    }
+
+    /**
+     * @return A hash of the rooms, directions and items of the graph, the same for the same layout and
+     *         never 0. Games stored with int ids can only be read back with a graph of the same fingerprint.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public int getEndingRoom() {
+        return endingRoom;
+    }
+}
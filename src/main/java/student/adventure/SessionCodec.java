@@ -0,0 +1,62 @@
+package student.adventure;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes the state of one game of a SessionTable as bytes and reads it back, for snapshots of the server.
+ * A game is its id, the length of the rest, then its position, version, start time, room item changes,
+ * inventory and history. The status is not written, it is built again the first time it is asked for.
+ */
+final class SessionCodec {
+    private SessionCodec() {
+    }
+
+    /**
+     * @return The number of bytes write writes for the game in the slot.
+     */
+    static int sizeOf(SessionTable sessions, int slot) {
+        Inventory inventory = sessions.getInventory(slot);
+        return 4 + 4 + 4 + 4 + 8 + sessions.getRoomItems(slot).encodedSize()
+                + 1 + (inventory == null ? 0 : inventory.encodedSize())
+                + sessions.getHistory(slot).encodedSize();
+    }
+
+    /**
+     * This method is used to write the game in a slot.
+     * @param sessions The table holding the game
+     * @param slot The slot of the game
+     * @param out The buffer written at its position, with room for sizeOf bytes
+     */
+    static void write(SessionTable sessions, int slot, ByteBuffer out) {
+        out.putInt(sessions.getId(slot)).putInt(sizeOf(sessions, slot) - 8);
+        out.putInt(sessions.getPosition(slot)).putInt(sessions.getVersion(slot)).putLong(sessions.getStartTime(slot));
+        sessions.getRoomItems(slot).writeTo(out);
+        Inventory inventory = sessions.getInventory(slot);
+        out.put((byte) (inventory == null ? 0 : 1));
+        if (inventory != null) {
+            inventory.writeTo(out);
+        }
+        sessions.getHistory(slot).writeTo(out);
+    }
+
+    /**
+     * This method is used to read a game written by write into a table, replacing a game with the same id.
+     * @param sessions The table the game is put in
+     * @param in The buffer read from its position, just after the id and length
+     * @param id The id read before the game
+     * @param historyLimit The most history entries kept
+     * @param historyRunLength Whether visits to the same room in a row share one history entry
+     * @return The slot of the game
+     */
+    static int read(SessionTable sessions, ByteBuffer in, int id, int historyLimit, boolean historyRunLength) {
+        int slot = sessions.insert(id);
+        sessions.setPosition(slot, in.getInt());
+        sessions.setVersion(slot, in.getInt());
+        sessions.setStartTime(slot, in.getLong());
+        sessions.setRoomItems(slot, ItemOverlay.readFrom(in));
+        sessions.setInventory(slot, in.get() == 0 ? null : Inventory.readFrom(in));
+        sessions.setHistory(slot, TraversalHistory.readFrom(in, historyLimit, historyRunLength));
+        sessions.setStatus(slot, null);
+        return slot;
+    }
+}
@@ -0,0 +1,307 @@
+package student.adventure;
+
+import student.server.GameStatus;
+
+/**
+ * The state of every game instance of an engine, in one open addressing hash table with primitive int keys.
+ * Columns are kept as parallel arrays (struct of arrays), so an instance costs one slot in each array
+ * instead of a boxed key and an entry object in several maps. A command looks its instance up once with
+ * find, then reads and writes the columns by slot. Removal uses backward shifting, so there are no
+ * tombstones. This class is not thread safe.
+ */
+public class SessionTable {
+    private static final int INITIAL_CAPACITY = 16;
+    // Grow when more than 3/4 of the slots are used
+    private static final int LOAD_FACTOR_PERCENT = 75;
+    // Bytes of one slot: start time (long), key, position, last access, version (ints), used flag, and four
+    // references (compressed oops)
+    private static final int SLOT_BYTES = 8 + 4 + 4 + 4 + 4 + 1 + 4 * 4;
+    private int[] keys;
+    private boolean[] used;
+    private int[] positions;
+    // The tick of the latest access, in the unit of whoever tracks idle instances
+    private int[] lastAccess;
+    // Incremented each time the state of the instance changes
+    private int[] versions;
+    // The wall clock time the run started in milliseconds, 0 once it was finished and scored
+    private long[] startTimes;
+    private ItemOverlay[] roomItems;
+    private Inventory[] inventories;
+    private TraversalHistory[] histories;
+    private GameStatus[] statuses;
+    private int size;
+
+    public SessionTable() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        used = new boolean[capacity];
+        positions = new int[capacity];
+        lastAccess = new int[capacity];
+        versions = new int[capacity];
+        startTimes = new long[capacity];
+        roomItems = new ItemOverlay[capacity];
+        inventories = new Inventory[capacity];
+        histories = new TraversalHistory[capacity];
+        statuses = new GameStatus[capacity];
+    }
+
+    /**
+     * This method is used to find the slot of an instance.
+     * @param id The id of the instance
+     * @return The slot of the instance, or -1 if there is no such instance
+     */
+    public int find(int id) {
+        int mask = keys.length - 1;
+        for (int slot = hash(id) & mask; used[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == id) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * This method is used to add an instance, or to get its slot if it already exists.
+     * A new instance starts with every column empty.
+     * @param id The id of the instance
+     * @return The slot of the instance
+     */
+    public int insert(int id) {
+        int slot = find(id);
+        if (slot >= 0) {
+            return slot;
+        }
+        if ((size + 1) * 100L > keys.length * (long) LOAD_FACTOR_PERCENT) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        slot = hash(id) & mask;
+        while (used[slot]) {
+            slot = (slot + 1) & mask;
+        }
+        used[slot] = true;
+        keys[slot] = id;
+        roomItems[slot] = ItemOverlay.EMPTY;
+        size++;
+        return slot;
+    }
+
+    /**
+     * This method is used to remove an instance and release everything it holds.
+     * @param id The id of the instance
+     * @return false if there was no such instance
+     */
+    public boolean remove(int id) {
+        int slot = find(id);
+        if (slot < 0) {
+            return false;
+        }
+        int mask = keys.length - 1;
+        // Shift back the following entries of the probe sequence so that lookups never stop at a hole
+        int hole = slot;
+        for (int next = (hole + 1) & mask; used[next]; next = (next + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+            if (movable) {
+                move(next, hole);
+                hole = next;
+            }
+        }
+        clear(hole);
+        size--;
+        return true;
+    }
+
+    private void move(int from, int to) {
+        keys[to] = keys[from];
+        positions[to] = positions[from];
+        lastAccess[to] = lastAccess[from];
+        versions[to] = versions[from];
+        startTimes[to] = startTimes[from];
+        roomItems[to] = roomItems[from];
+        inventories[to] = inventories[from];
+        histories[to] = histories[from];
+        statuses[to] = statuses[from];
+    }
+
+    private void clear(int slot) {
+        used[slot] = false;
+        roomItems[slot] = null;
+        inventories[slot] = null;
+        histories[slot] = null;
+        statuses[slot] = null;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        int[] oldPositions = positions;
+        int[] oldLastAccess = lastAccess;
+        int[] oldVersions = versions;
+        long[] oldStartTimes = startTimes;
+        ItemOverlay[] oldRoomItems = roomItems;
+        Inventory[] oldInventories = inventories;
+        TraversalHistory[] oldHistories = histories;
+        GameStatus[] oldStatuses = statuses;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int old = 0; old < oldKeys.length; old++) {
+            if (!oldUsed[old]) {
+                continue;
+            }
+            int slot = hash(oldKeys[old]) & mask;
+            while (used[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+            keys[slot] = oldKeys[old];
+            positions[slot] = oldPositions[old];
+            lastAccess[slot] = oldLastAccess[old];
+            versions[slot] = oldVersions[old];
+            startTimes[slot] = oldStartTimes[old];
+            roomItems[slot] = oldRoomItems[old];
+            inventories[slot] = oldInventories[old];
+            histories[slot] = oldHistories[old];
+            statuses[slot] = oldStatuses[old];
+        }
+    }
+
+    /**
+     * This method is used to grow the table once before adding many instances.
+     * @param expectedSize The number of instances the table should hold without growing again
+     */
+    public void ensureCapacity(int expectedSize) {
+        int capacity = keys.length;
+        while (expectedSize * 100L > capacity * (long) LOAD_FACTOR_PERCENT) {
+            capacity *= 2;
+        }
+        if (capacity != keys.length) {
+            resize(capacity);
+        }
+    }
+
+    /**
+     * Removes every instance and shrinks the table back to its initial size.
+     */
+    public void clear() {
+        allocate(INITIAL_CAPACITY);
+        size = 0;
+    }
+
+    // Spread sequential ids over the table (the finalizer of MurmurHash3)
+    private static int hash(int id) {
+        int h = id;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    /**
+     * @return The id of the instance in the given slot.
+     */
+    public int getId(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * @return Whether the slot holds an instance, used to walk over all the slots.
+     */
+    public boolean isUsed(int slot) {
+        return used[slot];
+    }
+
+    public int getPosition(int slot) {
+        return positions[slot];
+    }
+
+    public void setPosition(int slot, int position) {
+        positions[slot] = position;
+    }
+
+    public int getLastAccess(int slot) {
+        return lastAccess[slot];
+    }
+
+    public void setLastAccess(int slot, int tick) {
+        lastAccess[slot] = tick;
+    }
+
+    public int getVersion(int slot) {
+        return versions[slot];
+    }
+
+    public void setVersion(int slot, int version) {
+        versions[slot] = version;
+    }
+
+    public long getStartTime(int slot) {
+        return startTimes[slot];
+    }
+
+    public void setStartTime(int slot, long startTime) {
+        startTimes[slot] = startTime;
+    }
+
+    public ItemOverlay getRoomItems(int slot) {
+        return roomItems[slot];
+    }
+
+    public void setRoomItems(int slot, ItemOverlay overlay) {
+        roomItems[slot] = overlay;
+    }
+
+    public Inventory getInventory(int slot) {
+        return inventories[slot];
+    }
+
+    public void setInventory(int slot, Inventory inventory) {
+        inventories[slot] = inventory;
+    }
+
+    public TraversalHistory getHistory(int slot) {
+        return histories[slot];
+    }
+
+    public void setHistory(int slot, TraversalHistory history) {
+        histories[slot] = history;
+    }
+
+    public GameStatus getStatus(int slot) {
+        return statuses[slot];
+    }
+
+    public void setStatus(int slot, GameStatus status) {
+        statuses[slot] = status;
+    }
+
+    /**
+     * @return The heap used by the table itself, not counting the objects its columns point to.
+     */
+    public long getFootprintBytes() {
+        return (long) keys.length * SLOT_BYTES;
+    }
+
+    /**
+     * @return The heap used by the table itself per live instance, including free slots.
+     */
+    public long getBytesPerSession() {
+        if (size == 0) {
+            return 0;
+        }
+        return getFootprintBytes() / size;
+    }
+}
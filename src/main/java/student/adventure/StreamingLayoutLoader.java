@@ -0,0 +1,259 @@
+package student.adventure;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.apache.commons.io.input.CountingInputStream;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads a layout json file token by token instead of reading the whole file into a String first.
+ * Rooms are added to the room index as soon as they are read, and the starting and ending rooms are
+ * checked as soon as both they and the rooms are known. It accepts the same schema as game.json.
+ * One loader is used for one file, and keeps the statistics of that load.
+ */
+public class StreamingLayoutLoader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Room names, direction names and items repeat a lot, so one copy of each string is kept
+    private final Map<String, String> internedStrings = new HashMap<>();
+    private final List<Room> rooms = new ArrayList<>();
+    // Room name to room, used to check the starting and ending room while reading
+    private final Map<String, Room> roomIndex = new HashMap<>();
+    private String startingRoom;
+    private String endingRoom;
+    private boolean roomsRead = false;
+    private long bytesRead;
+    private long parseNanos;
+
+    /**
+     * This method is used to load a json file into a layout.
+     * @param jsonName A string represents name of the input json file
+     * @return A validated Layout variable parse from json showing the map of this adventure game.
+     * @throws IOException throws exception for reading json file
+     * @throws IllegalArgumentException if the layout is empty or its starting / ending room is missing
+     */
+    public Layout load(String jsonName) throws IOException {
+        try (InputStream input = new FileInputStream(jsonName)) {
+            return load(input);
+        }
+    }
+
+    /**
+     * This method is used to load a layout from a stream of json. The stream is not closed.
+     * @param input The stream to read the json from
+     * @return A validated Layout variable parse from json showing the map of this adventure game.
+     * @throws IOException throws exception for reading json
+     */
+    public Layout load(InputStream input) throws IOException {
+        long start = System.nanoTime();
+        CountingInputStream counting = new CountingInputStream(new BufferedInputStream(input, BUFFER_SIZE));
+        JsonReader reader = new JsonReader(new InputStreamReader(counting, StandardCharsets.UTF_8));
+        // Gson.fromJson is lenient too, so the same files are accepted
+        reader.setLenient(true);
+        try {
+            if (reader.peek() == JsonToken.NULL) {
+                throw new IllegalArgumentException("Empty layout file");
+            }
+            readLayout(reader);
+        } catch (EOFException emptyFile) {
+            throw new IllegalArgumentException("Empty layout file", emptyFile);
+        }
+        roomsRead = true;
+        checkLayout(true);
+        Layout layout = new Layout(startingRoom, endingRoom, rooms.toArray(new Room[0]));
+        parseNanos = System.nanoTime() - start;
+        bytesRead = counting.getByteCount();
+        return layout;
+    }
+
+    private void readLayout(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (field.equals("startingRoom")) {
+                startingRoom = nextString(reader);
+                checkLayout(false);
+            } else if (field.equals("endingRoom")) {
+                endingRoom = nextString(reader);
+                checkLayout(false);
+            } else if (field.equals("rooms") && reader.peek() != JsonToken.NULL) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    Room room = readRoom(reader);
+                    rooms.add(room);
+                    roomIndex.put(room.getName(), room);
+                }
+                reader.endArray();
+                roomsRead = true;
+                checkLayout(false);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private Room readRoom(JsonReader reader) throws IOException {
+        String name = null;
+        String description = null;
+        List<String> items = null;
+        List<Direction> directions = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (field.equals("name")) {
+                name = intern(nextString(reader));
+            } else if (field.equals("description")) {
+                description = nextString(reader);
+            } else if (field.equals("items") && reader.peek() != JsonToken.NULL) {
+                items = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    items.add(intern(nextString(reader)));
+                }
+                reader.endArray();
+            } else if (field.equals("directions") && reader.peek() != JsonToken.NULL) {
+                directions = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    directions.add(readDirection(reader));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Room(name, description, items, directions);
+    }
+
+    private Direction readDirection(JsonReader reader) throws IOException {
+        String directionName = null;
+        String room = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (field.equals("directionName")) {
+                directionName = intern(nextString(reader));
+            } else if (field.equals("room")) {
+                room = intern(nextString(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Direction(directionName, room);
+    }
+
+    /**
+     * A helper function uses to check the starting and ending room against the rooms read so far,
+     * so that an invalid file fails as soon as possible. Missing fields can only be reported at the end.
+     * @param finished Whether the whole file has been read
+     * @throws IllegalArgumentException
+     */
+    private void checkLayout(boolean finished) throws IllegalArgumentException {
+        if (!roomsRead) {
+            return;
+        }
+        if (roomIndex.isEmpty()) {
+            throw new IllegalArgumentException("No room available");
+        }
+        if (startingRoom == null) {
+            if (finished) {
+                throw new IllegalArgumentException("Starting room is null");
+            }
+        } else if (!roomIndex.containsKey(startingRoom)) {
+            throw new IllegalArgumentException("Starting room does not exist");
+        }
+        if (endingRoom == null) {
+            if (finished) {
+                throw new IllegalArgumentException("Ending room is null");
+            }
+        } else if (!roomIndex.containsKey(endingRoom)) {
+            throw new IllegalArgumentException("Ending room does not exist");
+        }
+    }
+
+    private String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String interned = internedStrings.putIfAbsent(value, value);
+        if (interned == null) {
+            return value;
+        }
+        return interned;
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                heapPools.add(pool);
+            }
+        }
+        return heapPools;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public int getRoomCount() {
+        return rooms.size();
+    }
+
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    /**
+     * @return The number of bytes of json parsed per second.
+     */
+    public double getThroughputBytesPerSecond() {
+        if (parseNanos == 0) {
+            return 0;
+        }
+        return bytesRead * 1e9 / parseNanos;
+    }
+
+    /**
+     * Loads the given world files and prints how fast they were parsed and how much heap was used. The
+     * peak usage of the heap pools is reset here, in this tool only, as it is the same for the whole JVM.
+     */
+    public static void main(String[] args) throws IOException {
+        List<MemoryPoolMXBean> heapPools = heapPools();
+        for (String jsonName : args) {
+            heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+            StreamingLayoutLoader loader = new StreamingLayoutLoader();
+            loader.load(jsonName);
+            long peakHeapBytes = 0;
+            for (MemoryPoolMXBean pool : heapPools) {
+                peakHeapBytes += pool.getPeakUsage().getUsed();
+            }
+            System.out.printf("%s: %d rooms, %d bytes in %.1f ms (%.1f MB/s), peak heap %d MB%n", jsonName,
+                    loader.getRoomCount(), loader.getBytesRead(), loader.getParseNanos() / 1e6,
+                    loader.getThroughputBytesPerSecond() / (1024 * 1024), peakHeapBytes / (1024 * 1024));
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package student.adventure;
+
+import java.nio.ByteBuffer;
+import java.util.function.IntConsumer;
+
+/**
+ * The rooms a player went through, stored as a sequence of room ids in a growable ring buffer.
+ * With run length encoding, going into the same room again (like practice -> Practice) only
+ * increments the run of the last entry. When a limit is set and the buffer holds that many entries,
+ * the oldest entry is dropped, so long lived sessions stay bounded. This class is not thread safe.
+ */
+public class TraversalHistory {
+    private static final int INITIAL_CAPACITY = 8;
+    // The most entries kept, 0 for no limit
+    private final int maxEntries;
+    private final boolean runLength;
+    private int[] rooms = new int[INITIAL_CAPACITY];
+    // How many times in a row each entry was visited, null without run length encoding
+    private int[] runs;
+    // Index of the oldest entry in the ring
+    private int head;
+    private int entries;
+    private long visits;
+    private long droppedVisits;
+
+    /**
+     * @param maxEntries The most entries kept before the oldest are dropped, 0 for no limit
+     * @param runLength Whether visits to the same room in a row share one entry
+     */
+    public TraversalHistory(int maxEntries, boolean runLength) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("History limit cannot be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.runLength = runLength;
+        if (runLength) {
+            runs = new int[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * This method is used to record that the player entered a room.
+     * @param room The id of the room
+     */
+    public void add(int room) {
+        if (runLength && entries > 0) {
+            int last = index(entries - 1);
+            if (rooms[last] == room && runs[last] < Integer.MAX_VALUE) {
+                runs[last]++;
+                visits++;
+                return;
+            }
+        }
+        if (maxEntries > 0 && entries == maxEntries) {
+            // Drop the oldest entry to make room
+            droppedVisits += runOf(head);
+            visits -= runOf(head);
+            head = (head + 1) % rooms.length;
+            entries--;
+        } else if (entries == rooms.length) {
+            grow();
+        }
+        int slot = index(entries);
+        rooms[slot] = room;
+        if (runLength) {
+            runs[slot] = 1;
+        }
+        entries++;
+        visits++;
+    }
+
+    private void grow() {
+        int capacity = rooms.length * 2;
+        if (maxEntries > 0) {
+            capacity = Math.min(capacity, maxEntries);
+        }
+        int[] newRooms = new int[capacity];
+        int[] newRuns = runLength ? new int[capacity] : null;
+        for (int i = 0; i < entries; i++) {
+            newRooms[i] = rooms[index(i)];
+            if (runLength) {
+                newRuns[i] = runs[index(i)];
+            }
+        }
+        rooms = newRooms;
+        runs = newRuns;
+        head = 0;
+    }
+
+    private int index(int entry) {
+        return (head + entry) % rooms.length;
+    }
+
+    private int runOf(int slot) {
+        return runLength ? runs[slot] : 1;
+    }
+
+    /**
+     * This method is used to visit every stored room in order, expanding runs.
+     * @param visitor Called with the id of each room
+     */
+    public void forEach(IntConsumer visitor) {
+        forEach(0, visits, visitor);
+    }
+
+    /**
+     * This method is used to visit a page of the stored rooms in order, expanding runs.
+     * @param offset The index of the first visit of the page, 0 is the oldest stored visit
+     * @param limit The most visits in the page
+     * @param visitor Called with the id of each room in the page
+     */
+    public void forEach(long offset, long limit, IntConsumer visitor) {
+        long position = 0;
+        long end = Math.min(visits, offset + limit);
+        for (int entry = 0; entry < entries && position < end; entry++) {
+            int slot = index(entry);
+            int run = runOf(slot);
+            // Skip whole runs before the page
+            if (position + run <= offset) {
+                position += run;
+                continue;
+            }
+            for (int i = 0; i < run && position < end; i++, position++) {
+                if (position >= offset) {
+                    visitor.accept(rooms[slot]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of visits stored, counting every visit of a run.
+     */
+    public long size() {
+        return visits;
+    }
+
+    /**
+     * @return The number of visits dropped because of the limit.
+     */
+    public long getDroppedVisits() {
+        return droppedVisits;
+    }
+
+    /**
+     * @return The number of entries stored, where a run counts once.
+     */
+    public int getEntryCount() {
+        return entries;
+    }
+
+    /**
+     * @return The number of bytes writeTo writes.
+     */
+    int encodedSize() {
+        return 8 + 4 + entries * (4 + 4);
+    }
+
+    /**
+     * This method is used to write the entries oldest first, to be read back by readFrom.
+     * @param out The buffer written at its position
+     */
+    void writeTo(ByteBuffer out) {
+        out.putLong(droppedVisits).putInt(entries);
+        for (int entry = 0; entry < entries; entry++) {
+            int slot = index(entry);
+            out.putInt(rooms[slot]).putInt(runOf(slot));
+        }
+    }
+
+    /**
+     * This method is used to read a history written by writeTo. The limit and encoding may differ from
+     * the ones of the written history, the entries are then added again under the new ones.
+     * @param in The buffer read from its position
+     * @param maxEntries The most entries kept, 0 for no limit
+     * @param runLength Whether visits to the same room in a row share one entry
+     * @return The history
+     */
+    static TraversalHistory readFrom(ByteBuffer in, int maxEntries, boolean runLength) {
+        TraversalHistory history = new TraversalHistory(maxEntries, runLength);
+        history.droppedVisits = in.getLong();
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            int room = in.getInt();
+            int run = in.getInt();
+            if (runLength) {
+                // The whole run at once, counted as it was
+                history.add(room);
+                int last = history.index(history.entries - 1);
+                int before = history.runs[last];
+                history.runs[last] = (int) Math.min(Integer.MAX_VALUE, (long) before + run - 1);
+                history.visits += history.runs[last] - before;
+            } else {
+                for (int j = 0; j < run; j++) {
+                    history.add(room);
+                }
+            }
+        }
+        return history;
+    }
+}
@@ -0,0 +1,187 @@
+package student.adventure;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a layout into the binary world format read by MappedWorld.
+ *
+ * The file is made of a header, a string table, fixed width room records, the item and direction
+ * records they point to, and an index of the rooms sorted by name. Every string (room names,
+ * descriptions, items and direction names) is stored once in the string table and referenced by id.
+ * All numbers are big endian ints.
+ *
+ * Header: magic, version, stringCount, roomCount, itemCount, directionCount, startingRoom, endingRoom,
+ * then the file offsets of the string offsets, string data, rooms, items, directions and name index.
+ */
+public class WorldCompiler {
+    static final int MAGIC = 0x41445657;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 14 * 4;
+    // nameId, descriptionId, itemsStart, itemsCount, directionsStart, directionsCount
+    static final int ROOM_RECORD_SIZE = 6 * 4;
+    // directionNameId, targetNameId, targetRoom
+    static final int DIRECTION_RECORD_SIZE = 3 * 4;
+    // Used for a null string or a null list
+    static final int NONE = -1;
+
+    private final List<byte[]> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIds = new HashMap<>();
+
+    /**
+     * This method is used to compile a layout json file into a binary world file.
+     * @param jsonName A string represents name of the input json file
+     * @param worldName A string represents name of the binary world file to write
+     * @throws IOException throws exception for reading json file or writing the world file
+     */
+    public static void compile(String jsonName, String worldName) throws IOException {
+        Layout layout = new StreamingLayoutLoader().load(jsonName);
+        new WorldCompiler().write(layout, worldName);
+    }
+
+    /**
+     * This method is used to write a validated layout into a binary world file.
+     * @param layout A Layout variable showing the map of this adventure game.
+     * @param worldName A string represents name of the binary world file to write
+     * @throws IOException throws exception for writing the world file
+     */
+    public void write(Layout layout, String worldName) throws IOException {
+        Room[] rooms = layout.getRooms();
+        // Like GameEngine.setMapLayout, the last room with a name wins
+        Map<String, Integer> roomIndex = new HashMap<>();
+        for (int i = 0; i < rooms.length; i++) {
+            roomIndex.put(rooms[i].getName(), i);
+        }
+
+        int[] roomRecords = new int[rooms.length * 6];
+        List<Integer> items = new ArrayList<>();
+        List<Integer> directions = new ArrayList<>();
+        for (int i = 0; i < rooms.length; i++) {
+            Room room = rooms[i];
+            List<String> roomItems = room.getRawItems();
+            List<Direction> roomDirections = room.getRawDirections();
+            roomRecords[i * 6] = stringId(room.getName());
+            roomRecords[i * 6 + 1] = stringId(room.getDescription());
+            roomRecords[i * 6 + 2] = items.size();
+            roomRecords[i * 6 + 3] = roomItems == null ? NONE : roomItems.size();
+            if (roomItems != null) {
+                for (String item : roomItems) {
+                    items.add(stringId(item));
+                }
+            }
+            roomRecords[i * 6 + 4] = directions.size() / 3;
+            roomRecords[i * 6 + 5] = roomDirections == null ? NONE : roomDirections.size();
+            if (roomDirections != null) {
+                for (Direction direction : roomDirections) {
+                    Integer target = roomIndex.get(direction.getRoom());
+                    directions.add(stringId(direction.getDirectionName()));
+                    directions.add(stringId(direction.getRoom()));
+                    directions.add(target == null ? NONE : target);
+                }
+            }
+        }
+        Integer[] nameIndex = new Integer[rooms.length];
+        for (int i = 0; i < rooms.length; i++) {
+            nameIndex[i] = i;
+        }
+        // Sorted by the UTF-8 bytes of the name so that MappedWorld can binary search it without decoding
+        Arrays.sort(nameIndex, (a, b) -> compareBytes(strings.get(roomRecords[a * 6]), strings.get(roomRecords[b * 6])));
+
+        int stringDataSize = 0;
+        for (byte[] string : strings) {
+            stringDataSize += string.length;
+        }
+        int stringOffsetsPos = HEADER_SIZE;
+        int stringDataPos = stringOffsetsPos + (strings.size() + 1) * 4;
+        int roomsPos = stringDataPos + stringDataSize;
+        int itemsPos = roomsPos + rooms.length * ROOM_RECORD_SIZE;
+        int directionsPos = itemsPos + items.size() * 4;
+        int nameIndexPos = directionsPos + directions.size() * 4;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(worldName)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(strings.size());
+            out.writeInt(rooms.length);
+            out.writeInt(items.size());
+            out.writeInt(directions.size() / 3);
+            out.writeInt(roomIndex.get(layout.getStartingRoom()));
+            out.writeInt(roomIndex.get(layout.getEndingRoom()));
+            out.writeInt(stringOffsetsPos);
+            out.writeInt(stringDataPos);
+            out.writeInt(roomsPos);
+            out.writeInt(itemsPos);
+            out.writeInt(directionsPos);
+            out.writeInt(nameIndexPos);
+            int offset = 0;
+            for (byte[] string : strings) {
+                out.writeInt(offset);
+                offset += string.length;
+            }
+            out.writeInt(offset);
+            for (byte[] string : strings) {
+                out.write(string);
+            }
+            for (int value : roomRecords) {
+                out.writeInt(value);
+            }
+            for (int value : items) {
+                out.writeInt(value);
+            }
+            for (int value : directions) {
+                out.writeInt(value);
+            }
+            for (int room : nameIndex) {
+                out.writeInt(room);
+            }
+        }
+    }
+
+    private int stringId(String value) {
+        if (value == null) {
+            return NONE;
+        }
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            stringIds.put(value, id);
+            strings.add(value.getBytes(StandardCharsets.UTF_8));
+        }
+        return id;
+    }
+
+    /**
+     * Compares two byte arrays as unsigned bytes, the order used by the name index.
+     */
+    static int compareBytes(byte[] first, byte[] second) {
+        int length = Math.min(first.length, second.length);
+        for (int i = 0; i < length; i++) {
+            int difference = (first[i] & 0xff) - (second[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return first.length - second.length;
+    }
+
+    /**
+     * Compiles a json layout into a binary world file: WorldCompiler game.json game.world
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: WorldCompiler <layout.json> <output.world>");
+            return;
+        }
+        long start = System.nanoTime();
+        compile(args[0], args[1]);
+        System.out.printf("Compiled %s into %s in %.1f ms%n", args[0], args[1], (System.nanoTime() - start) / 1e6);
+    }
+}
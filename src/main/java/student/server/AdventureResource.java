@@ -1,17 +1,37 @@
 package student.server;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import org.glassfish.grizzly.http.server.HttpServer;
+import student.adventure.GameEngine;
 import student.server.AdventureServer;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
 
 @Path("/")
 public class AdventureResource {
@@ -19,6 +39,46 @@ public class AdventureResource {
      * The single static adventure service instance used for this API.
      */
     private static AdventureService service = new MyAdventureService();
+    /**
+     * The number of history rooms read from the service at a time while streaming a history.
+     */
+    private static final int HISTORY_PAGE_SIZE = 1000;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    /**
+     * The most commands accepted in one batch.
+     */
+    private static final int MAX_BATCH_COMMANDS = 10000;
+    /**
+     * The most instances created by one bulk request.
+     */
+    private static final int MAX_BULK_GAMES = 100000;
+    /**
+     * The header holding the version of the state a client has, to get patches instead of whole states.
+     */
+    private static final String STATUS_SINCE = "X-Status-Since";
+    /**
+     * How long in milliseconds an async command may take before a 503 is sent,
+     * can be set with -Dadventure.async.timeout.
+     */
+    private static final long ASYNC_TIMEOUT = Long.getLong("adventure.async.timeout", 10000);
+    /**
+     * The most async commands running at once, more are refused with a 503,
+     * can be set with -Dadventure.async.maxInFlight.
+     */
+    private static final Semaphore ASYNC_IN_FLIGHT = new Semaphore(Integer.getInteger("adventure.async.maxInFlight", 1000));
+    /**
+     * Pushes state changes to the clients subscribed to the events of an instance. Changes are sent at
+     * most once per flush interval (-Dadventure.push.flush, milliseconds).
+     */
+    private static final StatusPushHub PUSH_HUB = new StatusPushHub(service,
+            Long.getLong("adventure.push.flush", 50), Long.getLong("adventure.push.heartbeat", 15000));
+
+    /**
+     * @return The service behind the endpoints, shared with the binary protocol listener.
+     */
+    static AdventureService getService() {
+        return service;
+    }
 
     public void createServer() {
 
@@ -55,23 +115,114 @@ public class AdventureResource {
     @Produces(MediaType.APPLICATION_JSON)
     public Response create() throws AdventureException {
         int id = service.newGame();
-        return getGame(id);
+        return statusResponse(id);
+    }
+
+    /**
+     * The API endpoint to create many instances of the adventure game at once, with consecutive ids.
+     * Only the range of ids is returned, not the state of each game.
+     * @param count the number of games to create
+     * @return the first and last id, the count, and how fast they were created; an error response if
+     *         the count is not allowed
+     * @throws AdventureException if the games could not be created
+     */
+    @POST
+    @Path("create/bulk")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response createBulk(@QueryParam("count") @DefaultValue("1") int count) throws AdventureException {
+        if (count < 1 || count > MAX_BULK_GAMES) {
+            return Response
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity(new Error("Between 1 and " + MAX_BULK_GAMES + " games can be created at once."))
+                    .build();
+        }
+        return Response.ok(service.newGames(count)).build();
+    }
+
+    /**
+     * The API endpoint to delete every instance with an id in a range.
+     * @param from the first id of the range
+     * @param to the last id of the range, included
+     * @return the number of instances deleted and how fast they were deleted; an error response if an id
+     *         is missing or the range is not allowed
+     */
+    @DELETE
+    @Path("instance/bulk")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response destroyBulk(@QueryParam("from") Integer from, @QueryParam("to") Integer to) {
+        if (from == null || to == null || from < 1 || from > to || (long) to - from + 1 > MAX_BULK_GAMES) {
+            return Response
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity(new Error("Give from and to, with 1 <= from <= to, to delete up to "
+                            + MAX_BULK_GAMES + " ids at once."))
+                    .build();
+        }
+        return Response.ok(service.destroyGames(from, to)).build();
     }
 
     /**
      * The API endpoint to query the state of a game instance.
+     * The response carries the epoch of the service and the version of the state as its ETag, so a tag
+     * from before a reset or restart never matches a new game. When the client sends the ETag it
+     * already has in If-None-Match and the state did not change since, a 304 is returned without
+     * reading or serializing the state.
      * @param id the ID of the game instance
-     * @return a valid game state if found; an error response if not found
+     * @param ifNoneMatch the ETags the client already has, or null
+     * @return a valid game state if found; 304 if not modified; an error response if not found
      */
     @GET
     @Path("instance/{id: \\d+}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getGame(@PathParam("id") int id) {
+    public Response getGame(@PathParam("id") int id, @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            int version = service.getGameVersion(id);
+            if (version < 0) {
+                return instanceNotFound(id);
+            }
+            if (matches(ifNoneMatch, entityTag(id, version))) {
+                return Response.notModified(entityTag(id, version)).build();
+            }
+        }
+        return statusResponse(id);
+    }
+
+    /**
+     * Helper method to build the response holding the state of a game instance with its ETag.
+     * The version is read before the state, so the state is never older than the ETag says.
+     * @param id the ID of the game instance
+     */
+    private Response statusResponse(int id) {
+        int version = service.getGameVersion(id);
         GameStatus status = service.getGame(id);
         if (status == null) {
             return instanceNotFound(id);
         }
-        return Response.ok(status).build();
+        return Response.ok(status).tag(entityTag(id, version)).build();
+    }
+
+    /**
+     * Helper method to build the ETag of a version of the state of a game instance, as epoch-id.version.
+     */
+    private EntityTag entityTag(int id, int version) {
+        return new EntityTag(service.getEpoch() + "-" + id + "." + version);
+    }
+
+    /**
+     * Helper method to check an If-None-Match header against an ETag, weak tags included.
+     * @param ifNoneMatch the header, a list of quoted tags or *
+     * @param tag the ETag of the current state
+     */
+    private static boolean matches(String ifNoneMatch, EntityTag tag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals("\"" + tag.getValue() + "\"")) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -92,23 +243,208 @@ public class AdventureResource {
 
     /**
      * The API endpoint to handle a command issued to the game engine.
+     * A client that sends the version of the state it has, in the X-Status-Since header or the since
+     * query parameter (the part after the dot of the ETag), gets only the fields that changed as a
+     * StatusPatch. If it missed a version, the patch holds the whole state with resync set instead.
      * @param id the ID of the game instance currently being played
      * @param command the command issued by the client
+     * @param sinceHeader the version the client has, from the header, or null for the whole state
+     * @param since the version the client has, from the query, or null for the whole state
      * @return the result of the issued command
      */
     @POST
     @Path("instance/{id: \\d+}/command")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response handleCommand(@PathParam("id") int id, Command command) {
+    public Response handleCommand(@PathParam("id") int id, Command command,
+                                  @HeaderParam(STATUS_SINCE) Integer sinceHeader,
+                                  @QueryParam("since") Integer since) {
+        if (command != null && !CommandJournal.fits(command)) {
+            return commandTooLong();
+        }
+        Integer knownVersion = since != null ? since : sinceHeader;
+        if (knownVersion != null) {
+            StatusPatch patch = service.executeCommandPatch(id, command, knownVersion);
+            if (patch == null) {
+                return instanceNotFound(id);
+            }
+            return Response.ok(patch).tag(entityTag(id, patch.getVersion())).build();
+        }
         service.executeCommand(id, command);
 
-        return getGame(id);
+        return statusResponse(id);
     }
 
     /**
-     * The API endpoint to return an ordered mapping of players to "high" scores.
-     * @return a response with a sorted map of "high" scores
+     * The API endpoint to handle an ordered batch of commands in one request, for scripted play.
+     * The commands run one after another as a single operation on the game, and only the state after
+     * the last one is returned.
+     * @param id the ID of the game instance currently being played
+     * @param commands the commands issued by the client, in order
+     * @param steps whether to also return the room the player is in after each command
+     * @return the final state and the optional steps; an error response if not found or the batch is too large
+     */
+    @POST
+    @Path("instance/{id: \\d+}/commands")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response handleCommands(@PathParam("id") int id, List<Command> commands,
+                                   @QueryParam("steps") @DefaultValue("false") boolean steps) {
+        if (commands == null || commands.size() > MAX_BATCH_COMMANDS) {
+            return Response
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity(new Error("A batch holds 0 to " + MAX_BATCH_COMMANDS + " commands."))
+                    .build();
+        }
+        // Checked before anything runs, so an invalid batch changes nothing
+        int invalid = GameEngine.findInvalidCommand(commands);
+        if (invalid >= 0) {
+            return Response
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity(new Error("Command " + invalid + " of the batch has no name."))
+                    .build();
+        }
+        if (!commands.stream().allMatch(CommandJournal::fits)) {
+            return commandTooLong();
+        }
+        CommandBatchResult result = service.executeCommands(id, commands, steps);
+        if (result == null) {
+            return instanceNotFound(id);
+        }
+        return Response.ok(result).build();
+    }
+
+    /**
+     * The API endpoint to handle a command without holding a server thread while it runs.
+     * The request is suspended until the shard of the game has run the command, so a slow command
+     * never pins a worker thread. The synchronous endpoint above is kept to compare both under load.
+     * @param id the ID of the game instance currently being played
+     * @param command the command issued by the client
+     * @param asyncResponse resumed with the result of the issued command, or a 503 if too many commands
+     *                      are running or the command took too long
+     */
+    @POST
+    @Path("instance/{id: \\d+}/command/async")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void handleCommandAsync(@PathParam("id") int id, Command command,
+                                   @Suspended AsyncResponse asyncResponse) {
+        if (command != null && !CommandJournal.fits(command)) {
+            asyncResponse.resume(commandTooLong());
+            return;
+        }
+        if (!ASYNC_IN_FLIGHT.tryAcquire()) {
+            asyncResponse.resume(serviceUnavailable("Too many commands in flight."));
+            return;
+        }
+        asyncResponse.setTimeout(ASYNC_TIMEOUT, TimeUnit.MILLISECONDS);
+        asyncResponse.setTimeoutHandler(response -> response.resume(serviceUnavailable("Command timed out.")));
+        service.executeCommandAsync(id, command).whenComplete((status, failure) -> {
+            // Released when the command is done, even if the client was already answered by the timeout
+            ASYNC_IN_FLIGHT.release();
+            if (failure != null) {
+                asyncResponse.resume(failure);
+            } else if (status == null) {
+                asyncResponse.resume(instanceNotFound(id));
+            } else {
+                asyncResponse.resume(Response.ok(status).build());
+            }
+        });
+    }
+
+    /**
+     * The API endpoint to subscribe to the state of a game instance as server sent events, instead of
+     * polling it. The current state is sent first, then a "status" event whenever it changes, with the
+     * ETag of the state as the event id; quick changes are coalesced so only the latest state is sent.
+     * A "gone" event is sent and the stream closed when the instance is destroyed or ended.
+     * @param id the ID of the game instance
+     * @param sink the event stream of the client
+     * @param sse the factory of events
+     */
+    @GET
+    @Path("instance/{id: \\d+}/events")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void subscribe(@PathParam("id") int id, @Context SseEventSink sink, @Context Sse sse) {
+        if (service.getGameVersion(id) < 0) {
+            // Sent as json, an error cannot be written as an event stream
+            throw new WebApplicationException(Response.fromResponse(instanceNotFound(id))
+                    .type(MediaType.APPLICATION_JSON_TYPE).build());
+        }
+        PUSH_HUB.subscribe(id, sink, sse);
+    }
+
+    /**
+     * The API endpoint to query a page of the rooms a game instance went through, oldest first.
+     * The rooms are written to the response as they are read, a page of the service at a time,
+     * so a huge history is never joined in memory.
+     * @param id the ID of the game instance
+     * @param offset the index of the first room to return
+     * @param limit the most rooms to return
+     * @return the id, total number of rooms kept, offset and room names; an error response if not found or
+     *         the offset or limit is negative
+     */
+    @GET
+    @Path("instance/{id: \\d+}/history")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getHistory(@PathParam("id") int id, @QueryParam("offset") @DefaultValue("0") long offset,
+                               @QueryParam("limit") @DefaultValue("1000") long limit) {
+        if (offset < 0 || limit < 0) {
+            return Response
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity(new Error("The offset and limit of a history page cannot be negative."))
+                    .build();
+        }
+        long total = service.getHistorySize(id);
+        if (total < 0) {
+            return instanceNotFound(id);
+        }
+        long start = offset;
+        // The limit is cut to the rooms left first, so a huge one cannot overflow
+        long end = start + Math.min(limit, Math.max(0, total - start));
+        StreamingOutput output = outputStream -> {
+            try (JsonGenerator json = JSON_FACTORY.createGenerator(outputStream)) {
+                json.writeStartObject();
+                json.writeNumberField("id", id);
+                json.writeNumberField("total", total);
+                json.writeNumberField("offset", start);
+                json.writeArrayFieldStart("rooms");
+                for (long pageStart = start; pageStart < end; pageStart += HISTORY_PAGE_SIZE) {
+                    int pageSize = (int) Math.min(HISTORY_PAGE_SIZE, end - pageStart);
+                    List<String> page = service.getHistory(id, pageStart, pageSize);
+                    // The game may have been destroyed while streaming
+                    if (page == null || page.isEmpty()) {
+                        break;
+                    }
+                    for (String room : page) {
+                        json.writeString(room);
+                    }
+                    json.flush();
+                }
+                json.writeEndArray();
+                json.writeEndObject();
+            }
+        };
+        return Response.ok(output).build();
+    }
+
+    /**
+     * The API endpoint to query the number of live game instances, how many were evicted, and the
+     * counters of the event streams.
+     * @return a response with the session counters
+     */
+    @GET
+    @Path("sessions")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getSessionStats() {
+        Map<String, Long> stats = new LinkedHashMap<>(service.getSessionStats());
+        stats.putAll(PUSH_HUB.getStats());
+        return Response.ok(stats).build();
+    }
+
+    /**
+     * The API endpoint to return the best finished games, best first. The board is built when a game
+     * makes it, so nothing is sorted here.
+     * @return a response with the latest snapshot of the leaderboard
      */
     @GET
     @Path("leaderboard")
@@ -117,6 +453,28 @@ public class AdventureResource {
         return Response.ok(service.fetchLeaderboard()).build();
     }
 
+    /**
+     * Helper method to build a `serviceUnavailable` error.
+     * @param message why the request could not be served
+     */
+    private Response serviceUnavailable(String message) {
+        return Response
+                .status(Response.Status.SERVICE_UNAVAILABLE)
+                .entity(new Error(message))
+                .build();
+    }
+
+    /**
+     * Helper method to build a `commandTooLong` error, for a command the journal could not record.
+     */
+    private Response commandTooLong() {
+        return Response
+                .status(Response.Status.BAD_REQUEST)
+                .entity(new Error("A command name or value is longer than "
+                        + CommandJournal.MAX_STRING_BYTES + " bytes."))
+                .build();
+    }
+
     /**
      * Helper method to build an `instanceNotFound` error.
      * @param id the instance ID
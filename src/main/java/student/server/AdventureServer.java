@@ -1,8 +1,8 @@
 package student.server;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.URI;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.ws.rs.container.ContainerRequestContext;
@@ -15,7 +15,6 @@ import org.glassfish.grizzly.ssl.SSLContextConfigurator;
 import org.glassfish.grizzly.ssl.SSLEngineConfigurator;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
 import org.glassfish.jersey.logging.LoggingFeature;
-import org.glassfish.jersey.logging.LoggingFeature.Verbosity;
 import org.glassfish.jersey.server.ResourceConfig;
 
 
@@ -43,10 +42,11 @@ public class AdventureServer {
 
     public static HttpServer createServer(final Class<?> resourceClass) throws IOException {
         final ResourceConfig resourceConfig = new ResourceConfig(resourceClass);
-        resourceConfig.register(
-                new LoggingFeature(Logger.getLogger(LoggingFeature.DEFAULT_LOGGER_NAME), Level.INFO, Verbosity.PAYLOAD_ANY, 10000)
-        );
+        // Sampled compact entries written by a background thread, instead of every payload on the request thread
+        resourceConfig.register(new RequestLogFilter());
         resourceConfig.register(CORSResponseFilter.class);
+        // Writes game statuses from pre-encoded room fragments instead of going through Jackson
+        resourceConfig.register(GameStatusWriter.class);
 
         // Grizzly ssl configuration
         SSLContextConfigurator sslContext = new SSLContextConfigurator();
@@ -72,4 +72,14 @@ public class AdventureServer {
 
         return server;
     }
-}
\ No newline at end of file
+
+    /**
+     * This method is used to create the optional binary protocol listener, backed by the same service
+     * as the REST endpoints. It is not started.
+     * @param port The port to listen on
+     * @return The listener
+     */
+    public static BinaryProtocolServer createBinaryServer(int port) throws IOException {
+        return new BinaryProtocolServer(AdventureResource.getService(), new InetSocketAddress(port));
+    }
+}
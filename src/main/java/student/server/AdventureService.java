@@ -1,6 +1,8 @@
 package student.server;
 
-import java.util.SortedMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * An abstract store for any type of adventure game.
@@ -17,6 +19,27 @@ public interface AdventureService {
      */
     int newGame() throws AdventureException;
 
+    /**
+     * Creates a new Adventure game and stores it without waiting for it.
+     * @return a future completed with the state of the new game, or null if it could not be created
+     */
+    CompletableFuture<GameStatus> newGameAsync();
+
+    /**
+     * Creates many Adventure games at once, with consecutive ids.
+     * @param count the number of games
+     * @return the range of ids of the games and how long it took
+     */
+    BulkOperationResult newGames(int count) throws AdventureException;
+
+    /**
+     * Removes & destroys every game instance with an id in the given range.
+     * @param firstId the first id of the range
+     * @param lastId the last id of the range, included
+     * @return the number of instances destroyed and how long it took
+     */
+    BulkOperationResult destroyGames(int firstId, int lastId);
+
     /**
      * Returns the state of the game instance associated with the given ID.
      * @param id the instance id
@@ -24,6 +47,34 @@ public interface AdventureService {
      */
     GameStatus getGame(int id);
 
+    /**
+     * Returns the state of the game instance with the given id without waiting for it.
+     * @param id the instance id
+     * @return a future completed with the current state of the game, or null if it could not be found
+     */
+    CompletableFuture<GameStatus> getGameAsync(int id);
+
+    /**
+     * Returns the version of the state of the game instance, which goes up each time the state changes.
+     * @param id the instance id
+     * @return the version, or -1 if the instance could not be found
+     */
+    int getGameVersion(int id);
+
+    /**
+     * Returns the state of the game instance with its version, read together, without waiting for it.
+     * @param id the instance id
+     * @return a future completed with the state and its version, or null if the instance could not be found
+     */
+    CompletableFuture<VersionedStatus> getVersionedGameAsync(int id);
+
+    /**
+     * Returns the epoch of the service, which changes each time it is started or reset. Ids and versions
+     * start over with a new epoch, so a game is only known by its epoch, id and version together.
+     * @return the epoch
+     */
+    long getEpoch();
+
     /**
      * Removes & destroys a game instance with the given ID.
      * @param id the instance id
@@ -39,8 +90,64 @@ public interface AdventureService {
     void executeCommand(int id, Command command);
 
     /**
-     * Returns a sorted leaderboard of player "high" scores.
-     * @return a sorted map of player names to scores
+     * Executes a command on the game instance with the given id without waiting for it.
+     * @param id the instance id
+     * @param command the issued command
+     * @return a future completed with the state after the command, or null if the instance could not be found
+     */
+    CompletableFuture<GameStatus> executeCommandAsync(int id, Command command);
+
+    /**
+     * Executes a command on the game instance with the given id and returns only what changed since
+     * the version the client already has.
+     * @param id the instance id
+     * @param command the issued command
+     * @param knownVersion the version of the state the client has
+     * @return the changes from the known version, the whole state if the client does not have the version
+     *         before the command, or null if the instance could not be found
+     */
+    StatusPatch executeCommandPatch(int id, Command command, int knownVersion);
+
+    /**
+     * Executes several commands on the game instance with the given id, in order, as one operation.
+     * @param id the instance id
+     * @param commands the issued commands
+     * @param withSteps whether to return the room the player is in after each command
+     * @return the state after the last command and the rooms of each step, or null if the instance could not be found
+     */
+    CommandBatchResult executeCommands(int id, List<Command> commands, boolean withSteps);
+
+    /**
+     * Returns a page of the rooms a game instance went through, oldest first.
+     * @param id the instance id
+     * @param offset the index of the first room of the page
+     * @param limit the most rooms in the page
+     * @return the names of the rooms in the page, or null if the instance could not be found
+     */
+    List<String> getHistory(int id, long offset, int limit);
+
+    /**
+     * Returns how many rooms are kept in the history of a game instance.
+     * @param id the instance id
+     * @return the number of rooms, or -1 if the instance could not be found
+     */
+    long getHistorySize(int id);
+
+    /**
+     * Returns the number of live games and how many were ended for being unused or over the limit.
+     * @return the counters by name
+     */
+    Map<String, Long> getSessionStats();
+
+    /**
+     * Adds a listener told each time the state of a game instance changes or the instance is destroyed.
+     * @param listener the listener
+     */
+    void addStatusListener(StatusListener listener);
+
+    /**
+     * Returns the leaderboard of the best finished games, scored by moves, items held and time taken.
+     * @return the latest snapshot of the leaderboard, best first
      */
-    SortedMap<String, Integer> fetchLeaderboard();
+    LeaderboardSnapshot fetchLeaderboard();
 }
@@ -0,0 +1,406 @@
+package student.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A second listener of the server speaking a length prefixed binary protocol over plain TCP, for clients
+ * such as bots that send many commands and have no use for HTTP, TLS and JSON requests.
+ * Every frame starts with its length, a big endian int not counting itself. A request is an opcode byte
+ * followed by its arguments:
+ *   1 create
+ *   2 command: the int id, then the name and the value of the command, each a short length and UTF-8 bytes
+ *   3 get: the int id
+ * A response is a status byte followed by the state of the game as JSON (0 ok), or a UTF-8 message
+ * (1 not found, 2 bad request, 3 server error).
+ * A client may pipeline requests, sending many without waiting: they run at once on the shards of the
+ * service, and the responses come back in the order of the requests. One selector thread does all the
+ * network work, with direct buffers; states are encoded on the shard threads as they complete.
+ */
+public class BinaryProtocolServer {
+    public static final byte OP_CREATE = 1;
+    public static final byte OP_COMMAND = 2;
+    public static final byte OP_GET = 3;
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_NOT_FOUND = 1;
+    public static final byte STATUS_BAD_REQUEST = 2;
+    public static final byte STATUS_SERVER_ERROR = 3;
+    /**
+     * The largest request frame accepted, a client sending a larger one is disconnected.
+     */
+    public static final int MAX_FRAME = 64 * 1024;
+    // A connection is not read while this many of its requests wait for a response
+    private static final int MAX_PENDING = 1024;
+    private static final byte[] NO_HEADER = new byte[5];
+    private final AdventureService service;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread selectorThread;
+    // Connections with responses to send, filled by the shard threads
+    private final Queue<Connection> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicLong requests = new AtomicLong();
+    private volatile boolean running = true;
+
+    /**
+     * @param service The service holding the game instances, the same one as the REST endpoints
+     * @param address The address to listen on, port 0 for any free port
+     */
+    public BinaryProtocolServer(AdventureService service, InetSocketAddress address) throws IOException {
+        this.service = service;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        selectorThread = new Thread(this::runLoop, "adventure-binary-selector");
+        selectorThread.setDaemon(true);
+    }
+
+    /**
+     * This method is used to start accepting connections.
+     */
+    public void start() {
+        selectorThread.start();
+    }
+
+    /**
+     * This method is used to stop the server and close every connection.
+     */
+    public void stop() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    /**
+     * @return The port the server listens on.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * @return The number of requests received.
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException exception) {
+                return;
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+                Connection connection = (Connection) key.attachment();
+                if (key.isReadable()) {
+                    connection.read();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.flush();
+                }
+            }
+            for (Connection connection = ready.poll(); connection != null; connection = ready.poll()) {
+                connection.flush();
+            }
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(channel, key));
+        } catch (IOException exception) {
+            // The client went away before it was accepted
+        }
+    }
+
+    /**
+     * This method is used to build a response frame holding a state, or an error if there is none.
+     * @param status The state, or null if the game was not found
+     * @param failure What the request threw, or null
+     * @return The whole frame, length included
+     */
+    static byte[] encodeResponse(GameStatus status, Throwable failure) {
+        if (failure != null) {
+            Throwable cause = failure.getCause() != null ? failure.getCause() : failure;
+            return encodeError(STATUS_BAD_REQUEST, String.valueOf(cause.getMessage()));
+        }
+        if (status == null) {
+            return encodeError(STATUS_NOT_FOUND, "No game found.");
+        }
+        ByteArrayOutputStream buffer = GameStatusWriter.threadBuffer();
+        // The length and status are written over these five bytes once the size is known
+        buffer.write(NO_HEADER, 0, NO_HEADER.length);
+        byte[] frame;
+        try {
+            GameStatusWriter.write(status, buffer);
+            frame = buffer.toByteArray();
+        } catch (IOException exception) {
+            return encodeError(STATUS_BAD_REQUEST, String.valueOf(exception.getMessage()));
+        } finally {
+            GameStatusWriter.releaseThreadBuffer(buffer);
+        }
+        ByteBuffer.wrap(frame).putInt(frame.length - 4).put(STATUS_OK);
+        return frame;
+    }
+
+    /**
+     * This method is used to build the response frame of a create request. A create finds no game only
+     * when the game could not be started, which is an error of the server.
+     * @param status The state of the new game, or null if it could not be started
+     * @param failure What the request threw, or null
+     * @return The whole frame, length included
+     */
+    static byte[] encodeCreateResponse(GameStatus status, Throwable failure) {
+        if (failure != null) {
+            Throwable cause = failure.getCause() != null ? failure.getCause() : failure;
+            return encodeError(STATUS_SERVER_ERROR, "Could not create a game: " + cause.getMessage());
+        }
+        if (status == null) {
+            return encodeError(STATUS_SERVER_ERROR, "Could not create a game.");
+        }
+        return encodeResponse(status, null);
+    }
+
+    private static byte[] encodeError(byte code, String message) {
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(5 + text.length);
+        frame.putInt(1 + text.length).put(code).put(text);
+        return frame.array();
+    }
+
+    private static String readString(ByteBuffer frame) {
+        int length = frame.getShort() & 0xFFFF;
+        if (length > frame.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        frame.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A request waiting for its response, which is set by a shard thread.
+     */
+    private static class Pending {
+        volatile byte[] response;
+    }
+
+    /**
+     * A client connection, only used by the selector thread except for the ready flag.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer input = ByteBuffer.allocateDirect(MAX_FRAME + 4);
+        // Kept in fill mode: the bytes to send are before its position
+        private final ByteBuffer output = ByteBuffer.allocateDirect(MAX_FRAME + 4);
+        // A response too large for the output buffer, sent on its own
+        private ByteBuffer large;
+        private final Queue<Pending> pending = new ArrayDeque<>();
+        private final AtomicBoolean queued = new AtomicBoolean();
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void read() {
+            try {
+                if (channel.read(input) < 0) {
+                    close();
+                    return;
+                }
+            } catch (IOException exception) {
+                close();
+                return;
+            }
+            parse();
+        }
+
+        // Starts every complete request frame in the input buffer
+        private void parse() {
+            input.flip();
+            while (input.remaining() >= 4 && pending.size() < MAX_PENDING) {
+                int length = input.getInt(input.position());
+                if (length < 1 || length > MAX_FRAME) {
+                    close();
+                    return;
+                }
+                if (input.remaining() < 4 + length) {
+                    break;
+                }
+                int frameEnd = input.position() + 4 + length;
+                input.position(input.position() + 4);
+                ByteBuffer frame = input.slice();
+                frame.limit(length);
+                input.position(frameEnd);
+                handle(frame);
+            }
+            input.compact();
+            updateInterest();
+        }
+
+        private void handle(ByteBuffer frame) {
+            requests.incrementAndGet();
+            Pending request = new Pending();
+            pending.add(request);
+            CompletableFuture<GameStatus> result;
+            byte opcode;
+            try {
+                opcode = frame.get();
+                if (opcode == OP_CREATE) {
+                    result = service.newGameAsync();
+                } else if (opcode == OP_COMMAND) {
+                    int id = frame.getInt();
+                    String name = readString(frame);
+                    String value = readString(frame);
+                    result = service.executeCommandAsync(id, new Command(name, value));
+                } else if (opcode == OP_GET) {
+                    result = service.getGameAsync(frame.getInt());
+                } else {
+                    request.response = encodeError(STATUS_BAD_REQUEST, "Unknown opcode " + opcode + ".");
+                    // Answered right away, so nothing else would send the response
+                    responded();
+                    return;
+                }
+            } catch (BufferUnderflowException exception) {
+                request.response = encodeError(STATUS_BAD_REQUEST, "Request too short.");
+                responded();
+                return;
+            }
+            boolean create = opcode == OP_CREATE;
+            result.whenComplete((status, failure) -> {
+                request.response = create ? encodeCreateResponse(status, failure) : encodeResponse(status, failure);
+                responded();
+            });
+        }
+
+        // Queues the connection to send the responses that are done, from any thread
+        private void responded() {
+            if (queued.compareAndSet(false, true)) {
+                ready.add(this);
+                selector.wakeup();
+            }
+        }
+
+        void flush() {
+            queued.set(false);
+            if (!channel.isOpen()) {
+                return;
+            }
+            boolean wasFull = pending.size() >= MAX_PENDING;
+            try {
+                while (true) {
+                    if (large != null) {
+                        channel.write(large);
+                        if (large.hasRemaining()) {
+                            break;
+                        }
+                        large = null;
+                    }
+                    fill();
+                    if (output.position() == 0 && large == null) {
+                        break;
+                    }
+                    output.flip();
+                    channel.write(output);
+                    boolean written = !output.hasRemaining();
+                    output.compact();
+                    if (!written) {
+                        break;
+                    }
+                }
+            } catch (IOException exception) {
+                close();
+                return;
+            }
+            if (wasFull && pending.size() < MAX_PENDING) {
+                // Requests left in the input buffer while too many were pending
+                parse();
+            } else {
+                updateInterest();
+            }
+        }
+
+        // Moves the responses that are done, in request order, to the output buffer
+        private void fill() {
+            while (!pending.isEmpty() && pending.peek().response != null) {
+                byte[] response = pending.peek().response;
+                if (response.length > output.capacity()) {
+                    if (output.position() > 0) {
+                        return;
+                    }
+                    large = ByteBuffer.wrap(response);
+                    pending.poll();
+                    return;
+                }
+                if (response.length > output.remaining()) {
+                    return;
+                }
+                output.put(response);
+                pending.poll();
+            }
+        }
+
+        private void updateInterest() {
+            if (!key.isValid()) {
+                return;
+            }
+            boolean reading = pending.size() < MAX_PENDING;
+            boolean writing = large != null || output.position() > 0;
+            key.interestOps((reading ? SelectionKey.OP_READ : 0) | (writing ? SelectionKey.OP_WRITE : 0));
+        }
+
+        private void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException exception) {
+                // Already closed
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package student.server;
+
+/**
+ * The result of creating or destroying a range of game instances at once.
+ */
+public class BulkOperationResult {
+    /**
+     * The first instance id of the range.
+     */
+    private int firstId;
+    /**
+     * The last instance id of the range, included.
+     */
+    private int lastId;
+    /**
+     * The number of instances created or destroyed.
+     */
+    private int count;
+    /**
+     * How long the operation took in nanoseconds.
+     */
+    private long elapsedNanos;
+
+    public BulkOperationResult(int firstId, int lastId, int count, long elapsedNanos) {
+        this.firstId = firstId;
+        this.lastId = lastId;
+        this.count = count;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getFirstId() {
+        return firstId;
+    }
+
+    public int getLastId() {
+        return lastId;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return The number of instances created or destroyed per second.
+     */
+    public double getPerSecond() {
+        if (elapsedNanos <= 0) {
+            return 0;
+        }
+        return count * 1e9 / elapsedNanos;
+    }
+}
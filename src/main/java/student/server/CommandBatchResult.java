@@ -0,0 +1,30 @@
+package student.server;
+
+import java.util.List;
+
+/**
+ * The result of a batch of commands run on one game instance.
+ */
+public class CommandBatchResult {
+    /**
+     * The state of the game after the last command.
+     */
+    private GameStatus status;
+    /**
+     * The name of the room the player was in after each command, or null if not asked for.
+     */
+    private List<String> steps;
+
+    public CommandBatchResult(GameStatus status, List<String> steps) {
+        this.status = status;
+        this.steps = steps;
+    }
+
+    public GameStatus getStatus() {
+        return status;
+    }
+
+    public List<String> getSteps() {
+        return steps;
+    }
+}
@@ -0,0 +1,608 @@
+package student.server;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * An append only journal of everything that changes the games of a service, to rebuild them after a
+ * restart (event sourcing). Records are added by the shard threads in the order they change their games,
+ * and written by a single writer thread to segment files through a FileChannel. The writer writes all the
+ * records waiting at once and syncs the file at most once per sync interval, so many records share one
+ * fsync (group commit); a crash loses at most the records of the last interval.
+ * A record is its body length, a CRC32 of the body, then the body: the sequence number, the type, the
+ * game id and the arguments of the type. The sequence number is given as the record is queued, so it
+ * grows along the journal and a shard can tell which of its records came before a point in time. Each
+ * segment is named after the sequence number of its first record. A torn record at the end of the last
+ * segment is cut off when the journal is replayed, and segments older than a snapshot can be deleted.
+ * If the writer cannot write, the journal stops: the records waiting are dropped and every later append
+ * throws, so the games are never changed again without being recorded.
+ */
+public class CommandJournal {
+    static final byte CREATE = 1;
+    static final byte COMMAND = 2;
+    static final byte DESTROY = 3;
+    static final byte CREATE_BULK = 4;
+    static final byte DESTROY_RANGE = 5;
+    static final byte RESET = 6;
+    static final byte LAYOUT = 7;
+    // The longest name or value of a command a record holds, in UTF-8 bytes
+    public static final int MAX_STRING_BYTES = Short.MAX_VALUE;
+    private static final Logger LOGGER = Logger.getLogger(CommandJournal.class.getName());
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    // Length, CRC, then sequence number, type and id
+    private static final int HEADER_BYTES = 4 + 4;
+    private static final int BODY_HEADER_BYTES = 8 + 1 + 4;
+    private static final int MAX_RECORD = 1 << 20;
+    private static final int QUEUE_SIZE = 65536;
+    private final Path directory;
+    private final long syncMillis;
+    private final long segmentBytes;
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final ByteBuffer output = ByteBuffer.allocateDirect(1 << 20);
+    private final CRC32 crc = new CRC32();
+    private FileChannel segment;
+    // Guards the sequence numbers, so records are queued in sequence order
+    private final Object appendLock = new Object();
+    private long nextSequence = 1;
+    // The sequence number of the last record written and the first of the segment, only used by the writer
+    private long lastWritten;
+    private long segmentFirst;
+    // Segments holding only records before this sequence number may be deleted
+    private volatile long compactBefore;
+    private long compactedBefore;
+    private Thread writer;
+    private volatile boolean running = true;
+    // Why the writer stopped, or null while it writes
+    private volatile IOException failure;
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    private final AtomicLong deletedSegments = new AtomicLong();
+    // The records written at the last sync, only used by the writer
+    private long lastSyncedCount;
+    private volatile long lastGroupSize;
+    private volatile long maxGroupSize;
+    private volatile long replayedRecords;
+    private volatile long replayMillis;
+
+    /**
+     * Told each record of the journal, in order, with its sequence number, when it is replayed.
+     */
+    public interface Visitor {
+        void created(long sequence, int id);
+
+        void command(long sequence, int id, Command command);
+
+        void destroyed(long sequence, int id);
+
+        /**
+         * @param sequence The sequence number of the record
+         * @param firstId The id of the first game
+         * @param count The number of games
+         * @param stride The difference between the ids of consecutive games
+         */
+        void createdBulk(long sequence, int firstId, int count, int stride);
+
+        /**
+         * @param sequence The sequence number of the record
+         * @param firstId The first id of the range
+         * @param lastId The last id of the range, included
+         * @param residue Only the ids equal to this modulo modulus were ended
+         * @param modulus The number of shards of the service that ended them
+         */
+        void destroyedRange(long sequence, int firstId, int lastId, int residue, int modulus);
+
+        void reset(long sequence);
+
+        /**
+         * Told where the records after it were written with the layout of a fingerprint.
+         * @param sequence The sequence number of the record
+         * @param fingerprint The fingerprint of the layout of the games
+         */
+        void layout(long sequence, long fingerprint);
+    }
+
+    /**
+     * @param directory The directory of the segment files, created if needed
+     * @param syncMillis The most time in milliseconds written records wait to be synced to the disk
+     * @param segmentBytes The size after which a new segment file is started
+     */
+    public CommandJournal(Path directory, long syncMillis, long segmentBytes) throws IOException {
+        this.directory = directory;
+        this.syncMillis = syncMillis;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * This method is used to read every record of the journal, in order, before it is started.
+     * @param visitor Told each record
+     * @return The number of records read
+     * @throws IOException if a segment cannot be read or a segment before the last one is damaged
+     */
+    public long replay(Visitor visitor) throws IOException {
+        return replay(visitor, 0);
+    }
+
+    /**
+     * This method is used to read the records of the journal from a sequence number on, in order, before
+     * it is started, such as the records after a snapshot. Segments holding only older records are not read.
+     * @param visitor Told each record
+     * @param fromSequence The sequence number of the first record told, older ones are skipped
+     * @return The number of records told
+     * @throws IOException if a segment cannot be read or a segment before the last one is damaged
+     */
+    public long replay(Visitor visitor, long fromSequence) throws IOException {
+        long start = System.nanoTime();
+        long count = 0;
+        List<Path> segments = listSegments();
+        for (int i = 0; i < segments.size(); i++) {
+            boolean last = i == segments.size() - 1;
+            if (!last && firstSequenceOf(segments.get(i + 1)) <= fromSequence) {
+                continue;
+            }
+            count += replaySegment(segments.get(i), visitor, last, fromSequence);
+        }
+        nextSequence = Math.max(nextSequence, fromSequence);
+        replayedRecords = count;
+        replayMillis = (System.nanoTime() - start) / 1000000;
+        if (count > 0) {
+            LOGGER.info(String.format("Replayed %d journal records from %d segments in %d ms (%.0f records/s)",
+                    count, segments.size(), replayMillis, count * 1000.0 / Math.max(1, replayMillis)));
+        }
+        return count;
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            files.forEach(segments::add);
+        }
+        // The names hold the zero padded first sequence number, so they sort in journal order
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static long firstSequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private long replaySegment(Path file, Visitor visitor, boolean last, long fromSequence) throws IOException {
+        long count = 0;
+        long validBytes = 0;
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16))) {
+            byte[] body = new byte[256];
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException exception) {
+                    break;
+                }
+                if (length < BODY_HEADER_BYTES || length > MAX_RECORD) {
+                    break;
+                }
+                if (body.length < length) {
+                    body = new byte[Math.max(length, body.length * 2)];
+                }
+                int checksum;
+                try {
+                    checksum = in.readInt();
+                    in.readFully(body, 0, length);
+                } catch (EOFException exception) {
+                    break;
+                }
+                crc.reset();
+                crc.update(body, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                if (apply(ByteBuffer.wrap(body, 0, length), visitor, fromSequence)) {
+                    count++;
+                }
+                validBytes += HEADER_BYTES + length;
+            }
+        }
+        if (validBytes < Files.size(file)) {
+            if (!last) {
+                throw new IOException("Damaged journal segment " + file);
+            }
+            // A record torn by a crash, cut off so the next records follow the valid ones
+            LOGGER.warning("Cutting off a damaged record at byte " + validBytes + " of " + file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(validBytes);
+            }
+        }
+        return count;
+    }
+
+    // Tells the visitor a record unless it is older than the first one asked for
+    private boolean apply(ByteBuffer body, Visitor visitor, long fromSequence) {
+        long sequence = body.getLong();
+        nextSequence = Math.max(nextSequence, sequence + 1);
+        if (sequence < fromSequence) {
+            return false;
+        }
+        byte type = body.get();
+        int id = body.getInt();
+        if (type == CREATE) {
+            visitor.created(sequence, id);
+        } else if (type == COMMAND) {
+            String name = readString(body);
+            visitor.command(sequence, id, new Command(name, readString(body)));
+        } else if (type == DESTROY) {
+            visitor.destroyed(sequence, id);
+        } else if (type == CREATE_BULK) {
+            visitor.createdBulk(sequence, id, body.getInt(), body.getInt());
+        } else if (type == DESTROY_RANGE) {
+            visitor.destroyedRange(sequence, id, body.getInt(), body.getInt(), body.getInt());
+        } else if (type == RESET) {
+            visitor.reset(sequence);
+        } else if (type == LAYOUT) {
+            visitor.layout(sequence, body.getLong());
+        }
+        return true;
+    }
+
+    private static String readString(ByteBuffer body) {
+        short length = body.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This method is used to number the next records from a sequence number on, before the journal is
+     * started, such as the latest cut of a restored snapshot when the records up to it were lost.
+     * @param sequence The lowest sequence number of the next record
+     */
+    public void advanceTo(long sequence) {
+        synchronized (appendLock) {
+            nextSequence = Math.max(nextSequence, sequence);
+        }
+    }
+
+    /**
+     * This method is used to start writing, in a new segment after the replayed ones.
+     */
+    public synchronized void start() throws IOException {
+        if (writer != null) {
+            return;
+        }
+        openSegment(nextSequence);
+        writer = new Thread(this::runWriter, "adventure-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        segmentFirst = firstSequence;
+        Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        segment = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * This method is used to check a command can be recorded, before it is run.
+     * @param command The command
+     * @return Whether its name and value are both at most MAX_STRING_BYTES long in UTF-8
+     */
+    public static boolean fits(Command command) {
+        return fits(command.getCommandName()) && fits(command.getCommandValue());
+    }
+
+    private static boolean fits(String text) {
+        // A char never takes more than three bytes, so most strings need not be encoded
+        return text == null || text.length() * 3 <= MAX_STRING_BYTES
+                || text.getBytes(StandardCharsets.UTF_8).length <= MAX_STRING_BYTES;
+    }
+
+    public void appendCreate(int id) {
+        append(record(CREATE, id, 0));
+    }
+
+    public void appendCommand(int id, Command command) {
+        byte[] name = encode(command.getCommandName());
+        byte[] value = encode(command.getCommandValue());
+        ByteBuffer record = record(COMMAND, id, 2 + length(name) + 2 + length(value));
+        putString(record, name);
+        putString(record, value);
+        append(record);
+    }
+
+    public void appendDestroy(int id) {
+        append(record(DESTROY, id, 0));
+    }
+
+    public void appendCreateBulk(int firstId, int count, int stride) {
+        append(record(CREATE_BULK, firstId, 8).putInt(count).putInt(stride));
+    }
+
+    public void appendDestroyRange(int firstId, int lastId, int residue, int modulus) {
+        append(record(DESTROY_RANGE, firstId, 12).putInt(lastId).putInt(residue).putInt(modulus));
+    }
+
+    public void appendReset() {
+        append(record(RESET, 0, 0));
+    }
+
+    /**
+     * This method is used to record that the games changed after this are played with a layout.
+     * @param fingerprint The fingerprint of the layout
+     */
+    public void appendLayout(long fingerprint) {
+        append(record(LAYOUT, 0, 8).putLong(fingerprint));
+    }
+
+    // A record with its header filled but for the sequence number, given when it is queued, and the CRC
+    private static ByteBuffer record(byte type, int id, int argumentBytes) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + BODY_HEADER_BYTES + argumentBytes);
+        record.putInt(BODY_HEADER_BYTES + argumentBytes).putInt(0).putLong(0).put(type).putInt(id);
+        return record;
+    }
+
+    private static byte[] encode(String text) {
+        return text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Never cut, a cut command would replay as another one
+    private static int length(byte[] bytes) {
+        if (bytes != null && bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("A command string is longer than " + MAX_STRING_BYTES + " bytes");
+        }
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static void putString(ByteBuffer record, byte[] bytes) {
+        if (bytes == null) {
+            record.putShort((short) -1);
+            return;
+        }
+        record.putShort((short) bytes.length).put(bytes);
+    }
+
+    // Waits while the writer is far behind, losing records would lose games
+    private void append(ByteBuffer record) {
+        checkWriting();
+        try {
+            synchronized (appendLock) {
+                record.putLong(HEADER_BYTES, nextSequence);
+                queue.put(record.array());
+                nextSequence++;
+            }
+            appended.incrementAndGet();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        // The writer may have stopped while this record was queued, then it is dropped
+        checkWriting();
+    }
+
+    private void checkWriting() {
+        if (failure != null) {
+            throw new IllegalStateException("The journal stopped after a write failed", failure);
+        }
+    }
+
+    /**
+     * This method is used to read the sequence number the next record will get. Every record added
+     * before by the calling thread has a lower one, and every record it adds after a higher or equal one.
+     * @return The next sequence number
+     */
+    public long getNextSequence() {
+        synchronized (appendLock) {
+            return nextSequence;
+        }
+    }
+
+    /**
+     * This method is used to let the writer delete the segments holding only records older than a
+     * sequence number, such as the records a snapshot already holds. The segment being written is closed
+     * and a new one started, so it can be deleted by the next compaction.
+     * @param sequence The sequence number of the oldest record to keep
+     */
+    public void compact(long sequence) {
+        compactBefore = Math.max(compactBefore, sequence);
+    }
+
+    private void runWriter() {
+        List<byte[]> group = new ArrayList<>();
+        long lastSync = System.nanoTime();
+        boolean unsynced = false;
+        while (running || !queue.isEmpty()) {
+            try {
+                byte[] first = queue.poll(Math.max(1, syncMillis), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    group.add(first);
+                    queue.drainTo(group);
+                }
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                if (!group.isEmpty()) {
+                    write(group);
+                    unsynced = true;
+                }
+                long now = System.nanoTime();
+                if (unsynced && (now - lastSync >= TimeUnit.MILLISECONDS.toNanos(syncMillis) || !running)) {
+                    segment.force(false);
+                    syncs.incrementAndGet();
+                    lastGroupSize = written.get() - lastSyncedCount;
+                    maxGroupSize = Math.max(maxGroupSize, lastGroupSize);
+                    lastSyncedCount = written.get();
+                    lastSync = now;
+                    unsynced = false;
+                }
+            } catch (IOException exception) {
+                // Records after a lost group would replay on games missing its changes, so nothing more
+                // is written; the records waiting are dropped so no appending thread blocks on the queue
+                LOGGER.log(Level.SEVERE, "Could not write the journal, it is stopped", exception);
+                failure = exception;
+                queue.clear();
+                return;
+            }
+            group.clear();
+            // Once every record before the compaction point is written, so the new segment starts after it
+            if (compactBefore > compactedBefore && lastWritten >= compactBefore - 1) {
+                compactSegments();
+            }
+        }
+    }
+
+    // Starts a new segment and deletes the older segments the last compaction asked for, on the writer
+    private void compactSegments() {
+        long before = compactBefore;
+        try {
+            if (segmentFirst < before && segment.position() > 0) {
+                rollSegment();
+            }
+            List<Path> segments = listSegments();
+            // The last segment is the one being written, a segment is only deleted once the next one
+            // starts at or before the oldest record kept
+            for (int i = 0; i < segments.size() - 1; i++) {
+                if (firstSequenceOf(segments.get(i + 1)) <= before) {
+                    Files.delete(segments.get(i));
+                    deletedSegments.incrementAndGet();
+                }
+            }
+            compactedBefore = before;
+        } catch (IOException exception) {
+            LOGGER.log(Level.WARNING, "Could not compact the journal", exception);
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        segment.force(false);
+        segment.close();
+        openSegment(lastWritten + 1);
+    }
+
+    // Checks and writes a group of records, then starts a new segment if this one is full
+    private void write(List<byte[]> group) throws IOException {
+        for (byte[] record : group) {
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            long sequence = buffer.getLong(HEADER_BYTES);
+            if (sequence == compactBefore && segmentFirst < sequence) {
+                // The first record kept by a compaction starts a segment, so the older ones can all go
+                drainOutput();
+                rollSegment();
+            }
+            lastWritten = sequence;
+            crc.reset();
+            crc.update(record, HEADER_BYTES, record.length - HEADER_BYTES);
+            buffer.putInt(4, (int) crc.getValue());
+            if (record.length > output.remaining()) {
+                drainOutput();
+            }
+            if (record.length > output.capacity()) {
+                writeFully(buffer);
+            } else {
+                output.put(record);
+            }
+            writtenBytes.addAndGet(record.length);
+        }
+        drainOutput();
+        written.addAndGet(group.size());
+        if (segment.position() >= segmentBytes) {
+            rollSegment();
+        }
+    }
+
+    private void drainOutput() throws IOException {
+        output.flip();
+        writeFully(output);
+        output.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            segment.write(buffer);
+        }
+    }
+
+    /**
+     * This method is used to write and sync every record added so far, then stop the writer.
+     */
+    public synchronized void close() {
+        running = false;
+        if (writer == null) {
+            return;
+        }
+        // Not interrupted, an interrupt would close the channel in the middle of a write
+        try {
+            writer.join();
+            segment.close();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } catch (IOException exception) {
+            LOGGER.log(Level.WARNING, "Could not close the journal", exception);
+        }
+    }
+
+    /**
+     * @return Whether the writer stopped after a write failed.
+     */
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * @return The directory of the segment files.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * This method is used to build the counters shown by the server.
+     * @return The records added, written and waiting, bytes written, syncs, deleted segments, records per
+     *         sync, how fast the journal was replayed, and 1 if the writer stopped after a failure, by name
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("journalAppended", appended.get());
+        stats.put("journalWritten", written.get());
+        stats.put("journalQueueDepth", (long) queue.size());
+        stats.put("journalBytes", writtenBytes.get());
+        stats.put("journalSyncs", syncs.get());
+        stats.put("journalDeletedSegments", deletedSegments.get());
+        stats.put("journalLastGroupSize", lastGroupSize);
+        stats.put("journalMaxGroupSize", maxGroupSize);
+        stats.put("journalReplayedRecords", replayedRecords);
+        stats.put("journalReplayMillis", replayMillis);
+        stats.put("journalFailed", failure != null ? 1L : 0L);
+        return stats;
+    }
+}
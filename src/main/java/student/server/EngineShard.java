@@ -0,0 +1,130 @@
+package student.server;
+
+import student.adventure.GameEngine;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * A part of the game instances of a service, owned by a single thread.
+ * Any thread can submit work to the mailbox of the shard (a lock free multi producer queue); the owner
+ * thread runs the work one task at a time, so the engine and session manager of the shard are only
+ * ever used by that thread and need no locks. The owner sleeps while the mailbox is empty.
+ */
+public class EngineShard {
+    private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong completedTasks = new AtomicLong();
+    private final Thread owner;
+    private volatile boolean running = true;
+    // Only used by the owner thread
+    private GameEngine game;
+    private SessionManager sessionManager;
+
+    /**
+     * @param name The name of the owner thread
+     * @param game The engine of the shard
+     * @param sessionManager The manager ending the unused games of the engine
+     */
+    public EngineShard(String name, GameEngine game, SessionManager sessionManager) {
+        this.game = game;
+        this.sessionManager = sessionManager;
+        owner = new Thread(this::runLoop, name);
+        owner.setDaemon(true);
+        owner.start();
+    }
+
+    private void runLoop() {
+        while (running) {
+            Runnable task = mailbox.poll();
+            if (task == null) {
+                // A submit after the poll unparks us, so nothing is missed
+                LockSupport.park(this);
+                continue;
+            }
+            queueDepth.decrementAndGet();
+            task.run();
+            completedTasks.incrementAndGet();
+        }
+    }
+
+    /**
+     * This method is used to run a task on the owner thread.
+     * @param task The task, it may use the engine and session manager of the shard
+     * @return A future completed with the result of the task, or exceptionally with what it threw
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        mailbox.offer(() -> {
+            try {
+                result.complete(task.get());
+            } catch (Throwable throwable) {
+                // Errors too, so the thread keeps running and no caller waits for a future never completed
+                result.completeExceptionally(throwable);
+            }
+        });
+        int depth = queueDepth.incrementAndGet();
+        maxQueueDepth.accumulateAndGet(depth, Math::max);
+        LockSupport.unpark(owner);
+        if (!running) {
+            result.completeExceptionally(new IllegalStateException("Shard is stopped"));
+        }
+        return result;
+    }
+
+    /**
+     * This method is used to stop the owner thread. Tasks still in the mailbox are not run.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(owner);
+    }
+
+    /**
+     * @return The engine of the shard, only to be used by submitted tasks.
+     */
+    public GameEngine getGame() {
+        return game;
+    }
+
+    /**
+     * @return The session manager of the shard, only to be used by submitted tasks.
+     */
+    public SessionManager getSessionManager() {
+        return sessionManager;
+    }
+
+    /**
+     * This method is used to replace the engine and session manager, only by submitted tasks.
+     */
+    public void setGame(GameEngine game, SessionManager sessionManager) {
+        this.game = game;
+        this.sessionManager = sessionManager;
+    }
+
+    /**
+     * @return The number of tasks waiting in the mailbox.
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * @return The most tasks that were waiting in the mailbox at once.
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * @return The number of tasks run.
+     */
+    public long getCompletedTasks() {
+        return completedTasks.get();
+    }
+}
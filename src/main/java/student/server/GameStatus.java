@@ -1,5 +1,6 @@
 package student.server;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import java.util.List;
 import java.util.Map;
 
@@ -42,6 +43,11 @@ public class GameStatus {
      * This field cannot be null.
      */
     private Map<String, List<String>> commandOptions;
+    /**
+     * The pre-encoded message, image, video and "go" options of the room shown, or null.
+     * Only used by GameStatusWriter, never serialized itself.
+     */
+    private StatusFragment fragment;
 
     public GameStatus(boolean error, int id, String message, String imageUrl, String videoUrl, AdventureState state, Map<String, List<String>> commandOptions) {
         this.error = error;
@@ -80,4 +86,13 @@ public class GameStatus {
     public Map<String, List<String>> getCommandOptions() {
         return commandOptions;
     }
+
+    @JsonIgnore
+    public StatusFragment getFragment() {
+        return fragment;
+    }
+
+    public void setFragment(StatusFragment fragment) {
+        this.fragment = fragment;
+    }
 }
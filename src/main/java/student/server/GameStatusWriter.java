@@ -0,0 +1,236 @@
+package student.server;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Writes a GameStatus as JSON, in the same shape Jackson does. When the status has a StatusFragment,
+ * the room description, image and "go" options are copied from its pre-encoded bytes, so only the id
+ * and the item lists are encoded for each response. Encoded option strings are cached as well, since
+ * they come from the small item dictionaries of the layouts.
+ */
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class GameStatusWriter implements MessageBodyWriter<GameStatus> {
+    // The most option strings kept encoded
+    private static final int MAX_CACHED_STRINGS = 4096;
+    private static final Map<String, byte[]> ENCODED_STRINGS = new ConcurrentHashMap<>();
+    private static final byte[] EMPTY_STATE = "{}".getBytes(StandardCharsets.US_ASCII);
+    private static final ObjectMapper STATE_MAPPER = new ObjectMapper()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    // Each thread builds its response in its own buffer, reused from one response to the next
+    private static final ThreadLocal<ByteArrayOutputStream> BUFFER = ThreadLocal.withInitial(ResponseBuffer::new);
+    // A buffer grown past this by a large response, such as a long history, is not kept by its thread
+    static final int MAX_KEPT_BYTES = 64 << 10;
+
+    /**
+     * A byte buffer without the locking of ByteArrayOutputStream, only used by one thread.
+     */
+    private static class ResponseBuffer extends ByteArrayOutputStream {
+        ResponseBuffer() {
+            super(1024);
+        }
+
+        private int capacity() {
+            return buf.length;
+        }
+
+        private void ensureFree(int length) {
+            if (count + length > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + length));
+            }
+        }
+
+        @Override
+        public void write(int b) {
+            ensureFree(1);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            ensureFree(length);
+            System.arraycopy(bytes, offset, buf, count, length);
+            count += length;
+        }
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return type == GameStatus.class;
+    }
+
+    @Override
+    public long getSize(GameStatus status, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(GameStatus status, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+            throws IOException {
+        ByteArrayOutputStream buffer = threadBuffer();
+        try {
+            write(status, buffer);
+            buffer.writeTo(entityStream);
+        } finally {
+            releaseThreadBuffer(buffer);
+        }
+    }
+
+    /**
+     * This method is used to get the emptied buffer of the current thread, to encode a status into.
+     * @return The buffer, only to be used until the next call on the same thread
+     */
+    static ByteArrayOutputStream threadBuffer() {
+        ByteArrayOutputStream buffer = BUFFER.get();
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * This method is used to give back the buffer of the current thread once its bytes were used. A buffer
+     * grown past MAX_KEPT_BYTES is dropped, so one large response does not keep the thread's memory up.
+     * @param buffer The buffer from threadBuffer
+     */
+    static void releaseThreadBuffer(ByteArrayOutputStream buffer) {
+        if (((ResponseBuffer) buffer).capacity() > MAX_KEPT_BYTES) {
+            BUFFER.remove();
+        }
+    }
+
+    /**
+     * This method is used to encode a status into a buffer.
+     * @param status The status
+     * @param out The buffer the JSON is added to
+     */
+    public static void write(GameStatus status, ByteArrayOutputStream out) throws IOException {
+        StatusFragment fragment = status.getFragment();
+        writeAscii(out, status.isError() ? "{\"error\":true,\"id\":" : "{\"error\":false,\"id\":");
+        writeInt(out, status.getId());
+        out.write(',');
+        if (fragment != null) {
+            out.write(fragment.getHead(), 0, fragment.getHead().length);
+        } else {
+            writeField(out, "message", status.getMessage());
+            writeField(out, "imageUrl", status.getImageUrl());
+            writeField(out, "videoUrl", status.getVideoUrl());
+        }
+        writeAscii(out, "\"state\":");
+        writeState(out, status.getState());
+        writeAscii(out, ",\"commandOptions\":");
+        Map<String, List<String>> options = status.getCommandOptions();
+        if (options == null) {
+            writeAscii(out, "null");
+        } else {
+            out.write('{');
+            boolean first = true;
+            for (Map.Entry<String, List<String>> option : options.entrySet()) {
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                writeCached(out, option.getKey());
+                out.write(':');
+                if (fragment != null && option.getKey().equals("go")) {
+                    out.write(fragment.getGoOptions(), 0, fragment.getGoOptions().length);
+                } else {
+                    writeCachedArray(out, option.getValue());
+                }
+            }
+            out.write('}');
+        }
+        out.write('}');
+    }
+
+    private static void writeAscii(ByteArrayOutputStream out, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            out.write(text.charAt(i));
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        if (value == Integer.MIN_VALUE) {
+            writeAscii(out, Integer.toString(value));
+            return;
+        }
+        if (value < 0) {
+            out.write('-');
+            value = -value;
+        }
+        int divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.write('0' + value / divisor % 10);
+        }
+    }
+
+    private static void writeField(ByteArrayOutputStream out, String name, String value) {
+        writeCached(out, name);
+        out.write(':');
+        StatusFragment.writeString(out, value);
+        out.write(',');
+    }
+
+    private static void writeState(ByteArrayOutputStream out, AdventureState state) throws IOException {
+        if (state == null) {
+            writeAscii(out, "null");
+        } else if (state.getClass() == AdventureState.class) {
+            // AdventureState has no values yet
+            out.write(EMPTY_STATE, 0, EMPTY_STATE.length);
+        } else {
+            STATE_MAPPER.writeValue(out, state);
+        }
+    }
+
+    private static void writeCachedArray(ByteArrayOutputStream out, List<String> values) {
+        if (values == null) {
+            writeAscii(out, "null");
+            return;
+        }
+        out.write('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeCached(out, values.get(i));
+        }
+        out.write(']');
+    }
+
+    // Write a string through the cache of encoded strings, which stops growing once full
+    private static void writeCached(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            writeAscii(out, "null");
+            return;
+        }
+        byte[] encoded = ENCODED_STRINGS.get(value);
+        if (encoded == null) {
+            ByteArrayOutputStream single = new ByteArrayOutputStream(value.length() + 2);
+            StatusFragment.writeString(single, value);
+            encoded = single.toByteArray();
+            if (ENCODED_STRINGS.size() < MAX_CACHED_STRINGS) {
+                ENCODED_STRINGS.put(value, encoded);
+            }
+        }
+        out.write(encoded, 0, encoded.length);
+    }
+}
@@ -0,0 +1,144 @@
+package student.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the best finished games, scored when a player reaches the ending room.
+ * The best entries are kept in a concurrent skip list bounded to the size of the board, so every shard
+ * thread can add to it without a lock. A game worse than the last entry of a full board is dropped after
+ * one comparison, which is what happens to most games once the board is full. Each change builds a new
+ * immutable snapshot, already in order, and swaps it in atomically; reading the board never sorts or locks.
+ */
+public class Leaderboard {
+    private static final int BASE_SCORE = 10000;
+    private static final int ITEM_POINTS = 500;
+    private static final int MOVE_PENALTY = 100;
+    // Best score first, then the fastest, then the fewest moves; the id makes every entry distinct
+    private static final Comparator<LeaderboardEntry> ORDER = Comparator
+            .comparingInt((LeaderboardEntry entry) -> -entry.getScore())
+            .thenComparingLong(LeaderboardEntry::getElapsedMillis)
+            .thenComparingLong(LeaderboardEntry::getMoves)
+            .thenComparingInt(LeaderboardEntry::getId);
+    private final int size;
+    private final ConcurrentSkipListSet<LeaderboardEntry> best = new ConcurrentSkipListSet<>(ORDER);
+    private final AtomicInteger count = new AtomicInteger();
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicLong completions = new AtomicLong();
+    private final AtomicReference<LeaderboardSnapshot> snapshot =
+            new AtomicReference<>(new LeaderboardSnapshot(0, 0, Collections.emptyList()));
+
+    /**
+     * @param size The number of entries kept on the board
+     */
+    public Leaderboard(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Leaderboard size must be positive");
+        }
+        this.size = size;
+    }
+
+    /**
+     * This method is used to score a finished game: points for each item held, less points for each move
+     * and each second taken, never below 0.
+     * @param moves The number of moves taken
+     * @param items The number of items held
+     * @param elapsedMillis The wall clock time taken
+     * @return The score
+     */
+    public static int score(long moves, int items, long elapsedMillis) {
+        long score = BASE_SCORE + (long) ITEM_POINTS * items - MOVE_PENALTY * moves - elapsedMillis / 1000;
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, score));
+    }
+
+    /**
+     * This method is used to add a finished game, called by any thread.
+     * @param entry The scored game
+     * @return false if it is not good enough for the board
+     */
+    public boolean record(LeaderboardEntry entry) {
+        completions.incrementAndGet();
+        if (count.get() >= size) {
+            LeaderboardEntry last = lastOrNull();
+            if (last != null && ORDER.compare(entry, last) >= 0) {
+                return false;
+            }
+        }
+        if (!best.add(entry)) {
+            return false;
+        }
+        if (count.incrementAndGet() > size && best.pollLast() != null) {
+            count.decrementAndGet();
+        }
+        publish();
+        return true;
+    }
+
+    /**
+     * This method is used to fill the board with results kept from before, at startup.
+     * @param entries The best results kept
+     * @param completed The number of games finished before
+     */
+    public void load(List<LeaderboardEntry> entries, long completed) {
+        for (LeaderboardEntry entry : entries) {
+            record(entry);
+        }
+        completions.set(completed);
+        publish();
+    }
+
+    private LeaderboardEntry lastOrNull() {
+        try {
+            return best.last();
+        } catch (NoSuchElementException exception) {
+            return null;
+        }
+    }
+
+    // Builds the snapshot of the board as it is now, kept unless a newer one was swapped in meanwhile
+    private void publish() {
+        long version = changes.incrementAndGet();
+        List<LeaderboardEntry> entries = new ArrayList<>(size);
+        for (LeaderboardEntry entry : best) {
+            if (entries.size() == size) {
+                break;
+            }
+            entries.add(entry);
+        }
+        LeaderboardSnapshot built = new LeaderboardSnapshot(version, completions.get(),
+                Collections.unmodifiableList(entries));
+        snapshot.accumulateAndGet(built, (current, candidate) ->
+                candidate.getVersion() > current.getVersion() ? candidate : current);
+    }
+
+    /**
+     * This method is used to empty the board.
+     */
+    public void clear() {
+        best.clear();
+        count.set(0);
+        completions.set(0);
+        publish();
+    }
+
+    /**
+     * @return The latest snapshot of the board, best first.
+     */
+    public LeaderboardSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * @return The number of entries kept on the board.
+     */
+    public int getSize() {
+        return size;
+    }
+}
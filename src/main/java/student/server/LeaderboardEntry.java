@@ -0,0 +1,40 @@
+package student.server;
+
+/**
+ * A finished game on the leaderboard. Entries never change once built.
+ */
+public class LeaderboardEntry {
+    private final int id;
+    private final int score;
+    private final long moves;
+    private final int items;
+    private final long elapsedMillis;
+
+    public LeaderboardEntry(int id, int score, long moves, int items, long elapsedMillis) {
+        this.id = id;
+        this.score = score;
+        this.moves = moves;
+        this.items = items;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public long getMoves() {
+        return moves;
+    }
+
+    public int getItems() {
+        return items;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
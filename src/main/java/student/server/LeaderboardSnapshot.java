@@ -0,0 +1,36 @@
+package student.server;
+
+import java.util.List;
+
+/**
+ * The leaderboard at one point in time, best first. A snapshot never changes once built, so it is
+ * shared by every request until the next change replaces it.
+ */
+public class LeaderboardSnapshot {
+    private final long version;
+    private final long completions;
+    private final List<LeaderboardEntry> entries;
+
+    /**
+     * @param version Goes up with each change of the leaderboard
+     * @param completions The number of games finished when it was built, kept on the board or not
+     * @param entries The best entries, best first, not to be changed
+     */
+    public LeaderboardSnapshot(long version, long completions, List<LeaderboardEntry> entries) {
+        this.version = version;
+        this.completions = completions;
+        this.entries = entries;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getCompletions() {
+        return completions;
+    }
+
+    public List<LeaderboardEntry> getEntries() {
+        return entries;
+    }
+}
@@ -1,24 +1,519 @@
 package student.server;
 
+import student.adventure.BatchCommandException;
+import student.adventure.ColdSessionStore;
 import student.adventure.GameEngine;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class MyAdventureService implements AdventureService {
-    GameEngine game = new GameEngine();
-    // A map keep track of all game players and their status;
-    private Map<Integer, GameStatus> allGamesID = new HashMap<>();
-    private int currentID = 0;
+    // Games unused for this long are ended, can be set with -Dadventure.session.ttl (milliseconds)
+    private static final long DEFAULT_SESSION_TTL = Long.getLong("adventure.session.ttl", 30 * 60 * 1000L);
+    // The most games kept at once, can be set with -Dadventure.session.max
+    private static final int DEFAULT_MAX_SESSIONS = Integer.getInteger("adventure.session.max", 100000);
+    // The number of engine shards, each owned by one thread, can be set with -Dadventure.shards
+    private static final int DEFAULT_SHARDS = Integer.getInteger("adventure.shards",
+            Runtime.getRuntime().availableProcessors());
+    private static final long SWEEP_TICK = 1000;
+    // The number of finished games kept on the leaderboard, can be set with -Dadventure.leaderboard.size
+    private static final int LEADERBOARD_SIZE = Integer.getInteger("adventure.leaderboard.size", 100);
+    // The SQLite file keeping the results of finished games, none if not set (-Dadventure.results.db)
+    private static final String RESULTS_DB = System.getProperty("adventure.results.db");
+    // The most results committed in one transaction (-Dadventure.results.batch)
+    private static final int RESULTS_BATCH = Integer.getInteger("adventure.results.batch", 512);
+    // How long in milliseconds the writer waits to fill a batch (-Dadventure.results.flush)
+    private static final long RESULTS_FLUSH = Long.getLong("adventure.results.flush", 5);
+    // The most results waiting to be written, more are dropped (-Dadventure.results.queue)
+    private static final int RESULTS_QUEUE = Integer.getInteger("adventure.results.queue", 65536);
+    // The directory of the command journal rebuilding the games after a restart, none if not set
+    // (-Dadventure.journal.dir)
+    private static final String JOURNAL_DIR = System.getProperty("adventure.journal.dir");
+    // The most time in milliseconds journal records wait to be synced to the disk (-Dadventure.journal.sync)
+    private static final long JOURNAL_SYNC = Long.getLong("adventure.journal.sync", 10);
+    // The size in bytes after which a new journal segment is started (-Dadventure.journal.segment)
+    private static final long JOURNAL_SEGMENT = Long.getLong("adventure.journal.segment", 64L << 20);
+    // How often in milliseconds a snapshot of the games is written next to the journal, 0 for never
+    // (-Dadventure.snapshot.interval)
+    private static final long SNAPSHOT_INTERVAL = Long.getLong("adventure.snapshot.interval", 5 * 60 * 1000L);
+    // The directory of the files keeping idle games off the heap, games all stay on the heap if not set
+    // (-Dadventure.session.coldDir)
+    private static final String COLD_DIR = System.getProperty("adventure.session.coldDir");
+    // Games unused for this long in milliseconds are moved off the heap, 0 for never
+    // (-Dadventure.session.demoteAfter)
+    private static final long COLD_DEMOTE_AFTER = Long.getLong("adventure.session.demoteAfter", 5 * 60 * 1000L);
+    // The most games kept on the heap, more are moved off it (-Dadventure.session.maxHot)
+    private static final int COLD_MAX_HOT = Integer.getInteger("adventure.session.maxHot", 100000);
+    // The size in bytes of the slot of a game off the heap, larger games stay on it (-Dadventure.session.coldSlot)
+    private static final int COLD_SLOT = Integer.getInteger("adventure.session.coldSlot", 1024);
+    // The size in bytes of each mapped region of the file of a shard (-Dadventure.session.coldRegion)
+    private static final int COLD_REGION = Integer.getInteger("adventure.session.coldRegion", 64 << 20);
+    // How long in milliseconds a request waits for the shard of its game before failing (-Dadventure.shard.timeout)
+    private static final long SHARD_TIMEOUT = Long.getLong("adventure.shard.timeout", 60000);
+    // While replaying, a shard is waited for once this many tasks are queued for it
+    private static final int REPLAY_QUEUE = 4096;
+    private static final Logger LOGGER = Logger.getLogger(MyAdventureService.class.getName());
+    // One daemon thread asks the shards of every service to sweep their idle games
+    private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "adventure-session-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // One daemon thread writes the snapshots of every service, away from the shard threads
+    private static final ScheduledExecutorService SNAPSHOTTER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "adventure-snapshotter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Games are partitioned over the shards by id. Each shard owns its engine on its own thread, so
+    // commands of games in different shards run in parallel and commands of one game stay in order.
+    private final EngineShard[] shards;
+    private final AtomicInteger currentID = new AtomicInteger();
+    // Held to take ids and queue the games for them, and alone by a reset, so no id taken before a reset
+    // is used after it
+    private final ReadWriteLock idLock = new ReentrantReadWriteLock();
+    // The start time, then moved on by each reset, so it never repeats across restarts
+    private final AtomicLong epoch = new AtomicLong(System.currentTimeMillis());
+    private final long sessionTtl;
+    private final int maxSessions;
+    private final long sweepTick;
+    private final ScheduledFuture<?> sweeperTask;
+    private final List<StatusListener> statusListeners = new CopyOnWriteArrayList<>();
+    private final Leaderboard leaderboard = new Leaderboard(LEADERBOARD_SIZE);
+    // Keeps the results of finished games, or null
+    private final ResultStore resultStore;
+    // Records every change of the games, or null
+    private final CommandJournal journal;
+    // Set while the journal is replayed, so games finished again are not scored twice
+    private volatile boolean replaying;
+    // Keeps snapshots next to the journal, or null without a journal
+    private final SnapshotStore snapshotStore;
+    private final ScheduledFuture<?> snapshotTask;
+    private volatile long snapshotsTaken;
+    private volatile long lastSnapshotMillis;
+    private volatile long lastSnapshotBytes;
+    private volatile long lastSnapshotSessions;
+    // The longest time a shard spent writing its games for a snapshot, in microseconds
+    private volatile long maxSnapshotPauseMicros;
+    private volatile long restoredSessions;
+    private volatile long restartMillis;
+    // Journal records not replayed because they were written with another layout
+    private volatile long skippedRecords;
+
+    public MyAdventureService() {
+        this(DEFAULT_SESSION_TTL, DEFAULT_MAX_SESSIONS, SWEEP_TICK, DEFAULT_SHARDS, openResultStore(),
+                openJournal());
+    }
+
+    /**
+     * @param sessionTtl How long in milliseconds a game may stay unused before it is ended
+     * @param maxSessions The most games kept at once, the least recently used are ended first
+     * @param sweepTick How often in milliseconds unused games are looked for
+     * @param shardCount The number of engine shards; each keeps at most its share of maxSessions
+     */
+    public MyAdventureService(long sessionTtl, int maxSessions, long sweepTick, int shardCount) {
+        this(sessionTtl, maxSessions, sweepTick, shardCount, null);
+    }
+
+    /**
+     * @param sessionTtl How long in milliseconds a game may stay unused before it is ended
+     * @param maxSessions The most games kept at once, the least recently used are ended first
+     * @param sweepTick How often in milliseconds unused games are looked for
+     * @param shardCount The number of engine shards; each keeps at most its share of maxSessions
+     * @param resultStore Keeps the results of finished games and warms the leaderboard, or null
+     */
+    public MyAdventureService(long sessionTtl, int maxSessions, long sweepTick, int shardCount,
+                              ResultStore resultStore) {
+        this(sessionTtl, maxSessions, sweepTick, shardCount, resultStore, null);
+    }
+
+    /**
+     * @param sessionTtl How long in milliseconds a game may stay unused before it is ended
+     * @param maxSessions The most games kept at once, the least recently used are ended first
+     * @param sweepTick How often in milliseconds unused games are looked for
+     * @param shardCount The number of engine shards; each keeps at most its share of maxSessions
+     * @param resultStore Keeps the results of finished games and warms the leaderboard, or null
+     * @param journal Replayed to rebuild the games, then records their changes, or null
+     */
+    public MyAdventureService(long sessionTtl, int maxSessions, long sweepTick, int shardCount,
+                              ResultStore resultStore, CommandJournal journal) {
+        this.sessionTtl = sessionTtl;
+        this.resultStore = resultStore;
+        if (resultStore != null) {
+            try {
+                leaderboard.load(resultStore.loadBest(leaderboard.getSize()), resultStore.countResults());
+            } catch (SQLException exception) {
+                LOGGER.log(Level.WARNING, "Could not read the kept results", exception);
+            }
+        }
+        this.maxSessions = maxSessions;
+        this.sweepTick = sweepTick;
+        shards = new EngineShard[Math.max(1, shardCount)];
+        for (int i = 0; i < shards.length; i++) {
+            GameEngine game = newEngine();
+            shards[i] = new EngineShard("adventure-shard-" + i, game, newSessionManager(game));
+        }
+        SnapshotStore snapshots = journal == null ? null : openSnapshotStore(journal);
+        this.journal = journal != null && replayJournal(journal, snapshots) ? journal : null;
+        snapshotStore = this.journal == null ? null : snapshots;
+        snapshotTask = snapshotStore == null || SNAPSHOT_INTERVAL <= 0 ? null : SNAPSHOTTER.scheduleWithFixedDelay(
+                this::snapshotQuietly, SNAPSHOT_INTERVAL, SNAPSHOT_INTERVAL, TimeUnit.MILLISECONDS);
+        sweeperTask = SWEEPER.scheduleAtFixedRate(this::sweepSessions, sweepTick, sweepTick, TimeUnit.MILLISECONDS);
+    }
+
+    private static ResultStore openResultStore() {
+        if (RESULTS_DB == null) {
+            return null;
+        }
+        try {
+            return new ResultStore(RESULTS_DB, RESULTS_BATCH, RESULTS_FLUSH, RESULTS_QUEUE);
+        } catch (SQLException exception) {
+            LOGGER.log(Level.WARNING, "Could not open the result store " + RESULTS_DB, exception);
+            return null;
+        }
+    }
+
+    private static CommandJournal openJournal() {
+        if (JOURNAL_DIR == null) {
+            return null;
+        }
+        try {
+            return new CommandJournal(Paths.get(JOURNAL_DIR), JOURNAL_SYNC, JOURNAL_SEGMENT);
+        } catch (IOException exception) {
+            LOGGER.log(Level.WARNING, "Could not open the journal " + JOURNAL_DIR, exception);
+            return null;
+        }
+    }
+
+    private static SnapshotStore openSnapshotStore(CommandJournal journal) {
+        try {
+            return new SnapshotStore(journal.getDirectory());
+        } catch (IOException exception) {
+            LOGGER.log(Level.WARNING, "Could not open the snapshots of " + journal.getDirectory(), exception);
+            return null;
+        }
+    }
+
+    // Rebuilds the games of the latest snapshot and the journal after it, then starts recording; false if
+    // the journal cannot be used
+    private boolean replayJournal(CommandJournal journal, SnapshotStore snapshots) {
+        long start = System.nanoTime();
+        long fingerprint = layoutFingerprint();
+        JournalReplay replay = new JournalReplay(fingerprint);
+        replaying = true;
+        try {
+            SnapshotStore.Snapshot snapshot = snapshots == null ? null : snapshots.load();
+            if (snapshot != null && !replay.matches(snapshot.getLayoutFingerprint())) {
+                // Its games hold ids of rooms and items of another layout, and so do the records after it
+                LOGGER.warning("The snapshot was taken with another layout of game.json, its games are not restored");
+                replay.skipping = true;
+            } else if (snapshot != null) {
+                restoredSessions = replay.restore(snapshot);
+                LOGGER.info(String.format("Restored %d games from a snapshot in %d ms", restoredSessions,
+                        (System.nanoTime() - start) / 1000000));
+            }
+            journal.replay(replay, snapshot == null ? 0 : snapshot.getFirstSequence());
+            if (snapshot != null) {
+                // The records up to the latest cut may have been lost, a new record numbered below the cut
+                // of its shard would be taken for one the snapshot holds by the next replay
+                journal.advanceTo(snapshot.getLastSequence());
+            }
+            replay.finish();
+            skippedRecords = replay.skipped;
+            if (replay.skipped > 0) {
+                LOGGER.warning("Skipped " + replay.skipped + " journal records written with another layout of game.json");
+            }
+            journal.start();
+            journal.appendLayout(fingerprint);
+            return true;
+        } catch (IOException exception) {
+            LOGGER.log(Level.SEVERE, "Could not replay the journal, games are not recorded", exception);
+            replay.finish();
+            return false;
+        } finally {
+            replaying = false;
+            restartMillis = (System.nanoTime() - start) / 1000000;
+        }
+    }
+
+    /**
+     * Writes a snapshot of every game next to the journal, then lets the journal delete the segments the
+     * snapshot holds. Each shard writes its games as one of its tasks, between two commands, while the
+     * other shards go on; the file is written afterwards on the calling thread.
+     * @return the number of games in the snapshot, or -1 without a journal
+     */
+    public synchronized long snapshot() throws IOException {
+        if (snapshotStore == null) {
+            return -1;
+        }
+        long start = System.nanoTime();
+        long[] cuts = new long[shards.length];
+        long[] pauses = new long[shards.length];
+        long[] fingerprints = new long[shards.length];
+        List<CompletableFuture<ByteBuffer>> parts = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            EngineShard shard = shards[i];
+            int index = i;
+            parts.add(shard.submit(() -> {
+                long cutStart = System.nanoTime();
+                // Every record of this shard before the cut is older than this, every later one is not
+                cuts[index] = journal.getNextSequence();
+                fingerprints[index] = shard.getGame().getLayoutFingerprint();
+                ByteBuffer section = shard.getGame().snapshotSessions();
+                pauses[index] = (System.nanoTime() - cutStart) / 1000;
+                return section;
+            }));
+        }
+        ByteBuffer[] sections = new ByteBuffer[shards.length];
+        long sessions = 0;
+        for (int i = 0; i < shards.length; i++) {
+            sections[i] = await(parts.get(i));
+            sessions += sections[i].getInt(0);
+            maxSnapshotPauseMicros = Math.max(maxSnapshotPauseMicros, pauses[i]);
+        }
+        // Shards without a layout have no game yet, the others must all use the same one
+        long fingerprint = 0;
+        for (long shardFingerprint : fingerprints) {
+            if (shardFingerprint != 0 && fingerprint != 0 && shardFingerprint != fingerprint) {
+                throw new IllegalStateException("The shards use different layouts, no snapshot is written");
+            }
+            fingerprint = shardFingerprint != 0 ? shardFingerprint : fingerprint;
+        }
+        if (fingerprint == 0) {
+            // No game yet, the games after the snapshot will use game.json as it is now
+            fingerprint = layoutFingerprint();
+        }
+        // Read after every cut, so it is at least the id of every game in the snapshot
+        int lastId = currentID.get();
+        lastSnapshotBytes = snapshotStore.write(lastId, fingerprint, cuts, sections);
+        long firstSequence = Long.MAX_VALUE;
+        for (long cut : cuts) {
+            firstSequence = Math.min(firstSequence, cut);
+        }
+        journal.compact(firstSequence);
+        lastSnapshotSessions = sessions;
+        lastSnapshotMillis = (System.nanoTime() - start) / 1000000;
+        snapshotsTaken++;
+        LOGGER.info(String.format("Wrote a snapshot of %d games, %d bytes, in %d ms", sessions, lastSnapshotBytes,
+                lastSnapshotMillis));
+        return sessions;
+    }
+
+    // The fingerprint of game.json as it is now, or 0, which no layout has, if it cannot be read
+    private static long layoutFingerprint() {
+        try {
+            return new GameEngine().getLayoutFingerprint("game.json");
+        } catch (IOException | RuntimeException exception) {
+            LOGGER.log(Level.WARNING, "Could not read the layout of game.json", exception);
+            return 0;
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException exception) {
+            LOGGER.log(Level.WARNING, "Could not write a snapshot", exception);
+        }
+    }
+
+    // An engine scoring its finished games, from its shard thread
+    private GameEngine newEngine() {
+        GameEngine game = new GameEngine();
+        game.setCompletionListener(this::gameCompleted);
+        if (COLD_DIR != null) {
+            try {
+                game.setColdStore(new ColdSessionStore(Paths.get(COLD_DIR), COLD_SLOT, COLD_REGION));
+            } catch (IOException exception) {
+                LOGGER.log(Level.WARNING, "Could not open the cold session store, games stay on the heap", exception);
+            }
+        }
+        return game;
+    }
+
+    // Gives a shard a new engine, from its thread, dropping the games of the old one
+    private void replaceGame(EngineShard shard) {
+        GameEngine old = shard.getGame();
+        GameEngine game = newEngine();
+        shard.setGame(game, newSessionManager(game));
+        closeColdStore(old);
+    }
+
+    private static void closeColdStore(GameEngine game) {
+        if (game != null && game.getColdStore() != null) {
+            try {
+                game.getColdStore().close();
+            } catch (IOException exception) {
+                LOGGER.log(Level.WARNING, "Could not close the cold session store", exception);
+            }
+        }
+    }
+
+    private void gameCompleted(int id, long moves, int items, long elapsedMillis) {
+        if (replaying) {
+            // Scored when it was first played
+            return;
+        }
+        LeaderboardEntry entry = new LeaderboardEntry(id, Leaderboard.score(moves, items, elapsedMillis),
+                moves, items, elapsedMillis);
+        leaderboard.record(entry);
+        if (resultStore != null) {
+            resultStore.save(entry);
+        }
+    }
+
+    private SessionManager newSessionManager(GameEngine game) {
+        int shardLimit = (maxSessions + shards.length - 1) / shards.length;
+        SessionManager manager = new SessionManager(game, sessionTtl, shardLimit, sweepTick,
+                System.currentTimeMillis());
+        if (game.getColdStore() != null) {
+            manager.setTiering(COLD_DEMOTE_AFTER, Math.max(1, (COLD_MAX_HOT + shards.length - 1) / shards.length));
+        }
+        return manager;
+    }
+
+    private void notifyStatusChanged(int id) {
+        for (StatusListener listener : statusListeners) {
+            listener.statusChanged(id);
+        }
+    }
+
+    private EngineShard shardOf(int id) {
+        return shards[Math.floorMod(id, shards.length)];
+    }
+
+    // Waits for the work of a shard, rethrowing what the work threw, for no longer than the shard timeout
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get(SHARD_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) exception.getCause();
+            }
+            throw new CompletionException(exception.getCause());
+        } catch (TimeoutException exception) {
+            throw new IllegalStateException("The shard did not answer within " + SHARD_TIMEOUT + " ms", exception);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the shard", exception);
+        }
+    }
 
     /**
-     * Resets the service to its initial state.
+     * Asks every shard to end the games whose time to live ran out, run by the sweeper thread.
+     */
+    void sweepSessions() {
+        for (EngineShard shard : shards) {
+            shard.submit(() -> shard.getSessionManager().sweep(System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Stops sweeping the games of this service and stops the shard threads.
+     */
+    public void shutdown() {
+        sweeperTask.cancel(false);
+        if (snapshotTask != null) {
+            snapshotTask.cancel(false);
+        }
+        // The cold stores are closed by the shard threads, after the work already queued
+        List<CompletableFuture<Object>> closes = new ArrayList<>();
+        for (EngineShard shard : shards) {
+            closes.add(shard.submit(() -> {
+                closeColdStore(shard.getGame());
+                return null;
+            }));
+        }
+        closes.forEach(MyAdventureService::await);
+        for (EngineShard shard : shards) {
+            shard.stop();
+        }
+        if (resultStore != null) {
+            resultStore.close();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Resets the service to its initial state. Every shard is held between two of its tasks first; the
+     * reset is recorded and the ids start over while none of them runs, so every change recorded before
+     * the reset was made before it, and every change after it is made on the new engines.
      */
     @Override
     public void reset() {
-        currentID = 0;
-        game = new GameEngine();
-        allGamesID = new HashMap<>();
+        CountDownLatch held = new CountDownLatch(shards.length);
+        CountDownLatch recorded = new CountDownLatch(1);
+        AtomicBoolean abandoned = new AtomicBoolean();
+        List<CompletableFuture<Object>> resets = new ArrayList<>();
+        idLock.writeLock().lock();
+        try {
+            for (EngineShard shard : shards) {
+                resets.add(shard.submit(() -> {
+                    held.countDown();
+                    try {
+                        recorded.await();
+                    } catch (InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                        abandoned.set(true);
+                    }
+                    if (abandoned.get()) {
+                        throw new IllegalStateException("The reset was abandoned");
+                    }
+                    replaceGame(shard);
+                    return null;
+                }));
+            }
+            if (!held.await(SHARD_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("The shards did not stop within " + SHARD_TIMEOUT + " ms");
+            }
+            if (journal != null) {
+                journal.appendReset();
+                // The new engines use game.json as it is now
+                journal.appendLayout(layoutFingerprint());
+            }
+            epoch.updateAndGet(current -> Math.max(current + 1, System.currentTimeMillis()));
+            currentID.set(0);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            abandoned.set(true);
+            throw new IllegalStateException("Interrupted while stopping the shards", exception);
+        } catch (RuntimeException exception) {
+            abandoned.set(true);
+            throw exception;
+        } finally {
+            recorded.countDown();
+            idLock.writeLock().unlock();
+        }
+        resets.forEach(MyAdventureService::await);
+        leaderboard.clear();
+        if (resultStore != null) {
+            resultStore.clear();
+        }
     }
 
     /**
@@ -27,17 +522,128 @@ public class MyAdventureService implements AdventureService {
      */
     @Override
     public int newGame() throws AdventureException {
-        GameStatus currentGame;
-        this.currentID++;
-        try {
-            currentGame = game.startGame("game.json", currentID);
-        } catch (Exception ioException) {
+        GameStatus currentGame = await(newGameAsync());
+        if (currentGame == null) {
             throw new AdventureException("Invalid Import JSON file");
         }
-        this.allGamesID.put(currentGame.getId(), currentGame);
         return currentGame.getId();
     }
 
+    /**
+     * Creates a new Adventure game on its shard without waiting for it.
+     * @return a future completed with the state of the new game, or null if it could not be created
+     */
+    @Override
+    public CompletableFuture<GameStatus> newGameAsync() {
+        idLock.readLock().lock();
+        try {
+            return startGameOnShard(currentID.incrementAndGet());
+        } finally {
+            idLock.readLock().unlock();
+        }
+    }
+
+    private CompletableFuture<GameStatus> startGameOnShard(int id) {
+        EngineShard shard = shardOf(id);
+        return shard.submit(() -> {
+            checkJournal();
+            GameStatus currentGame;
+            try {
+                currentGame = shard.getGame().startGame("game.json", id);
+            } catch (Exception ioException) {
+                return null;
+            }
+            shard.getSessionManager().created(id, System.currentTimeMillis());
+            if (journal != null) {
+                journal.appendCreate(id);
+            }
+            return currentGame;
+        });
+    }
+
+    /**
+     * Creates many Adventure games at once. The ids are taken as one range, and each shard starts
+     * its part of the range in one task.
+     * @param count the number of games
+     * @return the range of ids of the games and how long it took
+     */
+    @Override
+    public BulkOperationResult newGames(int count) throws AdventureException {
+        long start = System.nanoTime();
+        int firstId;
+        List<CompletableFuture<Boolean>> parts = new ArrayList<>();
+        idLock.readLock().lock();
+        try {
+            firstId = currentID.getAndAdd(count) + 1;
+            queueGames(firstId, count, parts);
+        } finally {
+            idLock.readLock().unlock();
+        }
+        for (CompletableFuture<Boolean> part : parts) {
+            if (!await(part)) {
+                throw new AdventureException("Invalid Import JSON file");
+            }
+        }
+        return new BulkOperationResult(firstId, firstId + count - 1, count, System.nanoTime() - start);
+    }
+
+    // Queues the part of a range of ids of each shard as one of its tasks
+    private void queueGames(int firstId, int count, List<CompletableFuture<Boolean>> parts) {
+        for (int offset = 0; offset < shards.length && offset < count; offset++) {
+            // The ids of a shard are shards.length apart
+            int shardFirst = firstId + offset;
+            int shardCount = (count - offset + shards.length - 1) / shards.length;
+            EngineShard shard = shardOf(shardFirst);
+            parts.add(shard.submit(() -> {
+                checkJournal();
+                try {
+                    shard.getGame().startGames("game.json", shardFirst, shardCount, shards.length);
+                } catch (Exception ioException) {
+                    return false;
+                }
+                if (journal != null) {
+                    journal.appendCreateBulk(shardFirst, shardCount, shards.length);
+                }
+                long now = System.currentTimeMillis();
+                for (int i = 0; i < shardCount; i++) {
+                    shard.getSessionManager().created(shardFirst + i * shards.length, now);
+                }
+                return true;
+            }));
+        }
+    }
+
+    /**
+     * Removes & destroys every game instance with an id in the given range, all shards at once.
+     * @param firstId the first id of the range
+     * @param lastId the last id of the range, included
+     * @return the number of instances destroyed and how long it took
+     */
+    @Override
+    public BulkOperationResult destroyGames(int firstId, int lastId) {
+        long start = System.nanoTime();
+        List<CompletableFuture<Integer>> parts = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            EngineShard shard = shards[i];
+            int residue = i;
+            parts.add(shard.submit(() -> {
+                checkJournal();
+                int ended = shard.getGame().endGames(firstId, lastId);
+                // Only the ids of this shard were ended, which the record says so a replay on another
+                // number of shards does not end games created on other shards since
+                if (journal != null && ended > 0) {
+                    journal.appendDestroyRange(firstId, lastId, residue, shards.length);
+                }
+                return ended;
+            }));
+        }
+        int destroyed = 0;
+        for (CompletableFuture<Integer> part : parts) {
+            destroyed += await(part);
+        }
+        return new BulkOperationResult(firstId, lastId, destroyed, System.nanoTime() - start);
+    }
+
     /**
      * Returns the state of the game instance associated with the given ID.
      * @param id the instance id
@@ -45,7 +651,64 @@ public class MyAdventureService implements AdventureService {
      */
     @Override
     public GameStatus getGame(int id) {
-        return this.allGamesID.get(id);
+        return await(getGameAsync(id));
+    }
+
+    /**
+     * Returns the state of the game instance with the given id without waiting for it.
+     * @param id the instance id
+     * @return a future completed with the current state of the game, or null if it could not be found
+     */
+    @Override
+    public CompletableFuture<GameStatus> getGameAsync(int id) {
+        EngineShard shard = shardOf(id);
+        return shard.submit(() -> {
+            shard.getSessionManager().touched(id, System.currentTimeMillis());
+            return shard.getGame().getGameStatus(id);
+        });
+    }
+
+    /**
+     * Returns the version of the state of the game instance, which goes up each time the state changes.
+     * Reading the version counts as using the game.
+     * @param id the instance id
+     * @return the version, or -1 if the instance could not be found
+     */
+    @Override
+    public int getGameVersion(int id) {
+        EngineShard shard = shardOf(id);
+        return await(shard.submit(() -> {
+            shard.getSessionManager().touched(id, System.currentTimeMillis());
+            return shard.getGame().getGameVersion(id);
+        }));
+    }
+
+    /**
+     * Returns the state of the game instance with its version, read in one task of its shard so they
+     * always agree, without waiting for it. Reading it counts as using the game.
+     * @param id the instance id
+     * @return a future completed with the state and its version, or null if the instance could not be found
+     */
+    @Override
+    public CompletableFuture<VersionedStatus> getVersionedGameAsync(int id) {
+        EngineShard shard = shardOf(id);
+        return shard.submit(() -> {
+            shard.getSessionManager().touched(id, System.currentTimeMillis());
+            GameStatus status = shard.getGame().getGameStatus(id);
+            if (status == null) {
+                return null;
+            }
+            return new VersionedStatus(shard.getGame().getGameVersion(id), status);
+        });
+    }
+
+    /**
+     * Returns the epoch of the service, which changes each time it is started or reset.
+     * @return the epoch
+     */
+    @Override
+    public long getEpoch() {
+        return epoch.get();
     }
 
     /**
@@ -55,16 +718,20 @@ public class MyAdventureService implements AdventureService {
      */
     @Override
     public boolean destroyGame(int id) {
-        // If not found
-        if (!this.allGamesID.containsKey(id)) {
-            return false;
+        EngineShard shard = shardOf(id);
+        // False if not found, otherwise everything kept for the game is released
+        boolean destroyed = await(shard.submit(() -> {
+            checkJournal();
+            boolean ended = shard.getGame().endGame(id);
+            if (journal != null && ended) {
+                journal.appendDestroy(id);
+            }
+            return ended;
+        }));
+        if (destroyed) {
+            notifyStatusChanged(id);
         }
-        this.allGamesID.remove(id);
-        // If remove failed
-        if (this.allGamesID.containsKey(id)) {
-            return false;
-        }
-        return true;
+        return destroyed;
     }
 
     /**
@@ -74,17 +741,430 @@ public class MyAdventureService implements AdventureService {
      */
     @Override
     public void executeCommand(int id, Command command) {
-        GameStatus currentStatus = this.allGamesID.get(id);
-        GameStatus newStatus = this.game.runGameServer(currentStatus, command);
-        this.allGamesID.put(newStatus.getId(), newStatus);
+        await(executeCommandAsync(id, command));
+    }
+
+    /**
+     * Executes a command on the shard of the game instance without waiting for it.
+     * @param id the instance id
+     * @param command the issued command
+     * @return a future completed with the state after the command, or null if the instance could not be found
+     */
+    @Override
+    public CompletableFuture<GameStatus> executeCommandAsync(int id, Command command) {
+        EngineShard shard = shardOf(id);
+        return shard.submit(() -> {
+            GameStatus currentStatus = shard.getGame().getGameStatus(id);
+            if (currentStatus == null) {
+                return null;
+            }
+            checkRecordable(command);
+            shard.getSessionManager().touched(id, System.currentTimeMillis());
+            GameStatus newStatus = shard.getGame().runGameServer(currentStatus, command);
+            if (journal != null) {
+                journal.appendCommand(id, command);
+            }
+            notifyStatusChanged(id);
+            return newStatus;
+        });
+    }
+
+    /**
+     * Executes a command on the game instance with the given id and returns only what changed since
+     * the version the client already has. The state before the command is still held by the engine, so
+     * a patch can only be built from the version just before the command; any other version gets the
+     * whole state.
+     * @param id the instance id
+     * @param command the issued command
+     * @param knownVersion the version of the state the client has
+     * @return the changes from the known version, the whole state if the client does not have the version
+     *         before the command, or null if the instance could not be found
+     */
+    @Override
+    public StatusPatch executeCommandPatch(int id, Command command, int knownVersion) {
+        EngineShard shard = shardOf(id);
+        return await(shard.submit(() -> {
+            GameEngine game = shard.getGame();
+            GameStatus oldStatus = game.getGameStatus(id);
+            if (oldStatus == null) {
+                return null;
+            }
+            checkRecordable(command);
+            shard.getSessionManager().touched(id, System.currentTimeMillis());
+            int oldVersion = game.getGameVersion(id);
+            GameStatus newStatus = game.runGameServer(oldStatus, command);
+            if (journal != null) {
+                journal.appendCommand(id, command);
+            }
+            notifyStatusChanged(id);
+            if (knownVersion != oldVersion) {
+                return StatusPatch.resync(newStatus, oldVersion + 1);
+            }
+            return StatusPatch.diff(oldStatus, newStatus, oldVersion, oldVersion + 1);
+        }));
+    }
+
+    /**
+     * Executes several commands on the game instance with the given id, in order, as one task of its shard.
+     * @param id the instance id
+     * @param commands the issued commands
+     * @param withSteps whether to return the room the player is in after each command
+     * @return the state after the last command and the rooms of each step, or null if the instance could not be found
+     */
+    @Override
+    public CommandBatchResult executeCommands(int id, List<Command> commands, boolean withSteps) {
+        EngineShard shard = shardOf(id);
+        return await(shard.submit(() -> {
+            if (!shard.getSessionManager().touched(id, System.currentTimeMillis())) {
+                return null;
+            }
+            commands.forEach(this::checkRecordable);
+            List<String> steps = withSteps ? new ArrayList<>(commands.size()) : null;
+            GameStatus status;
+            try {
+                status = shard.getGame().runGameServer(id, commands, steps);
+            } catch (BatchCommandException exception) {
+                // The commands run before the failure stay, so they are recorded like a shorter batch
+                journalCommands(id, commands.subList(0, exception.getApplied()));
+                if (exception.getApplied() > 0) {
+                    notifyStatusChanged(id);
+                }
+                throw exception;
+            }
+            journalCommands(id, commands);
+            if (!commands.isEmpty()) {
+                notifyStatusChanged(id);
+            }
+            return new CommandBatchResult(status, steps);
+        }));
+    }
+
+    // Checked before a game is changed, so nothing changes that the journal would not record
+    private void checkJournal() {
+        if (journal != null && journal.isFailed()) {
+            throw new IllegalStateException("The journal stopped after a write failed, games cannot change");
+        }
+    }
+
+    // Checked before a command runs, so a command the journal could not record changes nothing
+    private void checkRecordable(Command command) {
+        checkJournal();
+        if (journal != null && command != null && !CommandJournal.fits(command)) {
+            throw new IllegalArgumentException("A command name or value is longer than "
+                    + CommandJournal.MAX_STRING_BYTES + " bytes");
+        }
+    }
+
+    private void journalCommands(int id, List<Command> commands) {
+        if (journal != null) {
+            commands.forEach(command -> journal.appendCommand(id, command));
+        }
+    }
+
+    /**
+     * Returns a page of the rooms a game instance went through, oldest first.
+     * @param id the instance id
+     * @param offset the index of the first room of the page
+     * @param limit the most rooms in the page
+     * @return the names of the rooms in the page, or null if the instance could not be found
+     */
+    @Override
+    public List<String> getHistory(int id, long offset, int limit) {
+        EngineShard shard = shardOf(id);
+        return await(shard.submit(() -> shard.getGame().getHistoryPage(id, offset, limit)));
     }
 
     /**
-     * Returns a sorted leaderboard of player "high" scores.
-     * @return a sorted map of player names to scores
+     * Returns how many rooms are kept in the history of a game instance.
+     * @param id the instance id
+     * @return the number of rooms, or -1 if the instance could not be found
+     */
+    @Override
+    public long getHistorySize(int id) {
+        EngineShard shard = shardOf(id);
+        return await(shard.submit(() -> shard.getGame().getHistorySize(id)));
+    }
+
+    /**
+     * Returns the number of live games and how many were ended for being unused or over the limit,
+     * added up over the shards, and the mailbox depth of each shard.
+     * @return the counters by name
+     */
+    @Override
+    public Map<String, Long> getSessionStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        for (EngineShard shard : shards) {
+            await(shard.submit(() -> shard.getSessionManager().getStats()))
+                    .forEach((name, value) -> stats.merge(name, value, Long::sum));
+        }
+        stats.put("shards", (long) shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            stats.put("shard" + i + ".queueDepth", (long) shards[i].getQueueDepth());
+            stats.put("shard" + i + ".maxQueueDepth", (long) shards[i].getMaxQueueDepth());
+            stats.put("shard" + i + ".completedTasks", shards[i].getCompletedTasks());
+        }
+        if (resultStore != null) {
+            stats.putAll(resultStore.getStats());
+        }
+        if (journal != null) {
+            stats.putAll(journal.getStats());
+            stats.put("restartMillis", restartMillis);
+            stats.put("restoredSessions", restoredSessions);
+            stats.put("skippedRecords", skippedRecords);
+        }
+        if (snapshotStore != null) {
+            stats.put("snapshotsTaken", snapshotsTaken);
+            stats.put("lastSnapshotMillis", lastSnapshotMillis);
+            stats.put("lastSnapshotBytes", lastSnapshotBytes);
+            stats.put("lastSnapshotSessions", lastSnapshotSessions);
+            stats.put("maxSnapshotPauseMicros", maxSnapshotPauseMicros);
+        }
+        return stats;
+    }
+
+    /**
+     * Adds a listener told each time the state of a game instance changes or the instance is destroyed.
+     * Listeners are called on the shard thread of the instance.
+     * @param listener the listener
      */
     @Override
-    public SortedMap<String, Integer> fetchLeaderboard() {
-        return null;
+    public void addStatusListener(StatusListener listener) {
+        statusListeners.add(listener);
+    }
+
+    /**
+     * Returns the leaderboard of the best finished games. It is built when a game makes it to the board,
+     * so this only reads the latest snapshot.
+     * @return the latest snapshot of the leaderboard, best first
+     */
+    @Override
+    public LeaderboardSnapshot fetchLeaderboard() {
+        return leaderboard.getSnapshot();
+    }
+
+    /**
+     * Rebuilds the games of a snapshot and of the journal after it on the shards of this service. Each
+     * record is sent to the shard owning its game, so the shards replay at once and the records of one
+     * game stay in order. The snapshot and journal may have been written by a service with another
+     * number of shards.
+     */
+    private final class JournalReplay implements CommandJournal.Visitor {
+        // The last task sent to each shard
+        private final CompletableFuture<?>[] last = new CompletableFuture<?>[shards.length];
+        // The cut of each shard of the snapshot, records of its games before it are in the snapshot
+        private long[] cuts;
+        private long lastCut;
+        private int maxId;
+        // The fingerprint of the layout now
+        private final long fingerprint;
+        // Set while the records were written with another layout, they are then not replayed
+        private boolean skipping;
+        private long skipped;
+
+        JournalReplay(long fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        // Whether games of a layout can be used with the layout now
+        boolean matches(long recorded) {
+            return recorded == fingerprint;
+        }
+
+        // Counts a record written with another layout, which is not replayed
+        private boolean skip() {
+            if (skipping) {
+                skipped++;
+            }
+            return skipping;
+        }
+
+        @Override
+        public void layout(long sequence, long recorded) {
+            skipping = !matches(recorded);
+        }
+
+        private void run(int index, Runnable task) {
+            EngineShard shard = shards[index];
+            if (last[index] != null && shard.getQueueDepth() >= REPLAY_QUEUE) {
+                // Keeps the mailbox from holding the whole journal
+                waitFor(last[index]);
+            }
+            last[index] = shard.submit(() -> {
+                task.run();
+                return null;
+            });
+        }
+
+        private int indexOf(int id) {
+            return Math.floorMod(id, shards.length);
+        }
+
+        /**
+         * Restores the games of a snapshot, each shard reading the sections holding its games from the
+         * mapped file at once.
+         * @param snapshot The snapshot
+         * @return The number of games restored
+         */
+        int restore(SnapshotStore.Snapshot snapshot) {
+            cuts = snapshot.getCuts();
+            for (long cut : cuts) {
+                lastCut = Math.max(lastCut, cut);
+            }
+            maxId = snapshot.getLastId();
+            ByteBuffer[] sections = snapshot.getSections();
+            List<CompletableFuture<Integer>> parts = new ArrayList<>();
+            for (int i = 0; i < shards.length; i++) {
+                EngineShard shard = shards[i];
+                int residue = i;
+                parts.add(shard.submit(() -> {
+                    int restored = 0;
+                    long now = System.currentTimeMillis();
+                    for (int section = 0; section < sections.length; section++) {
+                        // With as many shards as when it was taken, a section only holds the games of one shard
+                        if (sections.length == shards.length && section != residue) {
+                            continue;
+                        }
+                        int[] ids;
+                        try {
+                            ids = shard.getGame().restoreSessions("game.json", sections[section].duplicate(),
+                                    residue, shards.length);
+                        } catch (IOException exception) {
+                            throw new IllegalStateException("Could not restore the snapshot", exception);
+                        }
+                        for (int id : ids) {
+                            shard.getSessionManager().created(id, now);
+                        }
+                        restored += ids.length;
+                    }
+                    return restored;
+                }));
+            }
+            int restored = 0;
+            for (CompletableFuture<Integer> part : parts) {
+                restored += await(part);
+            }
+            return restored;
+        }
+
+        // Whether the snapshot already holds the record, made by the shard of the snapshot with the residue
+        private boolean inSnapshot(long sequence, int residue) {
+            return cuts != null && sequence < cuts[residue];
+        }
+
+        private boolean gameInSnapshot(long sequence, int id) {
+            return cuts != null && inSnapshot(sequence, Math.floorMod(id, cuts.length));
+        }
+
+        @Override
+        public void created(long sequence, int id) {
+            maxId = Math.max(maxId, id);
+            if (skip() || gameInSnapshot(sequence, id)) {
+                return;
+            }
+            EngineShard shard = shards[indexOf(id)];
+            run(indexOf(id), () -> startGames(shard, id, 1, 1));
+        }
+
+        @Override
+        public void command(long sequence, int id, Command command) {
+            if (skip() || gameInSnapshot(sequence, id)) {
+                return;
+            }
+            EngineShard shard = shards[indexOf(id)];
+            run(indexOf(id), () -> shard.getGame().runGameServer(id, Collections.singletonList(command), null));
+        }
+
+        @Override
+        public void destroyed(long sequence, int id) {
+            if (skip() || gameInSnapshot(sequence, id)) {
+                return;
+            }
+            EngineShard shard = shards[indexOf(id)];
+            run(indexOf(id), () -> shard.getGame().endGame(id));
+        }
+
+        @Override
+        public void createdBulk(long sequence, int firstId, int count, int stride) {
+            maxId = Math.max(maxId, firstId + (count - 1) * stride);
+            if (skip() || gameInSnapshot(sequence, firstId)) {
+                return;
+            }
+            if (stride % shards.length == 0) {
+                // Every id of the part belongs to the same shard, as when it was recorded
+                EngineShard shard = shards[indexOf(firstId)];
+                run(indexOf(firstId), () -> startGames(shard, firstId, count, stride));
+            } else {
+                for (int i = 0; i < count; i++) {
+                    int id = firstId + i * stride;
+                    EngineShard shard = shards[indexOf(id)];
+                    run(indexOf(id), () -> startGames(shard, id, 1, 1));
+                }
+            }
+        }
+
+        @Override
+        public void destroyedRange(long sequence, int firstId, int lastId, int residue, int modulus) {
+            if (skip()) {
+                return;
+            }
+            if (cuts != null && modulus == cuts.length && inSnapshot(sequence, residue)) {
+                return;
+            }
+            for (int i = 0; i < shards.length; i++) {
+                if (modulus == shards.length && i != residue) {
+                    continue;
+                }
+                EngineShard shard = shards[i];
+                run(i, () -> shard.getGame().endGames(firstId, lastId, residue, modulus));
+            }
+        }
+
+        @Override
+        public void reset(long sequence) {
+            maxId = 0;
+            if (cuts != null && sequence < lastCut) {
+                // Some shards of the snapshot were cut after the reset, only the others are reset
+                for (int residue = 0; residue < cuts.length; residue++) {
+                    if (!inSnapshot(sequence, residue)) {
+                        destroyedRange(sequence, Integer.MIN_VALUE, Integer.MAX_VALUE, residue, cuts.length);
+                    }
+                }
+                return;
+            }
+            for (int i = 0; i < shards.length; i++) {
+                EngineShard shard = shards[i];
+                run(i, () -> replaceGame(shard));
+            }
+        }
+
+        private void startGames(EngineShard shard, int firstId, int count, int stride) {
+            try {
+                shard.getGame().startGames("game.json", firstId, count, stride);
+            } catch (Exception exception) {
+                throw new IllegalStateException("Could not start the replayed games", exception);
+            }
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < count; i++) {
+                shard.getSessionManager().created(firstId + i * stride, now);
+            }
+        }
+
+        // Waits for every shard to finish the replay, and goes on from the last id
+        void finish() {
+            for (CompletableFuture<?> future : last) {
+                if (future != null) {
+                    waitFor(future);
+                }
+            }
+            currentID.set(maxId);
+        }
+
+        private void waitFor(CompletableFuture<?> future) {
+            try {
+                future.join();
+            } catch (CompletionException exception) {
+                // A record the engine refused, as it did when the record was written
+            }
+        }
     }
 }
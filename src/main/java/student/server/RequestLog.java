@@ -0,0 +1,226 @@
+package student.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded ring of compact request log entries, filled by the server threads and emptied by a
+ * background writer, so logging never formats or writes anything on the thread serving a request.
+ * Entries are allocated once and reused. A server thread claims the next slot with a compare and set,
+ * fills it and publishes it; the single writer reads slots in order until it finds one not published yet.
+ * When the writer falls behind and the ring is full, entries are dropped and counted rather than
+ * making requests wait.
+ */
+public class RequestLog {
+    private final Entry[] entries;
+    private final int mask;
+    // The sequence of the next slot to claim
+    private final AtomicLong next = new AtomicLong();
+    // The sequence of the next slot to read, only written by the writer
+    private volatile long consumed;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private volatile boolean running = true;
+    private Thread writer;
+
+    /**
+     * One logged request, reused once it is written.
+     */
+    public static final class Entry {
+        // The sequence of the entry held, -1 while none is published
+        private volatile long published = -1;
+        private long timeMillis;
+        private String method;
+        private String path;
+        private int id;
+        private int status;
+        private long latencyNanos;
+        private String payload;
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return The id of the game instance of the request, or -1 if it has none.
+         */
+        public int getId() {
+            return id;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+
+        /**
+         * @return The body of an error response, or null.
+         */
+        public String getPayload() {
+            return payload;
+        }
+
+        /**
+         * This method is used to write the entry as one line, like "POST instance/3/command id=3 status=200 latencyUs=85".
+         * @param line The builder the line is added to
+         */
+        public void format(StringBuilder line) {
+            line.append(method).append(' ').append(path);
+            if (id >= 0) {
+                line.append(" id=").append(id);
+            }
+            line.append(" status=").append(status).append(" latencyUs=").append(latencyNanos / 1000);
+            if (payload != null) {
+                line.append(" payload=").append(payload);
+            }
+        }
+    }
+
+    /**
+     * @param capacity The most entries waiting for the writer, rounded up to a power of two
+     */
+    public RequestLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        entries = new Entry[size];
+        for (int i = 0; i < size; i++) {
+            entries[i] = new Entry();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * This method is used to add an entry, called by any thread.
+     * @param method The HTTP method
+     * @param path The path of the request
+     * @param id The id of the game instance, or -1
+     * @param status The status of the response
+     * @param latencyNanos How long the request took
+     * @param payload The body of an error response, or null
+     * @return false if the ring was full and the entry dropped
+     */
+    public boolean record(String method, String path, int id, int status, long latencyNanos, String payload) {
+        long sequence;
+        do {
+            sequence = next.get();
+            if (sequence - consumed >= entries.length) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!next.compareAndSet(sequence, sequence + 1));
+        Entry entry = entries[(int) sequence & mask];
+        entry.timeMillis = System.currentTimeMillis();
+        entry.method = method;
+        entry.path = path;
+        entry.id = id;
+        entry.status = status;
+        entry.latencyNanos = latencyNanos;
+        entry.payload = payload;
+        // Publishing last makes the fields above visible to the writer
+        entry.published = sequence;
+        return true;
+    }
+
+    /**
+     * This method is used to hand the published entries to a consumer in order, only by the writer.
+     * @param consumer Gets each entry, which must not be kept
+     * @return The number of entries handed over
+     */
+    public int drain(Consumer<Entry> consumer) {
+        long sequence = consumed;
+        int count = 0;
+        while (true) {
+            Entry entry = entries[(int) sequence & mask];
+            if (entry.published != sequence) {
+                break;
+            }
+            consumer.accept(entry);
+            entry.payload = null;
+            sequence++;
+            count++;
+            // Frees the slot for the server threads
+            consumed = sequence;
+        }
+        written.addAndGet(count);
+        return count;
+    }
+
+    /**
+     * This method is used to start the background writer, which writes the entries to a logger.
+     * @param logger The logger getting one INFO line per entry
+     * @param periodMillis How long the writer sleeps when the ring is empty
+     */
+    public synchronized void startWriter(Logger logger, long periodMillis) {
+        if (writer != null) {
+            return;
+        }
+        StringBuilder line = new StringBuilder(256);
+        Consumer<Entry> write = entry -> {
+            line.setLength(0);
+            entry.format(line);
+            logger.log(Level.INFO, line.toString());
+        };
+        writer = new Thread(() -> {
+            while (running) {
+                if (drain(write) == 0) {
+                    LockSupport.parkNanos(periodMillis * 1000000L);
+                }
+            }
+            drain(write);
+        }, "adventure-request-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * This method is used to stop the writer once it wrote what is left.
+     */
+    public synchronized void stopWriter() {
+        running = false;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+            try {
+                writer.join();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return The number of entries dropped because the ring was full.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return The number of entries handed to the writer.
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * @return The most entries the ring holds.
+     */
+    public int getCapacity() {
+        return entries.length;
+    }
+}
@@ -0,0 +1,89 @@
+package student.server;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Logs a sample of the requests as compact entries: method, path, instance id, status and latency.
+ * Every error response is logged, with its body; other requests are logged with the sample rate
+ * (-Dadventure.log.sample, 0 to 1). Nothing is formatted or written on the request thread, the entries
+ * go to a RequestLog written by a background thread. The latency is measured up to the response
+ * filter, so it does not include writing the body.
+ */
+@Provider
+public class RequestLogFilter implements ContainerRequestFilter, ContainerResponseFilter {
+    private static final double DEFAULT_SAMPLE_RATE = Double.parseDouble(System.getProperty("adventure.log.sample", "0.01"));
+    // Entries waiting for the writer, more are dropped (-Dadventure.log.buffer)
+    private static final int DEFAULT_BUFFER = Integer.getInteger("adventure.log.buffer", 8192);
+    // The most characters of an error body kept
+    private static final int MAX_PAYLOAD = 1000;
+    private static final String START_PROPERTY = "adventure.requestStart";
+    private final RequestLog log;
+    private final double sampleRate;
+
+    public RequestLogFilter() {
+        this(new RequestLog(DEFAULT_BUFFER), DEFAULT_SAMPLE_RATE);
+        log.startWriter(Logger.getLogger(RequestLog.class.getName()), 100);
+    }
+
+    /**
+     * @param log The ring the entries are added to
+     * @param sampleRate The part of the successful requests logged, from 0 to 1
+     */
+    public RequestLogFilter(RequestLog log, double sampleRate) {
+        this.log = log;
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        requestContext.setProperty(START_PROPERTY, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        int status = responseContext.getStatus();
+        boolean error = status >= 400;
+        // The sampling is decided before anything else is read, so unsampled requests cost nothing more
+        if (!error && (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return;
+        }
+        Object start = requestContext.getProperty(START_PROPERTY);
+        long latency = start instanceof Long ? System.nanoTime() - (Long) start : -1;
+        String id = requestContext.getUriInfo().getPathParameters().getFirst("id");
+        log.record(requestContext.getMethod(), requestContext.getUriInfo().getPath(),
+                id == null ? -1 : parseId(id), status, latency, error ? payloadOf(responseContext.getEntity()) : null);
+    }
+
+    private static int parseId(String id) {
+        try {
+            return Integer.parseInt(id);
+        } catch (NumberFormatException exception) {
+            return -1;
+        }
+    }
+
+    // The message of an error entity, cut to the most characters kept
+    private static String payloadOf(Object entity) {
+        if (entity == null) {
+            return null;
+        }
+        String payload = entity instanceof Throwable ? ((Throwable) entity).getMessage() : entity.toString();
+        if (payload != null && payload.length() > MAX_PAYLOAD) {
+            payload = payload.substring(0, MAX_PAYLOAD);
+        }
+        return payload;
+    }
+
+    /**
+     * @return The ring the entries are added to.
+     */
+    public RequestLog getLog() {
+        return log;
+    }
+}
@@ -0,0 +1,309 @@
+package student.server;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the results of finished games in a local SQLite database, in WAL mode.
+ * Results are saved behind the back of the game: saving only puts the result in a bounded queue, and a
+ * writer thread commits everything waiting, up to a batch size, in one transaction (group commit). When
+ * the queue is full, results are dropped and counted rather than making the shard thread wait.
+ * Clearing never waits for the queue either: it is counted, and the writer deletes the results written so far
+ * and skips the queued ones saved before it.
+ */
+public class ResultStore {
+    private static final Logger LOGGER = Logger.getLogger(ResultStore.class.getName());
+    // Guards the connection, used by the writer and by the reads
+    private final Object connectionLock = new Object();
+    private final Connection connection;
+    private final BlockingQueue<Pending> queue;
+    private final int maxBatch;
+    private final long flushMillis;
+    private final Thread writer;
+    private volatile boolean running = true;
+    // The clears asked for, and the clears done, only used by the writer
+    private final AtomicLong clears = new AtomicLong();
+    private long clearsDone;
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile long lastBatchSize;
+    private volatile long maxBatchSize;
+    private volatile long lastFlushMicros;
+    private volatile long maxFlushMicros;
+    private volatile long lastLatencyMicros;
+
+    /**
+     * A result waiting to be written, with the time it was queued and the clears asked for before it.
+     */
+    private static class Pending {
+        final LeaderboardEntry entry;
+        final long queuedNanos;
+        final long clears;
+
+        Pending(LeaderboardEntry entry, long queuedNanos, long clears) {
+            this.entry = entry;
+            this.queuedNanos = queuedNanos;
+            this.clears = clears;
+        }
+    }
+
+    /**
+     * Opens the database, creating it if needed, and starts the writer.
+     * @param path The file of the database
+     * @param maxBatch The most results written in one transaction
+     * @param flushMillis How long the writer waits for more results once it has one, to make larger batches
+     * @param maxQueue The most results waiting for the writer, more are dropped
+     * @throws SQLException if the database cannot be opened
+     */
+    public ResultStore(String path, int maxBatch, long flushMillis, int maxQueue) throws SQLException {
+        if (maxBatch <= 0 || maxQueue <= 0) {
+            throw new IllegalArgumentException("Batch and queue sizes must be positive");
+        }
+        this.maxBatch = maxBatch;
+        this.flushMillis = flushMillis;
+        queue = new ArrayBlockingQueue<>(maxQueue);
+        connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            // With WAL, NORMAL only syncs at checkpoints; a crash may lose the last batches, never corrupt
+            statement.execute("PRAGMA synchronous=NORMAL");
+            statement.execute("CREATE TABLE IF NOT EXISTS results (game_id INTEGER NOT NULL,"
+                    + " score INTEGER NOT NULL, moves INTEGER NOT NULL, items INTEGER NOT NULL,"
+                    + " elapsed_ms INTEGER NOT NULL, finished_at INTEGER NOT NULL)");
+            statement.execute("CREATE INDEX IF NOT EXISTS results_rank ON results"
+                    + " (score DESC, elapsed_ms, moves, game_id)");
+        }
+        connection.setAutoCommit(false);
+        writer = new Thread(this::runWriter, "adventure-result-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * This method is used to save the result of a finished game, without waiting for it to be written.
+     * @param entry The scored game
+     * @return false if the queue was full and the result dropped
+     */
+    public boolean save(LeaderboardEntry entry) {
+        if (!queue.offer(new Pending(entry, System.nanoTime(), clears.get()))) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * This method is used to delete every result saved so far, queued ones included, without waiting.
+     * The writer deletes them within its poll interval.
+     */
+    public void clear() {
+        clears.incrementAndGet();
+    }
+
+    private void runWriter() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (clears.get() > clearsDone) {
+                        write(batch);
+                    }
+                    continue;
+                }
+                batch.add(first);
+                // Results arriving within the flush delay share the transaction
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushMillis);
+                while (batch.size() < maxBatch) {
+                    queue.drainTo(batch, maxBatch - batch.size());
+                    long left = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatch || left <= 0 || !running) {
+                        break;
+                    }
+                    Pending next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException exception) {
+                // Stopping: write what was taken, then what is left
+            }
+            if (!batch.isEmpty() || clears.get() > clearsDone) {
+                write(batch);
+                batch.clear();
+            }
+        }
+        // A clear asked for just before closing
+        if (clears.get() > clearsDone) {
+            write(batch);
+        }
+    }
+
+    // Writes a batch in one transaction, after deleting every result if a clear was asked for since the last
+    private void write(List<Pending> batch) {
+        synchronized (connectionLock) {
+            writeLocked(batch);
+        }
+    }
+
+    private void writeLocked(List<Pending> batch) {
+        long start = System.nanoTime();
+        // Read after the batch was taken, so a result saved before a clear read here is not written
+        long clearsAsked = clears.get();
+        int count = 0;
+        long oldestNanos = 0;
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO results"
+                + " (game_id, score, moves, items, elapsed_ms, finished_at) VALUES (?, ?, ?, ?, ?, ?)");
+             Statement statement = connection.createStatement()) {
+            if (clearsAsked > clearsDone) {
+                statement.executeUpdate("DELETE FROM results");
+            }
+            long now = System.currentTimeMillis();
+            for (Pending pending : batch) {
+                if (pending.clears < clearsAsked) {
+                    // Saved before a clear, it would be deleted
+                    continue;
+                }
+                if (count == 0) {
+                    oldestNanos = pending.queuedNanos;
+                }
+                LeaderboardEntry entry = pending.entry;
+                insert.setInt(1, entry.getId());
+                insert.setInt(2, entry.getScore());
+                insert.setLong(3, entry.getMoves());
+                insert.setInt(4, entry.getItems());
+                insert.setLong(5, entry.getElapsedMillis());
+                insert.setLong(6, now);
+                insert.addBatch();
+                count++;
+            }
+            insert.executeBatch();
+            connection.commit();
+            clearsDone = clearsAsked;
+        } catch (SQLException exception) {
+            failed.addAndGet(count);
+            LOGGER.log(Level.WARNING, "Could not save " + count + " results", exception);
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackException) {
+                // The connection is broken, the next batch reports it again
+            }
+            return;
+        }
+        if (batch.isEmpty()) {
+            // Only a clear
+            return;
+        }
+        long end = System.nanoTime();
+        batches.incrementAndGet();
+        written.addAndGet(count);
+        lastBatchSize = batch.size();
+        maxBatchSize = Math.max(maxBatchSize, batch.size());
+        lastFlushMicros = (end - start) / 1000;
+        maxFlushMicros = Math.max(maxFlushMicros, lastFlushMicros);
+        if (count > 0) {
+            lastLatencyMicros = (end - oldestNanos) / 1000;
+        }
+    }
+
+    /**
+     * This method is used to read the best results written so far, to warm the leaderboard at startup.
+     * @param limit The most results read
+     * @return The best results, best first
+     * @throws SQLException if the database cannot be read
+     */
+    public List<LeaderboardEntry> loadBest(int limit) throws SQLException {
+        synchronized (connectionLock) {
+            return loadBestLocked(limit);
+        }
+    }
+
+    private List<LeaderboardEntry> loadBestLocked(int limit) throws SQLException {
+        List<LeaderboardEntry> entries = new ArrayList<>(limit);
+        try (PreparedStatement select = connection.prepareStatement("SELECT game_id, score, moves, items,"
+                + " elapsed_ms FROM results ORDER BY score DESC, elapsed_ms, moves, game_id LIMIT ?")) {
+            select.setInt(1, limit);
+            try (ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    entries.add(new LeaderboardEntry(rows.getInt(1), rows.getInt(2), rows.getLong(3),
+                            rows.getInt(4), rows.getLong(5)));
+                }
+            }
+        }
+        connection.commit();
+        return entries;
+    }
+
+    /**
+     * @return The number of results written so far.
+     * @throws SQLException if the database cannot be read
+     */
+    public long countResults() throws SQLException {
+        synchronized (connectionLock) {
+            try (Statement statement = connection.createStatement();
+                 ResultSet rows = statement.executeQuery("SELECT COUNT(*) FROM results")) {
+                rows.next();
+                long count = rows.getLong(1);
+                connection.commit();
+                return count;
+            }
+        }
+    }
+
+    /**
+     * This method is used to write what is queued, stop the writer and close the database.
+     */
+    public void close() {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (connectionLock) {
+            try {
+                connection.close();
+            } catch (SQLException exception) {
+                LOGGER.log(Level.WARNING, "Could not close the result store", exception);
+            }
+        }
+    }
+
+    /**
+     * This method is used to build the counters shown by the server.
+     * @return The queue depth, batches, results written, dropped or failed, batch sizes, and how long
+     *         transactions took and results waited, by name
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("resultQueueDepth", (long) queue.size());
+        stats.put("resultBatches", batches.get());
+        stats.put("resultsWritten", written.get());
+        stats.put("resultsDropped", dropped.get());
+        stats.put("resultsFailed", failed.get());
+        stats.put("resultLastBatchSize", lastBatchSize);
+        stats.put("resultMaxBatchSize", maxBatchSize);
+        stats.put("resultLastFlushMicros", lastFlushMicros);
+        stats.put("resultMaxFlushMicros", maxFlushMicros);
+        stats.put("resultLastLatencyMicros", lastLatencyMicros);
+        return stats;
+    }
+}
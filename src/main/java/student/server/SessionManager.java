@@ -0,0 +1,249 @@
+package student.server;
+
+import student.adventure.ColdSessionStore;
+import student.adventure.GameEngine;
+import student.adventure.SessionTable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tracks when each game instance of an engine was last used and ends the ones nobody uses anymore.
+ * Every instance sits in a timer wheel at the tick its time to live would run out. When the tick
+ * comes, the instance is ended if it was not used since, or put back at its new deadline otherwise,
+ * so using an instance only writes its last access tick. When there are more instances than allowed,
+ * the least recently used of a few randomly sampled instances is ended (approximate LRU).
+ * When the engine has a cold store, instances unused for a while are moved off the heap on each sweep,
+ * and the least recently used are moved off the heap in the same way while there are too many on it.
+ * They come back to the heap when used, and are the first ones ended when there are too many instances.
+ * This class is not thread safe: it is only used by the thread of the shard owning the engine.
+ */
+public class SessionManager {
+    // The number of instances looked at to pick one to end when there are too many
+    private static final int LRU_SAMPLES = 5;
+    private static final int MAX_WHEEL_SIZE = 4096;
+    private final GameEngine engine;
+    private final long tickMillis;
+    private final int ttlTicks;
+    private final int maxSessions;
+    private final long originMillis;
+    private final TimerWheel wheel;
+    private long idleEvictions;
+    private long capacityEvictions;
+    // Instances unused for this many ticks are moved off the heap, 0 to never move them for being idle
+    private int demoteTicks;
+    private int maxHotSessions = Integer.MAX_VALUE;
+
+    /**
+     * @param engine The engine holding the instances
+     * @param ttlMillis How long an instance may stay unused before it is ended
+     * @param maxSessions The most instances kept at once
+     * @param tickMillis The length of a tick of the timer wheel, the precision of the time to live
+     * @param nowMillis The current time
+     */
+    public SessionManager(GameEngine engine, long ttlMillis, int maxSessions, long tickMillis, long nowMillis) {
+        if (ttlMillis <= 0 || tickMillis <= 0 || maxSessions <= 0) {
+            throw new IllegalArgumentException("Session time to live, tick and limit must be positive");
+        }
+        this.engine = engine;
+        this.tickMillis = tickMillis;
+        this.ttlTicks = (int) Math.min(Integer.MAX_VALUE / 2, (ttlMillis + tickMillis - 1) / tickMillis);
+        this.maxSessions = maxSessions;
+        this.originMillis = nowMillis;
+        wheel = new TimerWheel(Math.min(MAX_WHEEL_SIZE, ttlTicks + 1), 0);
+    }
+
+    /**
+     * This method is used to move instances off the heap, into the cold store of the engine.
+     * @param demoteAfterMillis How long an instance may stay unused before it is moved, 0 for never
+     * @param maxHotSessions The most instances kept on the heap
+     */
+    public void setTiering(long demoteAfterMillis, int maxHotSessions) {
+        if (demoteAfterMillis < 0 || maxHotSessions <= 0) {
+            throw new IllegalArgumentException("Demotion delay cannot be negative and the heap limit must be positive");
+        }
+        this.demoteTicks = (int) Math.min(Integer.MAX_VALUE / 2, (demoteAfterMillis + tickMillis - 1) / tickMillis);
+        this.maxHotSessions = maxHotSessions;
+    }
+
+    private int toTick(long nowMillis) {
+        return (int) ((nowMillis - originMillis) / tickMillis);
+    }
+
+    /**
+     * This method is used to start tracking a new instance, ending the least recently used instances
+     * if there are now too many.
+     * @param id The id of the new instance
+     * @param nowMillis The current time
+     */
+    public void created(int id, long nowMillis) {
+        if (!touched(id, nowMillis)) {
+            return;
+        }
+        int tick = toTick(nowMillis);
+        wheel.schedule(id, (long) tick + ttlTicks);
+        SessionTable sessions = engine.getSessions();
+        while (engine.getSessionCount() > maxSessions) {
+            // Instances off the heap were used less recently than the ones on it, so they are ended first
+            if (!engine.endColdLeastRecentlyUsed(LRU_SAMPLES)) {
+                int victim = sampleLeastRecentlyUsed(sessions, id);
+                if (victim < 0) {
+                    break;
+                }
+                engine.endGame(sessions.getId(victim));
+            }
+            capacityEvictions++;
+        }
+    }
+
+    // Moves the least recently used instances off the heap while there are too many on it
+    private void demoteOverLimit(int keptId) {
+        SessionTable sessions = engine.getSessions();
+        // Instances too large for a slot stay, so the tries are bounded
+        for (int tries = 0; sessions.size() > maxHotSessions && tries < 2 * LRU_SAMPLES; tries++) {
+            int victim = sampleLeastRecentlyUsed(sessions, keptId);
+            if (victim < 0) {
+                return;
+            }
+            demote(sessions.getId(victim));
+        }
+    }
+
+    private boolean demote(int id) {
+        try {
+            return engine.demoteSession(id);
+        } catch (IOException exception) {
+            // The cold store could not grow, the instance stays on the heap
+            return false;
+        }
+    }
+
+    /**
+     * This method is used to record that an instance was used.
+     * @param id The id of the instance
+     * @param nowMillis The current time
+     * @return false if there is no such instance
+     */
+    public boolean touched(int id, long nowMillis) {
+        SessionTable sessions = engine.getSessions();
+        // Brings the instance back to the heap if it was moved off it
+        int slot = engine.findSession(id);
+        if (slot < 0) {
+            return false;
+        }
+        sessions.setLastAccess(slot, toTick(nowMillis));
+        if (sessions.size() > maxHotSessions) {
+            demoteOverLimit(id);
+        }
+        return true;
+    }
+
+    // The slot with the oldest access among a few used slots from a random place, never the kept id
+    private int sampleLeastRecentlyUsed(SessionTable sessions, int keptId) {
+        int capacity = sessions.getCapacity();
+        int slot = ThreadLocalRandom.current().nextInt(capacity);
+        int victim = -1;
+        int sampled = 0;
+        for (int i = 0; i < capacity && sampled < LRU_SAMPLES; i++, slot = (slot + 1) % capacity) {
+            if (!sessions.isUsed(slot) || sessions.getId(slot) == keptId) {
+                continue;
+            }
+            sampled++;
+            if (victim < 0 || sessions.getLastAccess(slot) < sessions.getLastAccess(victim)) {
+                victim = slot;
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * This method is used to end the instances whose time to live ran out, called by the sweeper.
+     * @param nowMillis The current time
+     * @return The number of instances ended
+     */
+    public int sweep(long nowMillis) {
+        int tick = toTick(nowMillis);
+        SessionTable sessions = engine.getSessions();
+        long before = idleEvictions;
+        wheel.advance(tick, id -> {
+            int slot = sessions.find(id);
+            // Instances off the heap are checked where they are, without bringing them back
+            int lastAccess = slot >= 0 ? sessions.getLastAccess(slot) : engine.getColdLastAccess(id);
+            // Instances destroyed or evicted since they were scheduled are simply dropped
+            if (lastAccess < 0) {
+                return;
+            }
+            if (tick - lastAccess >= ttlTicks) {
+                engine.endGame(id);
+                idleEvictions++;
+            } else {
+                wheel.schedule(id, (long) lastAccess + ttlTicks);
+            }
+        });
+        if (demoteTicks > 0 && engine.getColdStore() != null) {
+            demoteIdle(sessions, tick);
+        }
+        return (int) (idleEvictions - before);
+    }
+
+    // Moves the instances unused for the demotion delay off the heap. Removing shifts entries back, so
+    // the ids are collected before anything is moved.
+    private void demoteIdle(SessionTable sessions, int tick) {
+        int[] ids = new int[sessions.size()];
+        int count = 0;
+        for (int slot = 0; slot < sessions.getCapacity(); slot++) {
+            if (sessions.isUsed(slot) && tick - sessions.getLastAccess(slot) >= demoteTicks) {
+                ids[count++] = sessions.getId(slot);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            demote(ids[i]);
+        }
+    }
+
+    /**
+     * @return The number of instances ended because they were not used for too long.
+     */
+    public long getIdleEvictions() {
+        return idleEvictions;
+    }
+
+    /**
+     * @return The number of instances ended because there were too many.
+     */
+    public long getCapacityEvictions() {
+        return capacityEvictions;
+    }
+
+    /**
+     * @return The number of instances alive right now.
+     */
+    public int getLiveSessions() {
+        return engine.getSessionCount();
+    }
+
+    /**
+     * This method is used to build the counters shown by the server.
+     * @return The live instances, evictions and scheduled timers by name, with the instances on and off
+     *         the heap and the moves between them when the engine has a cold store
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("liveSessions", (long) getLiveSessions());
+        stats.put("maxSessions", (long) maxSessions);
+        stats.put("idleEvictions", idleEvictions);
+        stats.put("capacityEvictions", capacityEvictions);
+        stats.put("scheduledTimers", (long) wheel.size());
+        ColdSessionStore coldStore = engine.getColdStore();
+        if (coldStore != null) {
+            stats.put("hotSessions", (long) engine.getSessions().size());
+            stats.put("coldSessions", (long) coldStore.size());
+            stats.put("promotions", coldStore.getPromotions());
+            stats.put("demotions", coldStore.getDemotions());
+            stats.put("demotionsRejected", coldStore.getRejected());
+            stats.put("coldMappedBytes", coldStore.getMappedBytes());
+        }
+        return stats;
+    }
+}
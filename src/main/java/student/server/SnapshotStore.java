@@ -0,0 +1,241 @@
+package student.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps snapshots of the games of a service next to its journal, so a restart loads the latest snapshot
+ * and only replays the journal records after it.
+ * A snapshot holds one section per shard, each written by its shard between two commands (a consistent
+ * cut of that shard), with the journal sequence number of the cut. The file starts with a header:
+ * a magic number, the format, the time, the last game id given, the fingerprint of the layout of the
+ * games, the number of shards, then the cut and the length of each section. The games hold int room and
+ * item ids, so a snapshot is only usable with a layout of the same fingerprint. The sections follow and
+ * a CRC32 of everything before ends the file.
+ * A snapshot is written to a temporary file and renamed once synced, so a crash never leaves half of one,
+ * and it is read back by mapping the file rather than copying it to the heap.
+ */
+public class SnapshotStore {
+    private static final Logger LOGGER = Logger.getLogger(SnapshotStore.class.getName());
+    private static final int MAGIC = 0x41445653;
+    private static final int FORMAT = 2;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+    private final Path directory;
+
+    /**
+     * A snapshot read back, its sections are views of the mapped file.
+     */
+    public static class Snapshot {
+        private final int lastId;
+        private final long layoutFingerprint;
+        private final long[] cuts;
+        private final ByteBuffer[] sections;
+
+        Snapshot(int lastId, long layoutFingerprint, long[] cuts, ByteBuffer[] sections) {
+            this.lastId = lastId;
+            this.layoutFingerprint = layoutFingerprint;
+            this.cuts = cuts;
+            this.sections = sections;
+        }
+
+        /**
+         * @return The fingerprint of the layout of the games.
+         */
+        public long getLayoutFingerprint() {
+            return layoutFingerprint;
+        }
+
+        /**
+         * @return The last game id given when the snapshot was taken.
+         */
+        public int getLastId() {
+            return lastId;
+        }
+
+        /**
+         * @return The journal sequence number of the cut of each shard: the records of the games of a
+         *         shard from it on are not in the snapshot.
+         */
+        public long[] getCuts() {
+            return cuts;
+        }
+
+        /**
+         * @return The games of each shard, as written by GameEngine.snapshotSessions.
+         */
+        public ByteBuffer[] getSections() {
+            return sections;
+        }
+
+        /**
+         * @return The oldest journal record not held by the snapshot.
+         */
+        public long getFirstSequence() {
+            long first = Long.MAX_VALUE;
+            for (long cut : cuts) {
+                first = Math.min(first, cut);
+            }
+            return first;
+        }
+
+        /**
+         * @return The sequence number of the latest cut, every record of every shard before it is held.
+         */
+        public long getLastSequence() {
+            long last = 0;
+            for (long cut : cuts) {
+                last = Math.max(last, cut);
+            }
+            return last;
+        }
+    }
+
+    /**
+     * @param directory The directory of the snapshot files, created if needed
+     */
+    public SnapshotStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * This method is used to write a snapshot, then delete the older ones.
+     * @param lastId The last game id given
+     * @param layoutFingerprint The fingerprint of the layout of the games
+     * @param cuts The journal sequence number of the cut of each shard
+     * @param sections The games of each shard, from position to limit
+     * @return The size of the file in bytes
+     */
+    public long write(int lastId, long layoutFingerprint, long[] cuts, ByteBuffer[] sections) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4 + 4 + 8 + 4 + 8 + 4 + cuts.length * (8 + 8));
+        header.putInt(MAGIC).putInt(FORMAT).putLong(System.currentTimeMillis()).putInt(lastId)
+                .putLong(layoutFingerprint).putInt(cuts.length);
+        for (int i = 0; i < cuts.length; i++) {
+            header.putLong(cuts[i]).putLong(sections[i].remaining());
+        }
+        header.flip();
+        CRC32 crc = new CRC32();
+        long first = Long.MAX_VALUE;
+        for (long cut : cuts) {
+            first = Math.min(first, cut);
+        }
+        Path target = directory.resolve(String.format("%s%020d%s", PREFIX, first, SUFFIX));
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        long size;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header, crc);
+            for (ByteBuffer section : sections) {
+                writeFully(channel, section.duplicate(), crc);
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(4).putInt((int) crc.getValue());
+            trailer.flip();
+            writeFully(channel, trailer, null);
+            channel.force(true);
+            size = channel.size();
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (Path old : listSnapshots()) {
+            if (!old.equals(target)) {
+                Files.delete(old);
+            }
+        }
+        return size;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException {
+        if (crc != null) {
+            crc.update(buffer.duplicate());
+        }
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private List<Path> listSnapshots() throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            files.forEach(snapshots::add);
+        }
+        // The names hold the zero padded first sequence number, so the latest sorts last
+        Collections.sort(snapshots);
+        return snapshots;
+    }
+
+    /**
+     * This method is used to map the latest snapshot, the newest one that is whole.
+     * @return The snapshot, or null if there is none
+     */
+    public Snapshot load() throws IOException {
+        List<Path> snapshots = listSnapshots();
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            Snapshot snapshot = map(snapshots.get(i));
+            if (snapshot != null) {
+                return snapshot;
+            }
+        }
+        return null;
+    }
+
+    // The mapping stays valid once the channel is closed
+    private static Snapshot map(Path file) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                LOGGER.warning("Snapshot too large to map: " + file);
+                return null;
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            ByteBuffer body = mapped.duplicate();
+            body.limit(body.limit() - 4);
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if (mapped.getInt(body.limit()) != (int) crc.getValue() || body.getInt() != MAGIC) {
+                LOGGER.warning("Skipping damaged snapshot " + file);
+                return null;
+            }
+            int format = body.getInt();
+            if (format != FORMAT) {
+                LOGGER.warning("Skipping snapshot of unknown format " + format + ": " + file);
+                return null;
+            }
+            body.getLong();
+            int lastId = body.getInt();
+            long layoutFingerprint = body.getLong();
+            int shardCount = body.getInt();
+            long[] cuts = new long[shardCount];
+            long[] lengths = new long[shardCount];
+            for (int i = 0; i < shardCount; i++) {
+                cuts[i] = body.getLong();
+                lengths[i] = body.getLong();
+            }
+            ByteBuffer[] sections = new ByteBuffer[shardCount];
+            for (int i = 0; i < shardCount; i++) {
+                ByteBuffer section = body.slice();
+                section.limit((int) lengths[i]);
+                sections[i] = section;
+                body.position(body.position() + (int) lengths[i]);
+            }
+            return new Snapshot(lastId, layoutFingerprint, cuts, sections);
+        } catch (RuntimeException exception) {
+            LOGGER.log(Level.WARNING, "Skipping damaged snapshot " + file, exception);
+            return null;
+        }
+    }
+}
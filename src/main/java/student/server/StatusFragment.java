@@ -0,0 +1,89 @@
+package student.server;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * The part of a GameStatus that only depends on the room, encoded once as UTF-8 JSON.
+ * The engine keeps one per room and attaches it to the statuses showing that room, so GameStatusWriter
+ * can copy these bytes instead of encoding the description, image and "go" options every time.
+ */
+public final class StatusFragment {
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    // "message":...,"imageUrl":...,"videoUrl":...,
+    private final byte[] head;
+    // [...] of the "go" options
+    private final byte[] goOptions;
+
+    private StatusFragment(byte[] head, byte[] goOptions) {
+        this.head = head;
+        this.goOptions = goOptions;
+    }
+
+    /**
+     * This method is used to encode the static part of the statuses of a room.
+     * @param message The description of the room
+     * @param imageUrl The image shown in the room, may be null
+     * @param videoUrl The video shown in the room, may be null
+     * @param goOptions The directions out of the room
+     * @return The encoded fragment
+     */
+    public static StatusFragment of(String message, String imageUrl, String videoUrl, List<String> goOptions) {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        writeField(head, "message", message);
+        writeField(head, "imageUrl", imageUrl);
+        writeField(head, "videoUrl", videoUrl);
+        ByteArrayOutputStream go = new ByteArrayOutputStream();
+        writeArray(go, goOptions);
+        return new StatusFragment(head.toByteArray(), go.toByteArray());
+    }
+
+    private static void writeField(ByteArrayOutputStream out, String name, String value) {
+        writeString(out, name);
+        out.write(':');
+        writeString(out, value);
+        out.write(',');
+    }
+
+    /**
+     * This method is used to write a JSON string, or null.
+     */
+    static void writeString(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            out.write(NULL, 0, NULL.length);
+            return;
+        }
+        byte[] encoded = JsonStringEncoder.getInstance().quoteAsUTF8(value);
+        out.write('"');
+        out.write(encoded, 0, encoded.length);
+        out.write('"');
+    }
+
+    /**
+     * This method is used to write a JSON array of strings, or null.
+     */
+    static void writeArray(ByteArrayOutputStream out, List<String> values) {
+        if (values == null) {
+            out.write(NULL, 0, NULL.length);
+            return;
+        }
+        out.write('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeString(out, values.get(i));
+        }
+        out.write(']');
+    }
+
+    byte[] getHead() {
+        return head;
+    }
+
+    byte[] getGoOptions() {
+        return goOptions;
+    }
+}
@@ -0,0 +1,12 @@
+package student.server;
+
+/**
+ * Told when the state of a game instance changed or the instance was destroyed.
+ * It is called on the thread that made the change, so it should only take note and return.
+ */
+public interface StatusListener {
+    /**
+     * @param id the id of the game instance that changed
+     */
+    void statusChanged(int id);
+}
@@ -0,0 +1,134 @@
+package student.server;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The change of the state of a game instance from the version a client already has to the current
+ * version, sent instead of the whole state to save bandwidth.
+ * A patch lists in "set" the fields whose value changed, and in "unset" the fields that are now null or
+ * gone; only the changed lists of "commandOptions" are listed, by name. A client applies it to the
+ * state it has at version "base" to get the state at "version".
+ * When the client does not have the base version, "resync" is true and "status" holds the whole state.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class StatusPatch {
+    private int id;
+    private int version;
+    private Integer base;
+    private Boolean resync;
+    private GameStatus status;
+    private Map<String, Object> set;
+    private List<String> unset;
+
+    private StatusPatch(int id, int version) {
+        this.id = id;
+        this.version = version;
+    }
+
+    /**
+     * This method is used to build the patch from one state of a game instance to the next.
+     * @param from The state at the base version
+     * @param to The state at the new version
+     * @param base The version of the first state
+     * @param version The version of the second state
+     * @return The fields that changed
+     */
+    public static StatusPatch diff(GameStatus from, GameStatus to, int base, int version) {
+        StatusPatch patch = new StatusPatch(to.getId(), version);
+        patch.base = base;
+        patch.set = new LinkedHashMap<>();
+        patch.unset = new ArrayList<>();
+        if (from.isError() != to.isError()) {
+            patch.set.put("error", to.isError());
+        }
+        patch.compare("message", from.getMessage(), to.getMessage());
+        patch.compare("imageUrl", from.getImageUrl(), to.getImageUrl());
+        patch.compare("videoUrl", from.getVideoUrl(), to.getVideoUrl());
+        // The state holds no values, so it never changes
+        Map<String, List<String>> oldOptions = from.getCommandOptions();
+        Map<String, List<String>> newOptions = to.getCommandOptions();
+        Map<String, Object> changedOptions = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> option : newOptions.entrySet()) {
+            List<String> arguments = option.getValue();
+            if (arguments == null) {
+                if (oldOptions.get(option.getKey()) != null) {
+                    patch.unset.add("commandOptions." + option.getKey());
+                }
+            } else if (!arguments.equals(oldOptions.get(option.getKey()))) {
+                changedOptions.put(option.getKey(), arguments);
+            }
+        }
+        for (Map.Entry<String, List<String>> option : oldOptions.entrySet()) {
+            if (option.getValue() != null && !newOptions.containsKey(option.getKey())) {
+                patch.unset.add("commandOptions." + option.getKey());
+            }
+        }
+        if (!changedOptions.isEmpty()) {
+            patch.set.put("commandOptions", changedOptions);
+        }
+        if (patch.set.isEmpty()) {
+            patch.set = null;
+        }
+        if (patch.unset.isEmpty()) {
+            patch.unset = null;
+        }
+        return patch;
+    }
+
+    private void compare(String field, String oldValue, String newValue) {
+        if (Objects.equals(oldValue, newValue)) {
+            return;
+        }
+        if (newValue == null) {
+            unset.add(field);
+        } else {
+            set.put(field, newValue);
+        }
+    }
+
+    /**
+     * This method is used to build the answer for a client that cannot apply a patch.
+     * @param status The whole current state
+     * @param version The current version
+     * @return A patch holding the whole state
+     */
+    public static StatusPatch resync(GameStatus status, int version) {
+        StatusPatch patch = new StatusPatch(status.getId(), version);
+        patch.resync = true;
+        patch.status = status;
+        return patch;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public Integer getBase() {
+        return base;
+    }
+
+    public Boolean getResync() {
+        return resync;
+    }
+
+    public GameStatus getStatus() {
+        return status;
+    }
+
+    public Map<String, Object> getSet() {
+        return set;
+    }
+
+    public List<String> getUnset() {
+        return unset;
+    }
+}
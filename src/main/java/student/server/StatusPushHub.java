@@ -0,0 +1,213 @@
+package student.server;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.sse.OutboundSseEvent;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+
+/**
+ * Pushes the state of game instances to the clients subscribed to them, as server sent events.
+ * A change only marks the instance dirty; a flusher thread sends the latest state of each dirty
+ * instance once per flush interval, so many quick changes are coalesced into one event and the work
+ * per connection is bounded. A heartbeat drops closed connections, tells the clients of destroyed
+ * instances, and keeps watched instances from being ended as unused.
+ */
+public class StatusPushHub implements StatusListener {
+    private final AdventureService service;
+    private final Map<Integer, List<SseEventSink>> subscriptions = new ConcurrentHashMap<>();
+    private final Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService flusher;
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong events = new AtomicLong();
+    private volatile Sse sse;
+
+    /**
+     * @param service The service holding the game instances, this hub listens to it
+     * @param flushMillis How often in milliseconds the changed instances are pushed
+     * @param heartbeatMillis How often in milliseconds the connections are checked
+     */
+    public StatusPushHub(AdventureService service, long flushMillis, long heartbeatMillis) {
+        this.service = service;
+        flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "adventure-status-push");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        flusher.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        service.addStatusListener(this);
+    }
+
+    /**
+     * This method is used to subscribe a connection to an instance. The current state is sent at the
+     * next flush.
+     * @param id The id of the instance
+     * @param sink The connection
+     * @param sse The factory of events
+     */
+    public void subscribe(int id, SseEventSink sink, Sse sse) {
+        this.sse = sse;
+        subscriptions.compute(id, (key, sinks) -> {
+            List<SseEventSink> result = sinks == null ? new CopyOnWriteArrayList<>() : sinks;
+            result.add(sink);
+            return result;
+        });
+        dirty.add(id);
+    }
+
+    @Override
+    public void statusChanged(int id) {
+        updates.incrementAndGet();
+        if (subscriptions.containsKey(id)) {
+            dirty.add(id);
+        }
+    }
+
+    /**
+     * This method is used to push the latest state of every changed instance, run by the flusher. The
+     * states are read by the shards and sent by the flusher once read, so a busy shard never holds up
+     * the instances of the others.
+     * @return A future completed once every state read was sent
+     */
+    CompletableFuture<Void> flush() {
+        List<CompletableFuture<Void>> pushes = new ArrayList<>();
+        for (Integer id : dirty) {
+            dirty.remove(id);
+            pushes.add(push(id));
+        }
+        return CompletableFuture.allOf(pushes.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private CompletableFuture<Void> push(int id) {
+        if (!subscriptions.containsKey(id) || sse == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        // The state and its version are read in one task, so the event id always matches the state.
+        // The flusher runs the tasks in the order the shards finish them, so each instance's events stay in order
+        return service.getVersionedGameAsync(id).handleAsync((versioned, failure) -> {
+            // A shard that failed or stopped sends nothing, the next change marks the instance again
+            if (failure == null) {
+                send(id, versioned);
+            }
+            return null;
+        }, flusher);
+    }
+
+    private void send(int id, VersionedStatus versioned) {
+        List<SseEventSink> sinks = subscriptions.get(id);
+        if (sinks == null) {
+            return;
+        }
+        if (versioned == null) {
+            OutboundSseEvent gone = sse.newEventBuilder().name("gone").data(String.class, Integer.toString(id)).build();
+            for (SseEventSink sink : sinks) {
+                send(id, sink, gone);
+                sink.close();
+            }
+            subscriptions.remove(id);
+            return;
+        }
+        OutboundSseEvent event = sse.newEventBuilder()
+                .name("status")
+                .id(service.getEpoch() + "-" + id + "." + versioned.getVersion())
+                .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                .data(GameStatus.class, versioned.getStatus())
+                .build();
+        for (SseEventSink sink : sinks) {
+            send(id, sink, event);
+        }
+    }
+
+    private void send(int id, SseEventSink sink, OutboundSseEvent event) {
+        if (sink.isClosed()) {
+            unsubscribe(id, sink);
+            return;
+        }
+        events.incrementAndGet();
+        sink.send(event).whenComplete((result, failure) -> {
+            if (failure != null) {
+                sink.close();
+                unsubscribe(id, sink);
+            }
+        });
+    }
+
+    private void unsubscribe(int id, SseEventSink sink) {
+        subscriptions.computeIfPresent(id, (key, sinks) -> {
+            sinks.remove(sink);
+            return sinks.isEmpty() ? null : sinks;
+        });
+    }
+
+    /**
+     * This method is used to check every connection, run by the flusher. Like a flush, it does not wait
+     * for the shards.
+     * @return A future completed once every instance was checked
+     */
+    CompletableFuture<Void> heartbeat() {
+        if (sse == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        OutboundSseEvent comment = sse.newEventBuilder().comment("heartbeat").build();
+        List<CompletableFuture<Void>> checks = new ArrayList<>();
+        for (Integer id : subscriptions.keySet()) {
+            // Reading the state also marks the instance as used
+            checks.add(service.getVersionedGameAsync(id).handleAsync((versioned, failure) -> {
+                if (failure != null) {
+                    return null;
+                }
+                if (versioned == null) {
+                    send(id, null);
+                    return null;
+                }
+                List<SseEventSink> sinks = subscriptions.get(id);
+                if (sinks != null) {
+                    for (SseEventSink sink : sinks) {
+                        send(id, sink, comment);
+                    }
+                }
+                return null;
+            }, flusher));
+        }
+        return CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * This method is used to stop pushing and close every connection.
+     */
+    public void shutdown() {
+        flusher.shutdownNow();
+        for (List<SseEventSink> sinks : subscriptions.values()) {
+            sinks.forEach(SseEventSink::close);
+        }
+        subscriptions.clear();
+    }
+
+    /**
+     * This method is used to build the counters shown by the server.
+     * @return The connections, changes seen and events sent by name
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        long connections = 0;
+        for (List<SseEventSink> sinks : subscriptions.values()) {
+            connections += sinks.size();
+        }
+        stats.put("pushConnections", connections);
+        stats.put("pushUpdates", updates.get());
+        stats.put("pushEvents", events.get());
+        return stats;
+    }
+}
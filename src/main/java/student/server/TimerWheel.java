@@ -0,0 +1,91 @@
+package student.server;
+
+import java.util.function.IntConsumer;
+
+/**
+ * A hashed timer wheel of int ids. Each bucket holds the ids due at the ticks that map to it, so
+ * scheduling is O(1) and advancing the wheel only visits the buckets of the ticks that passed.
+ * A deadline further away than the wheel can hold is put in the furthest bucket; whoever receives an
+ * id decides whether it is really due and may schedule it again. This class is not thread safe.
+ */
+public class TimerWheel {
+    private static final int INITIAL_BUCKET_SIZE = 4;
+    private final int[][] buckets;
+    private final int[] sizes;
+    private final int mask;
+    // A bucket array reused while the ids of a bucket are handed out
+    private int[] spare = new int[INITIAL_BUCKET_SIZE];
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param wheelSize The number of buckets, rounded up to a power of two
+     * @param startTick The tick the wheel starts at
+     */
+    public TimerWheel(int wheelSize, long startTick) {
+        int buckets = Integer.highestOneBit(Math.max(2, wheelSize - 1)) << 1;
+        this.buckets = new int[buckets][];
+        for (int i = 0; i < buckets; i++) {
+            this.buckets[i] = new int[INITIAL_BUCKET_SIZE];
+        }
+        sizes = new int[buckets];
+        mask = buckets - 1;
+        currentTick = startTick;
+    }
+
+    /**
+     * This method is used to schedule an id.
+     * @param id The id
+     * @param tick The tick the id is due at; a past tick means the next tick
+     */
+    public void schedule(int id, long tick) {
+        long due = Math.min(Math.max(tick, currentTick + 1), currentTick + buckets.length);
+        int bucket = (int) (due & mask);
+        if (sizes[bucket] == buckets[bucket].length) {
+            int[] grown = new int[sizes[bucket] * 2];
+            System.arraycopy(buckets[bucket], 0, grown, 0, sizes[bucket]);
+            buckets[bucket] = grown;
+        }
+        buckets[bucket][sizes[bucket]++] = id;
+        size++;
+    }
+
+    /**
+     * This method is used to move the wheel forward and hand out the ids that became due.
+     * @param toTick The tick to move to; nothing happens if it is not after the current tick
+     * @param due Called with each id that became due, it may schedule the id again
+     */
+    public void advance(long toTick, IntConsumer due) {
+        // Every bucket is visited once at most, even after a long pause
+        if (toTick - currentTick > buckets.length) {
+            currentTick = toTick - buckets.length;
+        }
+        while (currentTick < toTick) {
+            currentTick++;
+            int bucket = (int) (currentTick & mask);
+            int[] ids = buckets[bucket];
+            int count = sizes[bucket];
+            if (count == 0) {
+                continue;
+            }
+            buckets[bucket] = spare;
+            sizes[bucket] = 0;
+            size -= count;
+            for (int i = 0; i < count; i++) {
+                due.accept(ids[i]);
+            }
+            spare = ids;
+        }
+    }
+
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * @return The number of ids scheduled.
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,28 @@
+package student.server;
+
+/**
+ * The state of a game instance with its version, read together so they always agree.
+ */
+public class VersionedStatus {
+    /**
+     * The version of the state, which goes up each time the state changes.
+     */
+    private int version;
+    /**
+     * The state of the game.
+     */
+    private GameStatus status;
+
+    public VersionedStatus(int version, GameStatus status) {
+        this.version = version;
+        this.status = status;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public GameStatus getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,99 @@
+package student.adventure;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ColdSessionStoreTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    ColdSessionStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        // Slots of 16 bytes, 4 slots per region
+        store = new ColdSessionStore(folder.getRoot().toPath(), 16, 64);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.close();
+    }
+
+    // Test if a slot written on claim is read back, and freed once taken
+    @Test
+    public void testClaimAndTake() throws Exception {
+        store.claim(7).putInt(42).putLong(-1);
+        assertTrue(store.contains(7));
+        assertEquals(42, store.find(7).getInt());
+        ByteBuffer taken = store.take(7);
+        assertEquals(42, taken.getInt());
+        assertFalse(store.contains(7));
+        assertNull(store.take(7));
+        assertEquals(1, store.getDemotions());
+        assertEquals(1, store.getPromotions());
+        assertEquals(0, store.size());
+    }
+
+    // Test if regions are added as slots run out, and freed slots are reused
+    @Test
+    public void testRegionGrowth() throws Exception {
+        for (int id = 0; id < 9; id++) {
+            store.claim(id).putInt(id * 10);
+        }
+        assertEquals(3 * 64, store.getMappedBytes());
+        for (int id = 0; id < 9; id++) {
+            assertEquals(id * 10, store.find(id).getInt(0));
+        }
+        assertTrue(store.remove(4));
+        assertFalse(store.remove(4));
+        store.claim(100).putInt(1000);
+        assertEquals(3 * 64, store.getMappedBytes());
+        assertEquals(1000, store.find(100).getInt(0));
+        assertEquals(80, store.find(8).getInt(0));
+    }
+
+    // Test if removing by filter keeps the others findable
+    @Test
+    public void testRemoveIf() throws Exception {
+        for (int id = 0; id < 100; id++) {
+            store.claim(id).putInt(id);
+        }
+        assertEquals(50, store.removeIf(id -> id % 2 == 0));
+        assertEquals(50, store.size());
+        int[] ids = store.ids();
+        Arrays.sort(ids);
+        assertEquals(1, ids[0]);
+        assertEquals(99, ids[49]);
+        for (int id = 1; id < 100; id += 2) {
+            assertEquals(id, store.find(id).getInt(0));
+        }
+    }
+
+    // Test if a sample holds distinct instances of the store, no more than it holds
+    @Test
+    public void testSample() throws Exception {
+        assertEquals(0, store.sample(5).length);
+        for (int id = 0; id < 3; id++) {
+            store.claim(id);
+        }
+        int[] ids = store.sample(5);
+        Arrays.sort(ids);
+        assertArrayEquals(new int[] {0, 1, 2}, ids);
+        for (int id = 3; id < 50; id++) {
+            store.claim(id);
+        }
+        for (int id : store.sample(5)) {
+            assertTrue(store.contains(id));
+        }
+    }
+}
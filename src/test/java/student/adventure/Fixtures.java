@@ -0,0 +1,30 @@
+package student.adventure;
+
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Paths;
+
+/**
+ * Finds the layout files kept with the tests, in src/test/resources, on the classpath.
+ */
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    /**
+     * This method is used to find the path of a layout file of the tests.
+     * @param name The name of the file
+     * @return The path of the file, to load it like any other layout
+     */
+    static String path(String name) {
+        URL url = Fixtures.class.getResource("/" + name);
+        if (url == null) {
+            throw new IllegalStateException("No test layout " + name + " on the classpath");
+        }
+        try {
+            return Paths.get(url.toURI()).toString();
+        } catch (URISyntaxException exception) {
+            throw new IllegalStateException("Bad path of the test layout " + name, exception);
+        }
+    }
+}
@@ -4,7 +4,9 @@ import org.hamcrest.CoreMatchers;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -12,6 +14,7 @@ import java.util.Map;
 import java.util.HashMap;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import org.junit.contrib.java.lang.system.SystemOutRule;
 import student.server.AdventureState;
 import student.server.Command;
@@ -24,6 +27,8 @@ public class GameEngineTest {
     // Reference: https://stefanbirkner.github.io/system-rules/#EnvironmentVariables
     @Rule
     public final SystemOutRule systemOutRule = new SystemOutRule().enableLog();
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
 
     @Before
     public void setUp() throws IOException {
@@ -237,4 +242,259 @@ public class GameEngineTest {
         GameStatus newStatus = game.runGameServer(currentGame, currentCommand);
         assertEquals(newStatus.getMessage(), "Your traversed history is: {Home->Practice}");
     }
-}
\ No newline at end of file
+
+    // A take by one player should not change the room for another player
+    @Test
+    public void testRunGameServerTakeIsolated() throws Exception {
+        GameStatus first = game.startGame("smallTest.json", 1);
+        GameStatus second = game.startGame("smallTest.json", 2);
+        first = game.runGameServer(first, new Command("take", "Nezuko"));
+        assertEquals(Arrays.asList("dog"), first.getCommandOptions().get("take"));
+        second = game.runGameServer(second, new Command("examine", ""));
+        assertEquals(Arrays.asList("nezuko", "dog"), second.getCommandOptions().get("take"));
+        first = game.runGameServer(first, new Command("drop", "nezuko"));
+        assertEquals(Arrays.asList("nezuko", "dog"), first.getCommandOptions().get("take"));
+        assertEquals(Arrays.asList(), game.getPlayerItemsCollected().get(1));
+    }
+
+    // Games written by snapshotSessions come back with their items, room changes, history and version
+    @Test
+    public void testSnapshotAndRestoreSessions() throws Exception {
+        GameStatus first = game.startGame("smallTest.json", 1);
+        game.startGame("smallTest.json", 2);
+        first = game.runGameServer(first, new Command("take", "Nezuko"));
+        first = game.runGameServer(first, new Command("go", "practice"));
+        first = game.runGameServer(first, new Command("go", "practice"));
+        ByteBuffer snapshot = game.snapshotSessions();
+        GameEngine restored = new GameEngine();
+        int[] ids = restored.restoreSessions("smallTest.json", snapshot.duplicate(), 1, 2);
+        assertEquals(1, ids.length);
+        assertEquals(1, ids[0]);
+        assertEquals(null, restored.getGameStatus(2));
+        GameStatus copy = restored.getGameStatus(1);
+        assertEquals(first.getMessage(), copy.getMessage());
+        assertEquals(first.getCommandOptions(), copy.getCommandOptions());
+        assertEquals(game.getPlayerItemsCollected().get(1), restored.getPlayerItemsCollected().get(1));
+        assertEquals(game.getHistoryPage(1, 0, 10), restored.getHistoryPage(1, 0, 10));
+        assertEquals(3, restored.getGameVersion(1));
+        assertEquals(2, new GameEngine().restoreSessions("smallTest.json", snapshot.duplicate(), 0, 1).length);
+    }
+
+    // Test if a game moved off the heap comes back as it was on its next command
+    @Test
+    public void testDemoteAndFaultIn() throws Exception {
+        ColdSessionStore coldStore = new ColdSessionStore(folder.getRoot().toPath(), 1024, 64 << 10);
+        game.setColdStore(coldStore);
+        GameStatus first = game.startGame("smallTest.json", 1);
+        first = game.runGameServer(first, new Command("take", "Nezuko"));
+        first = game.runGameServer(first, new Command("go", "practice"));
+        List<String> history = game.getHistoryPage(1, 0, 10);
+        assertEquals(true, game.demoteSession(1));
+        assertEquals(0, game.getSessions().size());
+        assertEquals(1, game.getSessionCount());
+        assertEquals(true, game.getColdLastAccess(1) >= 0);
+        assertEquals(1, game.snapshotSessions().getInt(0));
+        GameStatus copy = game.getGameStatus(1);
+        assertEquals(first.getMessage(), copy.getMessage());
+        assertEquals(history, game.getHistoryPage(1, 0, 10));
+        assertEquals(2, game.getGameVersion(1));
+        assertEquals(0, coldStore.size());
+        assertEquals(1, coldStore.getPromotions());
+        assertEquals(-1, game.getColdLastAccess(1));
+        assertEquals(true, game.demoteSession(1));
+        assertEquals(true, game.endGame(1));
+        assertEquals(0, game.getSessionCount());
+        coldStore.close();
+    }
+
+    // A game larger than a slot stays on the heap
+    @Test
+    public void testDemoteTooLarge() throws Exception {
+        ColdSessionStore coldStore = new ColdSessionStore(folder.getRoot().toPath(), 16, 1024);
+        game.setColdStore(coldStore);
+        game.startGame("smallTest.json", 1);
+        assertEquals(false, game.demoteSession(1));
+        assertEquals(1, coldStore.getRejected());
+        assertEquals(1, game.getSessions().size());
+        coldStore.close();
+    }
+
+    // Taking an item that is not in the room should not give it to the player
+    @Test
+    public void testRunGameServerTakeMissing() throws Exception {
+        GameStatus status = game.startGame("smallTest.json", 1);
+        game.runGameServer(status, new Command("take", "sword"));
+        assertEquals(null, game.getPlayerItemsCollected().get(1));
+    }
+
+    // A batch should end in the same state as the commands sent one by one
+    @Test
+    public void testRunGameServerBatch() throws Exception {
+        GameStatus single = game.startGame("game.json", 1);
+        game.startGame("game.json", 2);
+        List<Command> commands = Arrays.asList(new Command("go", "practice"), new Command("take", "suite"),
+                new Command("go", "out"), new Command("examine", ""));
+        for (Command command : commands) {
+            single = game.runGameServer(single, command);
+        }
+        List<String> steps = new ArrayList<>();
+        GameStatus batch = game.runGameServer(2, commands, steps);
+        assertEquals(single.getMessage(), batch.getMessage());
+        assertEquals(single.getCommandOptions(), batch.getCommandOptions());
+        assertEquals(Arrays.asList("Practice", "Practice", "Preparation", "Preparation"), steps);
+        assertEquals(batch, game.getGameStatus(2));
+    }
+
+    // A batch for a game that does not exist, or an empty batch, changes nothing
+    @Test
+    public void testRunGameServerBatchEmpty() throws Exception {
+        GameStatus status = game.startGame("game.json", 1);
+        assertEquals(null, game.runGameServer(3, Arrays.asList(new Command("go", "practice")), null));
+        assertEquals(status, game.runGameServer(1, new ArrayList<>(), null));
+    }
+
+    // Games started in bulk should look like games started one by one
+    @Test
+    public void testStartGames() throws Exception {
+        GameStatus single = game.startGame("game.json", 1);
+        game.startGames("game.json", 10, 5, 3);
+        assertEquals(6, game.getSessions().size());
+        GameStatus bulk = game.getGameStatus(22);
+        assertEquals(single.getMessage(), bulk.getMessage());
+        assertEquals(single.getCommandOptions(), bulk.getCommandOptions());
+        assertEquals(null, game.getGameStatus(11));
+        assertEquals(bulk, game.runGameServer(22, new ArrayList<>(), null));
+    }
+
+    // Ending a range ends only the games in it, whether the range is small or larger than the table
+    @Test
+    public void testEndGames() throws Exception {
+        game.startGames("game.json", 1, 10, 1);
+        assertEquals(3, game.endGames(3, 5));
+        assertEquals(0, game.endGames(5, 4));
+        assertEquals(6, game.endGames(2, Integer.MAX_VALUE));
+        assertEquals(1, game.getSessions().size());
+        assertEquals(1, game.getGameStatus(1).getId());
+    }
+
+    // Only the ids with the residue are ended, through the range and through the table
+    @Test
+    public void testEndGamesWithResidue() throws Exception {
+        game.startGames("game.json", 1, 10, 1);
+        assertEquals(2, game.endGames(2, 7, 1, 3));
+        assertEquals(null, game.getGameStatus(4));
+        assertEquals(3, game.endGames(1, Integer.MAX_VALUE, 0, 3));
+        assertEquals(5, game.getSessions().size());
+        assertEquals(1, game.getGameStatus(1).getId());
+    }
+
+    // The version goes up with each command or batch and is reset for a new game
+    @Test
+    public void testGameVersion() throws Exception {
+        GameStatus status = game.startGame("game.json", 1);
+        assertEquals(0, game.getGameVersion(1));
+        status = game.runGameServer(status, new Command("go", "practice"));
+        game.runGameServer(status, new Command("examine", ""));
+        assertEquals(2, game.getGameVersion(1));
+        game.runGameServer(1, Arrays.asList(new Command("go", "out"), new Command("go", "practice")), null);
+        assertEquals(3, game.getGameVersion(1));
+        game.runGameServer(1, new ArrayList<>(), null);
+        assertEquals(3, game.getGameVersion(1));
+        assertEquals(-1, game.getGameVersion(2));
+        game.startGame("game.json", 1);
+        assertEquals(0, game.getGameVersion(1));
+    }
+
+    // Reaching the ending room scores the game once, with its moves and held items
+    @Test
+    public void testCompletion() throws Exception {
+        List<long[]> completed = new ArrayList<>();
+        game.setCompletionListener((id, moves, items, elapsed) -> completed.add(new long[] {id, moves, items}));
+        game.startGame("game.json", 5);
+        List<Command> commands = Arrays.asList(new Command("take", "dog"), new Command("go", "practice"),
+                new Command("go", "out"), new Command("go", "fight"), new Command("go", "Continue"));
+        game.runGameServer(5, commands, null);
+        assertEquals(1, completed.size());
+        assertEquals(Arrays.asList(5L, 4L, 1L), Arrays.asList(completed.get(0)[0], completed.get(0)[1],
+                completed.get(0)[2]));
+        game.runGameServer(5, Arrays.asList(new Command("go", "Continue")), null);
+        assertEquals(1, completed.size());
+    }
+
+    // Moves dropped from the history over its limit are still counted when the game is scored
+    @Test
+    public void testCompletionPastHistoryLimit() throws Exception {
+        List<long[]> completed = new ArrayList<>();
+        game.setCompletionListener((id, moves, items, elapsed) -> completed.add(new long[] {id, moves, items}));
+        game.setHistoryLimit(3);
+        game.startGame("game.json", 1);
+        List<Command> commands = new ArrayList<>();
+        commands.add(new Command("go", "practice"));
+        // Between Practice and Preparation, far past the limit of the history
+        for (int i = 0; i < 20; i++) {
+            commands.add(new Command("go", "out"));
+            commands.add(new Command("go", "practice"));
+        }
+        commands.addAll(Arrays.asList(new Command("go", "out"), new Command("go", "fight"),
+                new Command("go", "Continue")));
+        game.runGameServer(1, commands, null);
+        assertEquals(1, completed.size());
+        assertEquals(44L, completed.get(0)[1]);
+        assertEquals(3, game.getHistorySize(1));
+    }
+
+    // A batch with a command without a name is refused before anything runs
+    @Test
+    public void testInvalidBatchChangesNothing() throws Exception {
+        game.startGame("game.json", 1);
+        List<Command> commands = Arrays.asList(new Command("go", "practice"), new Command(null, "out"));
+        assertEquals(1, GameEngine.findInvalidCommand(commands));
+        assertEquals(-1, GameEngine.findInvalidCommand(commands.subList(0, 1)));
+        try {
+            game.runGameServer(1, commands, null);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // The batch is refused as a whole
+        }
+        assertEquals(1, game.getHistorySize(1));
+        assertEquals(0, game.getGameVersion(1));
+    }
+
+    // A command failing partway keeps the commands before it, and the status and version include them
+    @Test
+    public void testBatchFailsPartway() throws Exception {
+        List<long[]> completed = new ArrayList<>();
+        game.setCompletionListener((id, moves, items, elapsed) -> completed.add(new long[] {id, moves, items}));
+        game.startGame("game.json", 1);
+        Command broken = new Command("go", "fight") {
+            @Override
+            public String getCommandValue() {
+                throw new IllegalStateException("broken command");
+            }
+        };
+        List<Command> commands = Arrays.asList(new Command("go", "practice"), new Command("go", "out"),
+                broken, new Command("go", "fight"));
+        try {
+            game.runGameServer(1, commands, null);
+            fail();
+        } catch (BatchCommandException exception) {
+            assertEquals(2, exception.getApplied());
+        }
+        assertEquals(1, game.getGameVersion(1));
+        assertEquals(3, game.getHistorySize(1));
+        GameStatus expected = new GameEngine().startGame("game.json", 2);
+        assertThat(game.getGameStatus(1).getMessage(), CoreMatchers.not(expected.getMessage()));
+        // A listener failing after the ending room is reached leaves that command applied
+        game.setCompletionListener((id, moves, items, elapsed) -> {
+            throw new IllegalStateException("listener failed");
+        });
+        try {
+            game.runGameServer(1, Arrays.asList(new Command("go", "fight"), new Command("go", "Continue"),
+                    new Command("go", "Continue")), null);
+            fail();
+        } catch (BatchCommandException exception) {
+            assertEquals(2, exception.getApplied());
+        }
+        assertEquals(2, game.getGameVersion(1));
+    }
+}
@@ -0,0 +1,77 @@
+package student.adventure;
+
+import org.junit.Before;
+import org.junit.Test;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InventoryTest {
+    RoomGraph graph;
+    Inventory inventory;
+
+    @Before
+    public void setUp() throws IOException {
+        graph = new StreamingLayoutLoader().load("game.json").getGraph();
+        inventory = new Inventory(graph.getItemCount());
+    }
+
+    @Test
+    public void testAddRemove() {
+        int sword = graph.getItemId("SWORD");
+        assertTrue(inventory.isEmpty());
+        inventory.add(sword);
+        assertEquals(1, inventory.size());
+        assertTrue(inventory.contains(sword));
+        assertFalse(inventory.contains(graph.getItemId("dog")));
+        assertTrue(inventory.remove(sword));
+        assertFalse(inventory.remove(sword));
+        assertTrue(inventory.isEmpty());
+    }
+
+    // Holding the same item twice keeps both
+    @Test
+    public void testDuplicates() {
+        int dog = graph.getItemId("dog");
+        inventory.add(dog);
+        inventory.add(dog);
+        assertEquals(2, inventory.count(dog));
+        inventory.add(graph.getItemId("sword"));
+        assertEquals(3, inventory.size());
+        inventory.remove(graph.getItemId("sword"));
+        assertEquals(Arrays.asList("dog", "dog"), inventory.toNames(graph));
+        inventory.remove(dog);
+        assertTrue(inventory.contains(dog));
+        inventory.remove(dog);
+        assertFalse(inventory.contains(dog));
+    }
+
+    // Names are listed with the spelling of the layout, in item id order
+    @Test
+    public void testToNames() {
+        inventory.add(graph.getItemId("prize"));
+        inventory.add(graph.getItemId("nezuko"));
+        assertEquals(Arrays.asList("Nezuko", "Prize"), inventory.toNames(graph));
+        assertEquals(Collections.emptyList(), new Inventory(graph.getItemCount()).toNames(graph));
+    }
+
+    // Item ids past the first word of the bitset
+    @Test
+    public void testManyItems() {
+        Inventory large = new Inventory(200);
+        large.add(0);
+        large.add(130);
+        large.add(199);
+        assertTrue(large.contains(130));
+        assertFalse(large.contains(66));
+        assertFalse(large.contains(2));
+        large.remove(0);
+        large.remove(130);
+        assertFalse(large.isEmpty());
+        large.remove(199);
+        assertTrue(large.isEmpty());
+    }
+}
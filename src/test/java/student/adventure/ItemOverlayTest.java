@@ -0,0 +1,73 @@
+package student.adventure;
+
+import org.junit.Before;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ItemOverlayTest {
+    RoomGraph graph;
+    int dog;
+    int cat;
+    int sword;
+
+    @Before
+    public void setUp() {
+        Room[] rooms = {
+                new Room("Home", "home", new ArrayList<>(Arrays.asList("dog", "Cat", "dog")), new ArrayList<>()),
+                new Room("Armory", "armory", new ArrayList<>(Arrays.asList("sword")), new ArrayList<>()),
+                new Room("Empty", "empty", null, new ArrayList<>())
+        };
+        graph = RoomGraph.compile(new Layout("Home", "Armory", rooms));
+        dog = graph.getItemId("dog");
+        cat = graph.getItemId("cat");
+        sword = graph.getItemId("sword");
+    }
+
+    // A room that was not changed should use the shared list
+    @Test
+    public void testApplyUnchanged() {
+        ItemOverlay overlay = ItemOverlay.EMPTY.withDelta(1, sword, -1);
+        assertSame(graph.getItems(0), overlay.apply(graph, 0));
+        assertNull(overlay.apply(graph, 2));
+    }
+
+    // Taking removes the first matching item like Room.takeItem
+    @Test
+    public void testApplyTake() {
+        ItemOverlay overlay = ItemOverlay.EMPTY.withDelta(0, dog, -1);
+        assertEquals(Arrays.asList("cat", "dog"), overlay.apply(graph, 0));
+        assertEquals(1, overlay.count(graph, 0, dog));
+        assertEquals(1, overlay.count(graph, 0, cat));
+    }
+
+    // Dropping adds the item at the end like Room.dropItem
+    @Test
+    public void testApplyDrop() {
+        ItemOverlay overlay = ItemOverlay.EMPTY.withDelta(0, sword, 1).withDelta(0, cat, 1);
+        assertEquals(Arrays.asList("dog", "cat", "dog", "cat", "sword"), overlay.apply(graph, 0));
+        assertEquals(Arrays.asList("sword"), overlay.withDelta(2, sword, 1).apply(graph, 2));
+    }
+
+    // A take followed by a drop of the same item leaves no delta behind
+    @Test
+    public void testDeltaCancels() {
+        ItemOverlay overlay = ItemOverlay.EMPTY.withDelta(0, dog, -1).withDelta(0, dog, 1);
+        assertSame(ItemOverlay.EMPTY, overlay);
+    }
+
+    // Older overlays are never changed by newer ones
+    @Test
+    public void testImmutable() {
+        ItemOverlay first = ItemOverlay.EMPTY.withDelta(4, cat, -1);
+        ItemOverlay second = first.withDelta(4, cat, -1).withDelta(0, dog, 2);
+        assertEquals(-1, first.getDelta(4, cat));
+        assertEquals(1, first.size());
+        assertEquals(-2, second.getDelta(4, cat));
+        assertEquals(2, second.getDelta(0, dog));
+        assertEquals(0, second.getDelta(4, dog));
+    }
+}
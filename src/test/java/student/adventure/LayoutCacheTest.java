@@ -0,0 +1,126 @@
+package student.adventure;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.File;
+import java.io.IOException;
+import student.server.Command;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LayoutCacheTest {
+    LayoutCache cache;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        cache = new LayoutCache();
+    }
+
+    // The second load of the same file should not read it again
+    @Test
+    public void testGetHit() throws IOException {
+        Layout first = cache.get("game.json");
+        Layout second = cache.get("game.json");
+        assertSame(first, second);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    // Different spellings of the same path share one entry
+    @Test
+    public void testGetCanonicalPath() throws IOException {
+        cache.get("game.json");
+        cache.get("./game.json");
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHits());
+    }
+
+    // A changed file should be loaded again
+    @Test
+    public void testGetFileChanged() throws IOException {
+        File file = folder.newFile("world.json");
+        FileUtils.copyFile(new File("smallTest.json"), file);
+        Layout first = cache.get(file.getPath());
+        FileUtils.writeStringToFile(file, FileUtils.readFileToString(new File("game.json")));
+        Layout second = cache.get(file.getPath());
+        assertNotSame(first, second);
+        assertEquals(2, cache.getMisses());
+        assertEquals(7, second.getRooms().length);
+    }
+
+    // An invalid layout should not be cached
+    @Test
+    public void testGetInvalidNotCached() throws IOException {
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get(Fixtures.path("gameInvalidEnding.json"));
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.size());
+    }
+
+    // Starting many games should only read the file once
+    @Test
+    public void testStartGameUsesCache() throws Exception {
+        GameEngine game = new GameEngine(cache);
+        for (int i = 0; i < 10; i++) {
+            game.startGame("game.json", i);
+        }
+        assertEquals(1, cache.getMisses());
+        assertEquals(9, cache.getHits());
+    }
+
+    // Taking an item in one engine should not change the cached layout seen by a new engine
+    @Test
+    public void testCachedLayoutNotChanged() throws Exception {
+        GameEngine game = new GameEngine(cache);
+        Layout layout = game.loadJson("smallTest.json");
+        game.checkOperateItem(game.setMapLayout(layout).get("Home"), "take Nezuko");
+        Layout otherLayout = new GameEngine(cache).loadJson("smallTest.json");
+        assertSame(layout, otherLayout);
+        assertEquals(2, otherLayout.getRooms()[0].getItems().size());
+    }
+
+    // A layout changed on disk under live games is only used once they are all gone
+    @Test
+    public void testReloadUnderLiveGame() throws Exception {
+        File file = folder.newFile("world.json");
+        FileUtils.copyFile(new File("smallTest.json"), file);
+        GameEngine game = new GameEngine(cache);
+        GameEngine reference = new GameEngine(cache);
+        game.startGame(file.getPath(), 1);
+        reference.startGame("smallTest.json", 1);
+        FileUtils.writeStringToFile(file, FileUtils.readFileToString(new File("game.json")));
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+        game.startGame(file.getPath(), 2);
+        reference.startGame("smallTest.json", 2);
+        for (int id = 1; id <= 2; id++) {
+            Command command = new Command("go", "practice");
+            assertEquals(reference.runGameServer(reference.getGameStatus(id), command).getMessage(),
+                    game.runGameServer(game.getGameStatus(id), command).getMessage());
+            assertEquals(reference.getHistoryPage(id, 0, 10), game.getHistoryPage(id, 0, 10));
+        }
+        try {
+            game.startGame("game.json", 3);
+            fail();
+        } catch (IllegalStateException expected) {
+            // Another layout cannot be used while the games of this one are live
+        }
+        game.endGame(1);
+        game.endGame(2);
+        assertEquals(new GameEngine(cache).startGame("game.json", 3).getMessage(),
+                game.startGame(file.getPath(), 3).getMessage());
+    }
+}
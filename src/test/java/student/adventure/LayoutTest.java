@@ -3,6 +3,7 @@ package student.adventure;
 import org.junit.Before;
 import org.junit.Test;
 import org.hamcrest.CoreMatchers;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import java.io.IOException;
 
@@ -29,4 +30,23 @@ public class LayoutTest {
     public void testGetRoomsName(){
         assertThat(layout.getRoomsName()[1],CoreMatchers.is("Practice"));
     }
-}
\ No newline at end of file
+
+    // Changing the rooms returned should never change the layout, it may be shared by many engines
+    @Test
+    public void testGetRoomsCopiesRooms() {
+        Room[] rooms = layout.getRooms();
+        int withItems = 0;
+        while (rooms[withItems].getItems() == null || rooms[withItems].getItems().isEmpty()) {
+            withItems++;
+        }
+        int itemCount = rooms[withItems].getItems().size();
+        int directionCount = rooms[withItems].getDirections().size();
+        rooms[withItems].takeItem(rooms[withItems].getItems().get(0));
+        rooms[withItems].getRawDirections().clear();
+        rooms[0] = null;
+        Room[] again = layout.getRooms();
+        assertEquals(itemCount, again[withItems].getItems().size());
+        assertEquals(directionCount, again[withItems].getDirections().size());
+        assertThat(again[0].getName(), CoreMatchers.is(layout.getRoomsName()[0]));
+    }
+}
@@ -32,13 +32,13 @@ public class LoadJsonTest {
     // Starting room is null
     @Test(expected = IllegalArgumentException.class)
     public void loadJsonInvalidStart() throws IOException {
-        layout = game.loadJson("gameInvalidStarting.json");
+        layout = game.loadJson(Fixtures.path("gameInvalidStarting.json"));
     }
 
     // Ending room do not exist in the room list
     @Test(expected = IllegalArgumentException.class)
     public void loadJsonInvalidEnd() throws IOException {
-        layout = game.loadJson("gameInvalidEnding.json");
+        layout = game.loadJson(Fixtures.path("gameInvalidEnding.json"));
     }
 
     // Normal Import
@@ -0,0 +1,97 @@
+package student.adventure;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MappedWorldTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private String compile(String jsonName) throws IOException {
+        String worldName = new File(folder.getRoot(), new File(jsonName).getName() + ".world").getPath();
+        WorldCompiler.compile(jsonName, worldName);
+        return worldName;
+    }
+
+    // The compiled world should hold exactly the same layout as the json
+    @Test
+    public void testRoundTrip() throws IOException {
+        String[] files = {"game.json", "smallTest.json", "src/main/resources/siebel.json"};
+        for (String jsonName : files) {
+            Layout expected = new StreamingLayoutLoader().load(jsonName);
+            Layout actual = MappedWorld.open(compile(jsonName)).toLayout();
+            assertEquals(expected.getStartingRoom(), actual.getStartingRoom());
+            assertEquals(expected.getEndingRoom(), actual.getEndingRoom());
+            assertEquals(expected.getRooms().length, actual.getRooms().length);
+            for (int i = 0; i < expected.getRooms().length; i++) {
+                Room expectedRoom = expected.getRooms()[i];
+                Room actualRoom = actual.getRooms()[i];
+                assertEquals(expectedRoom.getName(), actualRoom.getName());
+                assertEquals(expectedRoom.getDescription(), actualRoom.getDescription());
+                assertEquals(expectedRoom.getItems(), actualRoom.getItems());
+                assertEquals(expectedRoom.getDirections(), actualRoom.getDirections());
+                assertEquals(expectedRoom.constructDirectionMap(), actualRoom.constructDirectionMap());
+            }
+        }
+    }
+
+    @Test
+    public void testFindRoom() throws IOException {
+        MappedWorld world = MappedWorld.open(compile("game.json"));
+        assertEquals(1, world.findRoom("Practice"));
+        assertEquals(world.getStartingRoom(), world.findRoom("Home"));
+        assertEquals(-1, world.findRoom("Nowhere"));
+        assertEquals(-1, world.findRoom(""));
+    }
+
+    // A direction to a room that does not exist keeps its name but has no target
+    @Test
+    public void testDirectionTargetMissing() throws IOException {
+        MappedWorld world = MappedWorld.open(compile("smallTest.json"));
+        assertEquals("win", world.getDirectionRoomName(0, 0));
+        assertEquals(-1, world.getDirectionTarget(0, 0));
+        assertEquals(1, world.getDirectionTarget(0, 1));
+    }
+
+    // Rooms without an item list keep it null
+    @Test
+    public void testNullItems() throws IOException {
+        Room room = new Room("A", null, null, Collections.singletonList(new Direction("stay", "A")));
+        String worldName = folder.newFile("null.world").getPath();
+        new WorldCompiler().write(new Layout("A", "A", new Room[] {room}), worldName);
+        MappedWorld world = MappedWorld.open(worldName);
+        assertEquals(-1, world.getItemCount(0));
+        assertNull(world.getDescription(0));
+        assertNull(world.toLayout().getRooms()[0].getItems());
+    }
+
+    // The engine can start a game from a compiled world through loadJson
+    @Test
+    public void testLoadJsonCompiledWorld() throws Exception {
+        String worldName = compile("game.json");
+        assertTrue(MappedWorld.isWorldFile(worldName));
+        assertFalse(MappedWorld.isWorldFile("game.json"));
+        GameEngine game = new GameEngine(new LayoutCache());
+        assertEquals("Home", game.loadJson(worldName).getStartingRoom());
+        assertEquals(Arrays.asList("vacation", "practice"),
+                game.startGame(worldName, 1).getCommandOptions().get("go"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOpenNotWorld() throws IOException {
+        File file = folder.newFile("bad.world");
+        FileUtils.writeStringToFile(file, "this is not a compiled world file at all, really");
+        MappedWorld.open(file.getPath());
+    }
+}
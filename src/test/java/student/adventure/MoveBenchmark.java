@@ -0,0 +1,71 @@
+package student.adventure;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares moves per second of the name based move path (room map lookups and a direction map built
+ * on every move) with the compiled room graph. Run it with: MoveBenchmark [layout.json] [moves]
+ */
+public class MoveBenchmark {
+    // The walk repeated by both paths
+    private static final String[] DIRECTIONS = {"practice", "out", "practice", "Practice", "out", "fight", "Continue"};
+    // Keeps the result alive so the loops are not optimized away
+    private static volatile int sink;
+
+    public static void main(String[] args) throws IOException {
+        String jsonName = args.length > 0 ? args[0] : "game.json";
+        int moves = args.length > 1 ? Integer.parseInt(args[1]) : 20_000_000;
+        Layout layout = new StreamingLayoutLoader().load(jsonName);
+        for (int round = 0; round < 3; round++) {
+            report("name lookup", moves, runNameLookup(layout, moves));
+            report("room graph ", moves, runRoomGraph(layout.getGraph(), moves));
+        }
+    }
+
+    private static long runNameLookup(Layout layout, int moves) {
+        Map<String, Room> roomsMap = new HashMap<>();
+        for (Room room : layout.getRooms()) {
+            roomsMap.put(room.getName(), room);
+        }
+        long start = System.nanoTime();
+        String position = layout.getStartingRoom();
+        for (int i = 0; i < moves; i++) {
+            Room room = roomsMap.get(position);
+            String target = room.constructDirectionMap().get(DIRECTIONS[i % DIRECTIONS.length].toLowerCase());
+            if (target != null) {
+                position = roomsMap.get(target).getName();
+            } else {
+                position = layout.getStartingRoom();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        consume(position.length());
+        return elapsed;
+    }
+
+    private static long runRoomGraph(RoomGraph graph, int moves) {
+        long start = System.nanoTime();
+        int position = graph.getStartingRoom();
+        for (int i = 0; i < moves; i++) {
+            int target = graph.move(position, DIRECTIONS[i % DIRECTIONS.length]);
+            if (target != RoomGraph.NO_ROOM) {
+                position = target;
+            } else {
+                position = graph.getStartingRoom();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        consume(position);
+        return elapsed;
+    }
+
+    private static void report(String name, int moves, long nanos) {
+        System.out.printf("%s: %,.0f moves/s%n", name, moves * 1e9 / nanos);
+    }
+
+    private static void consume(int value) {
+        sink = value;
+    }
+}
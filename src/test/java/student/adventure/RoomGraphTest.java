@@ -0,0 +1,82 @@
+package student.adventure;
+
+import org.junit.Before;
+import org.junit.Test;
+import java.io.IOException;
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class RoomGraphTest {
+    Layout layout;
+    RoomGraph graph;
+
+    @Before
+    public void setUp() throws IOException {
+        layout = new StreamingLayoutLoader().load("game.json");
+        graph = RoomGraph.compile(layout);
+    }
+
+    @Test
+    public void testRoomIds() {
+        assertEquals(0, graph.getStartingRoom());
+        assertEquals("Home", graph.getName(graph.getStartingRoom()));
+        assertEquals("Win", graph.getName(graph.getEndingRoom()));
+        assertEquals(1, graph.getRoomId("Practice"));
+        assertEquals(RoomGraph.NO_ROOM, graph.getRoomId("Nowhere"));
+    }
+
+    // Moves ignore case and surrounding spaces like Room.constructDirectionMap did
+    @Test
+    public void testMove() {
+        int home = graph.getRoomId("Home");
+        assertEquals(graph.getRoomId("Practice"), graph.move(home, "PRACtice"));
+        assertEquals(graph.getRoomId("Vacation"), graph.move(home, "  vacation "));
+        assertEquals(graph.getRoomId("Vacation"), graph.move(home, "go vacation", 3, 11));
+        assertEquals(RoomGraph.NO_ROOM, graph.move(home, "practice more"));
+        assertEquals(RoomGraph.NO_ROOM, graph.move(home, ""));
+    }
+
+    // Every room should resolve every direction to the same room as the name lookup does
+    @Test
+    public void testMoveSameAsDirectionMap() {
+        for (Room room : layout.getRooms()) {
+            int id = graph.getRoomId(room.getName());
+            for (Direction direction : room.getRawDirections()) {
+                String expected = room.constructDirectionMap().get(direction.getDirectionName().toLowerCase());
+                assertEquals(graph.getRoomId(expected), graph.move(id, direction.getDirectionName()));
+            }
+            assertEquals(room.getDirections(), graph.getDirectionNames(id));
+        }
+    }
+
+    // With two directions of the same name the last one wins, like the direction map
+    @Test
+    public void testMoveDuplicateDirection() {
+        Room a = new Room("A", "a", null, Arrays.asList(new Direction("Door", "A"), new Direction("door", "B")));
+        Room b = new Room("B", "b", null, Arrays.asList(new Direction("back", "Missing")));
+        RoomGraph small = RoomGraph.compile(new Layout("A", "B", new Room[] {a, b}));
+        assertEquals(1, small.move(0, "DOOR"));
+        assertEquals(RoomGraph.NO_ROOM, small.move(1, "back"));
+    }
+
+    // The compiled graph is shared through the layout
+    @Test
+    public void testLayoutGraphShared() {
+        assertSame(layout.getGraph(), layout.getGraph());
+    }
+
+    // Items are interned ignoring case, in the order they first appear in the layout
+    @Test
+    public void testItemDictionary() {
+        assertEquals(5, graph.getItemCount());
+        assertEquals(0, graph.getItemId(" NEZUKO "));
+        assertEquals("nezuko", graph.getItemKey(0));
+        assertEquals("Nezuko", graph.getItemName(0));
+        assertEquals(-1, graph.getItemId("katana"));
+        int home = graph.getRoomId("Home");
+        assertEquals(1, graph.countItem(home, graph.getItemId("dog")));
+        assertEquals(0, graph.countItem(home, graph.getItemId("sword")));
+        assertEquals(2, graph.getRoomItemCount(home));
+    }
+}
@@ -0,0 +1,94 @@
+package student.adventure;
+
+import org.junit.Before;
+import org.junit.Test;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SessionTableTest {
+    SessionTable sessions;
+
+    @Before
+    public void setUp() {
+        sessions = new SessionTable();
+    }
+
+    @Test
+    public void testInsertFind() {
+        int slot = sessions.insert(0);
+        sessions.setPosition(slot, 3);
+        assertEquals(slot, sessions.find(0));
+        assertEquals(slot, sessions.insert(0));
+        assertEquals(3, sessions.getPosition(sessions.find(0)));
+        assertSame(ItemOverlay.EMPTY, sessions.getRoomItems(slot));
+        assertEquals(-1, sessions.find(1));
+        assertEquals(1, sessions.size());
+    }
+
+    // Removing should release the columns of the instance
+    @Test
+    public void testRemove() {
+        int slot = sessions.insert(7);
+        sessions.setHistory(slot, new TraversalHistory(0, false));
+        assertTrue(sessions.remove(7));
+        assertFalse(sessions.remove(7));
+        assertEquals(-1, sessions.find(7));
+        assertNull(sessions.getHistory(slot));
+        assertEquals(0, sessions.size());
+    }
+
+    // Random inserts and removes should agree with a HashMap, across resizes and backward shifts
+    @Test
+    public void testRandomAgainstHashMap() {
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(126);
+        for (int i = 0; i < 200000; i++) {
+            int id = random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(id) != null, sessions.remove(id));
+            } else {
+                sessions.setPosition(sessions.insert(id), i);
+                expected.put(id, i);
+            }
+        }
+        assertEquals(expected.size(), sessions.size());
+        for (int id = 0; id < 5000; id++) {
+            int slot = sessions.find(id);
+            if (expected.containsKey(id)) {
+                assertEquals((int) expected.get(id), sessions.getPosition(slot));
+            } else {
+                assertEquals(-1, slot);
+            }
+        }
+    }
+
+    // The table itself should cost a few dozen bytes per instance
+    @Test
+    public void testFootprint() {
+        for (int id = 1; id <= 100000; id++) {
+            sessions.insert(id);
+        }
+        assertTrue(sessions.getBytesPerSession() < 112);
+        assertEquals(sessions.getCapacity() * 41L, sessions.getFootprintBytes());
+    }
+
+    // Growing ahead of time should leave room for every instance without growing again
+    @Test
+    public void testEnsureCapacity() {
+        sessions.insert(7);
+        sessions.ensureCapacity(1000);
+        int capacity = sessions.getCapacity();
+        assertEquals(2048, capacity);
+        for (int id = 1; id <= 1000; id++) {
+            sessions.insert(id);
+        }
+        assertEquals(capacity, sessions.getCapacity());
+        assertEquals(7, sessions.getId(sessions.find(7)));
+    }
+}
@@ -0,0 +1,109 @@
+package student.adventure;
+
+import com.google.gson.Gson;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingLayoutLoaderTest {
+    StreamingLayoutLoader loader;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        loader = new StreamingLayoutLoader();
+    }
+
+    private static InputStream json(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertSameLayout(Layout expected, Layout actual) {
+        assertEquals(expected.getStartingRoom(), actual.getStartingRoom());
+        assertEquals(expected.getEndingRoom(), actual.getEndingRoom());
+        assertEquals(expected.getRooms().length, actual.getRooms().length);
+        for (int i = 0; i < expected.getRooms().length; i++) {
+            Room expectedRoom = expected.getRooms()[i];
+            Room actualRoom = actual.getRooms()[i];
+            assertEquals(expectedRoom.getName(), actualRoom.getName());
+            assertEquals(expectedRoom.getDescription(), actualRoom.getDescription());
+            assertEquals(expectedRoom.getItems(), actualRoom.getItems());
+            assertEquals(expectedRoom.getDirections(), actualRoom.getDirections());
+            assertEquals(expectedRoom.constructDirectionMap(), actualRoom.constructDirectionMap());
+        }
+    }
+
+    // The streaming loader should read the same layout as Gson does
+    @Test
+    public void testLoadSameAsGson() throws IOException {
+        String[] files = {"game.json", "smallTest.json", "src/main/resources/siebel.json"};
+        for (String jsonName : files) {
+            Layout expected = new Gson().fromJson(FileUtils.readFileToString(new File(jsonName)), Layout.class);
+            assertSameLayout(expected, new StreamingLayoutLoader().load(jsonName));
+        }
+    }
+
+    // The starting room may come after the rooms
+    @Test
+    public void testLoadStartingRoomLast() throws IOException {
+        Layout layout = loader.load(json("{\"rooms\": [{\"name\": \"A\", \"directions\": []}],"
+                + " \"endingRoom\": \"A\", \"startingRoom\": \"A\"}"));
+        assertEquals("A", layout.getStartingRoom());
+        assertEquals(1, loader.getRoomCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLoadInvalidStart() throws IOException {
+        loader.load(Fixtures.path("gameInvalidStarting.json"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLoadInvalidEnd() throws IOException {
+        loader.load(Fixtures.path("gameInvalidEnding.json"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLoadNoRooms() throws IOException {
+        loader.load(json("{\"startingRoom\": \"A\", \"endingRoom\": \"A\", \"rooms\": []}"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLoadEmpty() throws IOException {
+        loader.load(json(""));
+    }
+
+    // A generated world should load with statistics of the load
+    @Test
+    public void testLoadLargeWorld() throws IOException {
+        int roomCount = 20000;
+        File file = folder.newFile("large.json");
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            writer.print("{\"startingRoom\": \"Room0\", \"endingRoom\": \"Room" + (roomCount - 1) + "\", \"rooms\": [");
+            for (int i = 0; i < roomCount; i++) {
+                if (i > 0) {
+                    writer.print(",");
+                }
+                writer.print("{\"name\": \"Room" + i + "\", \"description\": \"Room number " + i + "\","
+                        + " \"items\": [\"sword\"], \"directions\": [{\"directionName\": \"next\","
+                        + " \"room\": \"Room" + ((i + 1) % roomCount) + "\"}]}");
+            }
+            writer.print("]}");
+        }
+        Layout layout = loader.load(file.getPath());
+        assertEquals(roomCount, layout.getRooms().length);
+        assertEquals(file.length(), loader.getBytesRead());
+        assertTrue(loader.getThroughputBytesPerSecond() > 0);
+    }
+}
@@ -0,0 +1,81 @@
+package student.adventure;
+
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+
+public class TraversalHistoryTest {
+
+    private static List<Integer> rooms(TraversalHistory history) {
+        List<Integer> rooms = new ArrayList<>();
+        history.forEach(rooms::add);
+        return rooms;
+    }
+
+    @Test
+    public void testAddUnbounded() {
+        TraversalHistory history = new TraversalHistory(0, false);
+        for (int i = 0; i < 100; i++) {
+            history.add(i % 3);
+        }
+        assertEquals(100, history.size());
+        assertEquals(100, history.getEntryCount());
+        assertEquals(Arrays.asList(0, 1, 2, 0), rooms(history).subList(0, 4));
+    }
+
+    // Self loops like practice -> Practice share one entry but still show every visit
+    @Test
+    public void testRunLength() {
+        TraversalHistory history = new TraversalHistory(0, true);
+        history.add(0);
+        history.add(1);
+        history.add(1);
+        history.add(1);
+        history.add(0);
+        assertEquals(3, history.getEntryCount());
+        assertEquals(5, history.size());
+        assertEquals(Arrays.asList(0, 1, 1, 1, 0), rooms(history));
+    }
+
+    // With a limit the oldest entries are dropped like a ring buffer
+    @Test
+    public void testLimitDropsOldest() {
+        TraversalHistory history = new TraversalHistory(3, false);
+        for (int i = 0; i < 10; i++) {
+            history.add(i);
+        }
+        assertEquals(Arrays.asList(7, 8, 9), rooms(history));
+        assertEquals(7, history.getDroppedVisits());
+        assertEquals(3, history.size());
+    }
+
+    // Dropping a run entry drops all of its visits
+    @Test
+    public void testLimitWithRunLength() {
+        TraversalHistory history = new TraversalHistory(2, true);
+        history.add(5);
+        history.add(5);
+        history.add(6);
+        history.add(7);
+        assertEquals(Arrays.asList(6, 7), rooms(history));
+        assertEquals(2, history.getDroppedVisits());
+    }
+
+    // Pages cut through runs at the right place
+    @Test
+    public void testPage() {
+        TraversalHistory history = new TraversalHistory(0, true);
+        int[] visits = {0, 1, 1, 1, 2, 2, 3};
+        for (int room : visits) {
+            history.add(room);
+        }
+        List<Integer> page = new ArrayList<>();
+        history.forEach(2, 3, page::add);
+        assertEquals(Arrays.asList(1, 1, 2), page);
+        page.clear();
+        history.forEach(6, 10, page::add);
+        assertEquals(Arrays.asList(3), page);
+    }
+}
@@ -0,0 +1,49 @@
+package student.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import static org.junit.Assert.assertEquals;
+
+public class AdventureResourceTest {
+    AdventureResource resource;
+
+    @Before
+    public void setUp() {
+        resource = new AdventureResource();
+    }
+
+    // Test if a bulk delete without both ids or with a bad range is refused
+    @Test
+    public void testDestroyBulkRange() {
+        assertEquals(400, resource.destroyBulk(null, 5).getStatus());
+        assertEquals(400, resource.destroyBulk(1, null).getStatus());
+        assertEquals(400, resource.destroyBulk(5, 4).getStatus());
+        assertEquals(400, resource.destroyBulk(0, 4).getStatus());
+        assertEquals(400, resource.destroyBulk(1, Integer.MAX_VALUE).getStatus());
+        assertEquals(200, resource.destroyBulk(1, 4).getStatus());
+    }
+
+    // Test if a huge limit returns the rest of the history and a negative offset or limit is refused
+    @Test
+    public void testHistoryPage() throws Exception {
+        int id = AdventureResource.getService().newGame();
+        assertEquals(400, resource.getHistory(id, -1, 10).getStatus());
+        assertEquals(400, resource.getHistory(id, 0, -1).getStatus());
+        JsonNode page = readPage(resource.getHistory(id, 0, Long.MAX_VALUE));
+        assertEquals(1, page.get("total").asInt());
+        assertEquals(1, page.get("rooms").size());
+        assertEquals(0, readPage(resource.getHistory(id, Long.MAX_VALUE, Long.MAX_VALUE)).get("rooms").size());
+    }
+
+    private static JsonNode readPage(Response response) throws Exception {
+        assertEquals(200, response.getStatus());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(out);
+        return new ObjectMapper().readTree(out.toByteArray());
+    }
+}
@@ -0,0 +1,149 @@
+package student.server;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares commands per second of the REST command endpoint with the binary protocol, both on loopback
+ * and backed by the same service. Binary clients keep a window of pipelined commands in flight.
+ * Run it with: BinaryProtocolBenchmark [clients] [commandsPerClient] [pipelineDepth]
+ */
+public class BinaryProtocolBenchmark {
+    private static final URI BASE_URI = URI.create("http://localhost:8089/adventure/v1/");
+    private static final int BINARY_PORT = 8090;
+    private static final String[] DIRECTIONS = {"practice", "out"};
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int commands = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        HttpServer server = GrizzlyHttpServerFactory.createHttpServer(BASE_URI,
+                new ResourceConfig(AdventureResource.class, GameStatusWriter.class));
+        BinaryProtocolServer binaryServer = AdventureServer.createBinaryServer(BINARY_PORT);
+        binaryServer.start();
+        try {
+            for (int round = 0; round < 3; round++) {
+                report("rest           ", clients * commands, run(clients, () -> restClient(commands)));
+                report("binary         ", clients * commands, run(clients, () -> binaryClient(commands, 1)));
+                report("binary pipeline", clients * commands, run(clients, () -> binaryClient(commands, depth)));
+            }
+        } finally {
+            binaryServer.stop();
+            server.shutdownNow();
+        }
+    }
+
+    private static long run(int clients, Callable<Integer> client) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        try {
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                tasks.add(client);
+            }
+            long start = System.nanoTime();
+            for (Future<Integer> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+            return System.nanoTime() - start;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static int restClient(int commands) throws IOException {
+        int id = Integer.parseInt(request("POST", "create", null).replaceAll(".*\"id\":(\\d+).*", "$1"));
+        for (int i = 0; i < commands; i++) {
+            String body = "{\"commandName\":\"go\",\"commandValue\":\"" + DIRECTIONS[i % 2] + "\"}";
+            request("POST", "instance/" + id + "/command", body);
+        }
+        return id;
+    }
+
+    private static int binaryClient(int commands, int depth) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress("localhost", BINARY_PORT));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out.writeInt(1);
+            out.writeByte(BinaryProtocolServer.OP_CREATE);
+            out.flush();
+            String created = new String(receive(in), StandardCharsets.UTF_8);
+            int id = Integer.parseInt(created.replaceAll("(?s).*?\"id\":(\\d+).*", "$1"));
+            int sent = 0;
+            int received = 0;
+            while (received < commands) {
+                while (sent < commands && sent - received < depth) {
+                    byte[] value = DIRECTIONS[sent % 2].getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(1 + 4 + 2 + 2 + 2 + value.length);
+                    out.writeByte(BinaryProtocolServer.OP_COMMAND);
+                    out.writeInt(id);
+                    out.writeShort(2);
+                    out.writeBytes("go");
+                    out.writeShort(value.length);
+                    out.write(value);
+                    sent++;
+                }
+                out.flush();
+                receive(in);
+                received++;
+            }
+            return id;
+        }
+    }
+
+    private static byte[] receive(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        byte status = in.readByte();
+        byte[] body = new byte[length - 1];
+        in.readFully(body);
+        if (status != BinaryProtocolServer.STATUS_OK) {
+            throw new IOException(new String(body, StandardCharsets.UTF_8));
+        }
+        return body;
+    }
+
+    private static String request(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(BASE_URI.toString() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        StringBuilder response = new StringBuilder();
+        try (InputStream input = connection.getInputStream()) {
+            byte[] buffer = new byte[4096];
+            for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+                response.append(new String(buffer, 0, read, StandardCharsets.UTF_8));
+            }
+        }
+        return response.toString();
+    }
+
+    private static void report(String name, int commands, long nanos) {
+        System.out.printf("%s: %,.0f commands/s%n", name, commands * 1e9 / nanos);
+    }
+}
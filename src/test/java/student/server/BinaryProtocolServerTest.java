@@ -0,0 +1,154 @@
+package student.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryProtocolServerTest {
+    MyAdventureService service;
+    BinaryProtocolServer server;
+    Socket socket;
+    DataOutputStream out;
+    DataInputStream in;
+
+    @Before
+    public void setUp() throws IOException {
+        service = new MyAdventureService();
+        server = new BinaryProtocolServer(service, new InetSocketAddress("localhost", 0));
+        server.start();
+        socket = new Socket("localhost", server.getPort());
+        out = new DataOutputStream(socket.getOutputStream());
+        in = new DataInputStream(socket.getInputStream());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        socket.close();
+        server.stop();
+        service.shutdown();
+    }
+
+    private void sendCreate() throws IOException {
+        out.writeInt(1);
+        out.writeByte(BinaryProtocolServer.OP_CREATE);
+    }
+
+    private void sendGet(int id) throws IOException {
+        out.writeInt(5);
+        out.writeByte(BinaryProtocolServer.OP_GET);
+        out.writeInt(id);
+    }
+
+    private void sendCommand(int id, String name, String value) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(1 + 4 + 2 + nameBytes.length + 2 + valueBytes.length);
+        out.writeByte(BinaryProtocolServer.OP_COMMAND);
+        out.writeInt(id);
+        out.writeShort(nameBytes.length);
+        out.write(nameBytes);
+        out.writeShort(valueBytes.length);
+        out.write(valueBytes);
+    }
+
+    // Reads a response, the status byte then the text
+    private String receive(int expectedStatus) throws IOException {
+        int length = in.readInt();
+        assertEquals(expectedStatus, in.readByte());
+        byte[] body = new byte[length - 1];
+        in.readFully(body);
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    // Test if create, command and get answer with the state as JSON
+    @Test
+    public void testCreateCommandGet() throws Exception {
+        sendCreate();
+        out.flush();
+        assertTrue(receive(BinaryProtocolServer.STATUS_OK).startsWith("{\"error\":false,\"id\":1,"));
+        sendCommand(1, "go", "practice");
+        out.flush();
+        assertTrue(receive(BinaryProtocolServer.STATUS_OK).contains("practicing center"));
+        sendGet(1);
+        out.flush();
+        assertTrue(receive(BinaryProtocolServer.STATUS_OK).contains("practicing center"));
+    }
+
+    // Test if pipelined requests are answered in order
+    @Test
+    public void testPipelined() throws Exception {
+        sendCreate();
+        for (int i = 0; i < 100; i++) {
+            sendCommand(1, "go", i % 2 == 0 ? "practice" : "out");
+        }
+        sendGet(1);
+        out.flush();
+        receive(BinaryProtocolServer.STATUS_OK);
+        for (int i = 0; i < 100; i++) {
+            String status = receive(BinaryProtocolServer.STATUS_OK);
+            assertEquals(i % 2 == 0, status.contains("practicing center"));
+        }
+        receive(BinaryProtocolServer.STATUS_OK);
+        assertEquals(102, server.getRequestCount());
+        assertEquals(100, service.getGameVersion(1));
+    }
+
+    // Test if an unknown game and a bad request are answered with errors, keeping the connection
+    @Test
+    public void testErrors() throws Exception {
+        sendGet(42);
+        out.writeInt(1);
+        out.writeByte(9);
+        out.writeInt(2);
+        out.writeByte(BinaryProtocolServer.OP_GET);
+        out.writeByte(0);
+        sendCreate();
+        out.flush();
+        receive(BinaryProtocolServer.STATUS_NOT_FOUND);
+        assertEquals("Unknown opcode 9.", receive(BinaryProtocolServer.STATUS_BAD_REQUEST));
+        assertEquals("Request too short.", receive(BinaryProtocolServer.STATUS_BAD_REQUEST));
+        receive(BinaryProtocolServer.STATUS_OK);
+    }
+
+    // Test if a bad request sent on its own is answered without another request after it
+    @Test(timeout = 5000)
+    public void testLoneBadRequest() throws Exception {
+        out.writeInt(1);
+        out.writeByte(9);
+        out.flush();
+        assertEquals("Unknown opcode 9.", receive(BinaryProtocolServer.STATUS_BAD_REQUEST));
+        out.writeInt(2);
+        out.writeByte(BinaryProtocolServer.OP_GET);
+        out.writeByte(0);
+        out.flush();
+        assertEquals("Request too short.", receive(BinaryProtocolServer.STATUS_BAD_REQUEST));
+    }
+
+    // Test if a create that fails is answered as an error of the server
+    @Test
+    public void testCreateFailure() {
+        byte[] frame = BinaryProtocolServer.encodeCreateResponse(null, null);
+        assertEquals(BinaryProtocolServer.STATUS_SERVER_ERROR, frame[4]);
+        assertEquals("Could not create a game.", new String(frame, 5, frame.length - 5, StandardCharsets.UTF_8));
+        frame = BinaryProtocolServer.encodeCreateResponse(null, new IllegalStateException("disk full"));
+        assertEquals(BinaryProtocolServer.STATUS_SERVER_ERROR, frame[4]);
+        assertEquals("Could not create a game: disk full",
+                new String(frame, 5, frame.length - 5, StandardCharsets.UTF_8));
+    }
+
+    // Test if a frame larger than allowed closes the connection
+    @Test
+    public void testFrameTooLarge() throws Exception {
+        out.writeInt(BinaryProtocolServer.MAX_FRAME + 1);
+        out.flush();
+        assertEquals(-1, in.read());
+    }
+}
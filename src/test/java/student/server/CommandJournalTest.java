@@ -0,0 +1,269 @@
+package student.server;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CommandJournalTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    // Writes each record it is told as one line
+    private static class RecordingVisitor implements CommandJournal.Visitor {
+        final List<String> records = new ArrayList<>();
+
+        @Override
+        public void created(long sequence, int id) {
+            records.add("create " + id);
+        }
+
+        @Override
+        public void command(long sequence, int id, Command command) {
+            records.add("command " + id + " " + command.getCommandName() + " " + command.getCommandValue());
+        }
+
+        @Override
+        public void destroyed(long sequence, int id) {
+            records.add("destroy " + id);
+        }
+
+        @Override
+        public void createdBulk(long sequence, int firstId, int count, int stride) {
+            records.add("bulk " + firstId + " " + count + " " + stride);
+        }
+
+        @Override
+        public void destroyedRange(long sequence, int firstId, int lastId, int residue, int modulus) {
+            records.add("range " + firstId + " " + lastId + " " + residue + " " + modulus);
+        }
+
+        @Override
+        public void reset(long sequence) {
+            records.add("reset");
+        }
+
+        @Override
+        public void layout(long sequence, long fingerprint) {
+            records.add("layout " + fingerprint);
+        }
+    }
+
+    private List<String> replay(Path directory) throws IOException {
+        RecordingVisitor visitor = new RecordingVisitor();
+        new CommandJournal(directory, 1, 1 << 20).replay(visitor);
+        return visitor.records;
+    }
+
+    // Test if every kind of record is read back in the order it was added
+    @Test
+    public void testAppendAndReplay() throws Exception {
+        Path directory = folder.newFolder("journal").toPath();
+        CommandJournal journal = new CommandJournal(directory, 1, 1 << 20);
+        journal.start();
+        journal.appendCreate(1);
+        journal.appendCommand(1, new Command("go", "practice"));
+        journal.appendCommand(1, new Command("take", "\u00e9p\u00e9e"));
+        journal.appendCommand(1, new Command("examine", null));
+        journal.appendCreateBulk(2, 10, 4);
+        journal.appendDestroyRange(2, 30, 2, 4);
+        journal.appendDestroy(1);
+        journal.appendReset();
+        journal.appendLayout(-42L);
+        journal.close();
+        assertEquals(9L, (long) journal.getStats().get("journalWritten"));
+        assertTrue(journal.getStats().get("journalSyncs") >= 1);
+        List<String> records = replay(directory);
+        assertEquals(9, records.size());
+        assertEquals("create 1", records.get(0));
+        assertEquals("command 1 go practice", records.get(1));
+        assertEquals("command 1 take \u00e9p\u00e9e", records.get(2));
+        assertEquals("command 1 examine null", records.get(3));
+        assertEquals("bulk 2 10 4", records.get(4));
+        assertEquals("range 2 30 2 4", records.get(5));
+        assertEquals("destroy 1", records.get(6));
+        assertEquals("reset", records.get(7));
+        assertEquals("layout -42", records.get(8));
+    }
+
+    // Test if a journal started again goes on after the replayed records
+    @Test
+    public void testRestartAppendsNewSegment() throws Exception {
+        Path directory = folder.newFolder("journal").toPath();
+        CommandJournal journal = new CommandJournal(directory, 1, 1 << 20);
+        journal.start();
+        journal.appendCreate(1);
+        journal.close();
+        journal = new CommandJournal(directory, 1, 1 << 20);
+        assertEquals(1, journal.replay(new RecordingVisitor()));
+        journal.start();
+        journal.appendCreate(2);
+        journal.close();
+        assertEquals(2, directory.toFile().list().length);
+        List<String> records = replay(directory);
+        assertEquals("create 1", records.get(0));
+        assertEquals("create 2", records.get(1));
+    }
+
+    // Test if the writer starts a new segment once one is full
+    @Test
+    public void testSegmentsRoll() throws Exception {
+        Path directory = folder.newFolder("journal").toPath();
+        CommandJournal journal = new CommandJournal(directory, 1, 256);
+        journal.start();
+        for (int i = 0; i < 200; i++) {
+            journal.appendCommand(1, new Command("go", "room" + i));
+            if (i % 20 == 0) {
+                // Gives the writer time to write a group, so it can look at the size of the segment
+                Thread.sleep(5);
+            }
+        }
+        journal.close();
+        assertTrue(directory.toFile().list().length > 1);
+        List<String> records = replay(directory);
+        assertEquals(200, records.size());
+        assertEquals("command 1 go room199", records.get(199));
+    }
+
+    // Test if a record torn by a crash is cut off and the records before it are kept
+    @Test
+    public void testTornTailIsCutOff() throws Exception {
+        Path directory = folder.newFolder("journal").toPath();
+        CommandJournal journal = new CommandJournal(directory, 1, 1 << 20);
+        journal.start();
+        journal.appendCreate(1);
+        journal.appendCommand(1, new Command("go", "practice"));
+        journal.close();
+        File segment = directory.toFile().listFiles()[0];
+        long validLength = segment.length();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            // A record cut in the middle of its body
+            file.seek(validLength);
+            file.writeInt(40);
+            file.writeInt(0);
+            file.writeLong(3);
+        }
+        List<String> records = replay(directory);
+        assertEquals(2, records.size());
+        assertEquals(validLength, segment.length());
+    }
+
+    // Test if a record with a wrong checksum ends the replay
+    @Test
+    public void testBadChecksumEndsReplay() throws Exception {
+        Path directory = folder.newFolder("journal").toPath();
+        CommandJournal journal = new CommandJournal(directory, 1, 1 << 20);
+        journal.start();
+        journal.appendCreate(1);
+        journal.appendCreate(2);
+        journal.close();
+        File segment = directory.toFile().listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            // The last byte of the id of the second record
+            file.seek(segment.length() - 1);
+            file.write(9);
+        }
+        List<String> records = replay(directory);
+        assertEquals(1, records.size());
+        assertEquals("create 1", records.get(0));
+    }
+
+    // Test if records are numbered as they are added and replay can start from a sequence number
+    @Test
+    public void testReplayFromSequence() throws Exception {
+        Path directory = folder.newFolder("journal").toPath();
+        CommandJournal journal = new CommandJournal(directory, 1, 1 << 20);
+        journal.start();
+        assertEquals(1, journal.getNextSequence());
+        journal.appendCreate(1);
+        journal.appendCreate(2);
+        assertEquals(3, journal.getNextSequence());
+        journal.appendCreate(3);
+        journal.close();
+        RecordingVisitor visitor = new RecordingVisitor();
+        assertEquals(1, new CommandJournal(directory, 1, 1 << 20).replay(visitor, 3));
+        assertEquals("create 3", visitor.records.get(0));
+    }
+
+    // Test if compaction deletes the segments holding only older records and keeps the rest
+    @Test
+    public void testCompactDeletesOldSegments() throws Exception {
+        Path directory = folder.newFolder("journal").toPath();
+        CommandJournal journal = new CommandJournal(directory, 1, 1 << 20);
+        journal.start();
+        journal.appendCreate(1);
+        journal.appendCreate(2);
+        long cut = journal.getNextSequence();
+        journal.compact(cut);
+        journal.appendCreate(3);
+        for (int i = 0; i < 200 && journal.getStats().get("journalDeletedSegments") == 0; i++) {
+            Thread.sleep(5);
+        }
+        journal.close();
+        assertTrue(journal.getStats().get("journalDeletedSegments") >= 1);
+        List<String> records = replay(directory);
+        assertEquals("create 3", records.get(records.size() - 1));
+        assertTrue(!records.contains("create 1"));
+    }
+
+    // Test if a command string is kept whole up to the limit, and refused past it instead of cut
+    @Test
+    public void testLongCommandNotCut() throws Exception {
+        char[] longest = new char[CommandJournal.MAX_STRING_BYTES];
+        Arrays.fill(longest, 'a');
+        Command kept = new Command("go", new String(longest));
+        Command tooLong = new Command("go", new String(longest) + "a");
+        assertTrue(CommandJournal.fits(kept));
+        assertTrue(!CommandJournal.fits(tooLong));
+        Path directory = folder.newFolder("journal").toPath();
+        CommandJournal journal = new CommandJournal(directory, 1, 1 << 20);
+        journal.start();
+        journal.appendCommand(1, kept);
+        try {
+            journal.appendCommand(1, tooLong);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // Refused
+        }
+        journal.close();
+        List<String> records = replay(directory);
+        assertEquals(1, records.size());
+        assertEquals("command 1 go " + kept.getCommandValue(), records.get(0));
+    }
+
+    // Test if the journal stops and refuses records once a write fails
+    @Test
+    public void testWriteFailureStopsJournal() throws Exception {
+        Path directory = folder.newFolder("journal").toPath();
+        // Every write starts a new segment, which cannot be created once the directory is gone
+        CommandJournal journal = new CommandJournal(directory, 1, 1);
+        journal.start();
+        for (File file : directory.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(directory);
+        journal.appendCreate(1);
+        for (int i = 0; i < 200 && !journal.isFailed(); i++) {
+            Thread.sleep(5);
+        }
+        assertTrue(journal.isFailed());
+        assertEquals(1L, (long) journal.getStats().get("journalFailed"));
+        try {
+            journal.appendCreate(2);
+            fail();
+        } catch (IllegalStateException expected) {
+            // Refused
+        }
+        journal.close();
+    }
+}
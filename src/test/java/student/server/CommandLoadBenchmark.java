@@ -0,0 +1,90 @@
+package student.server;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares commands per second of the synchronous command endpoint with the async one, over plain http
+ * on localhost. Run it with: CommandLoadBenchmark [clients] [commandsPerClient]
+ */
+public class CommandLoadBenchmark {
+    private static final URI BASE_URI = URI.create("http://localhost:8089/adventure/v1/");
+    private static final String[] DIRECTIONS = {"practice", "out"};
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int commands = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        HttpServer server = GrizzlyHttpServerFactory.createHttpServer(BASE_URI,
+                new ResourceConfig(AdventureResource.class, GameStatusWriter.class));
+        try {
+            for (int round = 0; round < 3; round++) {
+                report("sync ", clients * commands, run(clients, commands, "command"));
+                report("async", clients * commands, run(clients, commands, "command/async"));
+            }
+        } finally {
+            server.shutdownNow();
+        }
+    }
+
+    private static long run(int clients, int commands, String endpoint) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        try {
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int client = 0; client < clients; client++) {
+                tasks.add(() -> {
+                    int id = Integer.parseInt(request("POST", "create", null).replaceAll(".*\"id\":(\\d+).*", "$1"));
+                    for (int i = 0; i < commands; i++) {
+                        String body = "{\"commandName\":\"go\",\"commandValue\":\"" + DIRECTIONS[i % 2] + "\"}";
+                        request("POST", "instance/" + id + "/" + endpoint, body);
+                    }
+                    return id;
+                });
+            }
+            long start = System.nanoTime();
+            for (Future<Integer> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+            return System.nanoTime() - start;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static String request(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(BASE_URI.toString() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        StringBuilder response = new StringBuilder();
+        try (InputStream input = connection.getInputStream()) {
+            byte[] buffer = new byte[4096];
+            for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+                response.append(new String(buffer, 0, read, StandardCharsets.UTF_8));
+            }
+        }
+        return response.toString();
+    }
+
+    private static void report(String name, int commands, long nanos) {
+        System.out.printf("%s: %,.0f commands/s%n", name, commands * 1e9 / nanos);
+    }
+}
@@ -0,0 +1,85 @@
+package student.server;
+
+import org.junit.After;
+import org.junit.Test;
+import student.adventure.GameEngine;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EngineShardTest {
+    GameEngine engine = new GameEngine();
+    EngineShard shard = new EngineShard("test-shard", engine, new SessionManager(engine, 1000, 10, 100, 0));
+
+    @After
+    public void tearDown() {
+        shard.stop();
+    }
+
+    // Tasks run one at a time on the owner thread, in the order they were submitted
+    @Test
+    public void testSubmitOrder() {
+        List<Integer> order = new ArrayList<>();
+        List<CompletableFuture<String>> threads = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int task = i;
+            threads.add(shard.submit(() -> {
+                order.add(task);
+                return Thread.currentThread().getName();
+            }));
+        }
+        for (CompletableFuture<String> thread : threads) {
+            assertEquals("test-shard", thread.join());
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.valueOf(i), order.get(i));
+        }
+        assertEquals(100, shard.getCompletedTasks());
+        assertEquals(0, shard.getQueueDepth());
+        assertTrue(shard.getMaxQueueDepth() >= 1);
+    }
+
+    // What a task throws completes its future and does not stop the shard
+    @Test
+    public void testSubmitFailure() throws Exception {
+        CompletableFuture<Object> failed = shard.submit(() -> {
+            throw new IllegalArgumentException("bad task");
+        });
+        try {
+            failed.get();
+        } catch (ExecutionException exception) {
+            assertTrue(exception.getCause() instanceof IllegalArgumentException);
+        }
+        assertEquals(Integer.valueOf(2), shard.submit(() -> 2).join());
+    }
+
+    // An error thrown by a task completes its future and the shard keeps running
+    @Test(timeout = 5000)
+    public void testSubmitError() throws Exception {
+        CompletableFuture<Object> failed = shard.submit(() -> {
+            throw new StackOverflowError();
+        });
+        try {
+            failed.get();
+        } catch (ExecutionException exception) {
+            assertTrue(exception.getCause() instanceof StackOverflowError);
+        }
+        assertEquals(Integer.valueOf(3), shard.submit(() -> 3).join());
+    }
+
+    // The engine given to the shard is used by its tasks
+    @Test
+    public void testEngine() {
+        assertEquals(Integer.valueOf(1), shard.submit(() -> {
+            try {
+                shard.getGame().startGame("game.json", 1);
+            } catch (Exception exception) {
+                return -1;
+            }
+            return shard.getGame().getSessions().size();
+        }).join());
+    }
+}
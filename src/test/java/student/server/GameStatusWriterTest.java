@@ -0,0 +1,80 @@
+package student.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import student.adventure.GameEngine;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class GameStatusWriterTest {
+    ObjectMapper mapper = new ObjectMapper();
+    GameEngine engine;
+
+    @Before
+    public void setUp() {
+        engine = new GameEngine();
+    }
+
+    // The writer should produce the same JSON as Jackson
+    private void assertSameJson(GameStatus status) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GameStatusWriter.write(status, out);
+        assertEquals(mapper.readTree(mapper.writeValueAsBytes(status)), mapper.readTree(out.toByteArray()));
+    }
+
+    @Test
+    public void testRoomStatus() throws Exception {
+        GameStatus status = engine.startGame("game.json", 1);
+        assertNotNull(status.getFragment());
+        assertSameJson(status);
+        status = engine.runGameServer(status, new Command("take", "dog"));
+        assertSameJson(status);
+    }
+
+    // The history is not a room description, so it is written without a fragment
+    @Test
+    public void testHistoryStatus() throws Exception {
+        GameStatus status = engine.startGame("game.json", 1);
+        status = engine.runGameServer(status, new Command("view history", ""));
+        assertEquals(null, status.getFragment());
+        assertSameJson(status);
+    }
+
+    // A thread keeps its buffer from one response to the next, unless a large response grew it
+    @Test
+    public void testLargeBufferNotKept() {
+        ByteArrayOutputStream small = GameStatusWriter.threadBuffer();
+        small.write(new byte[100], 0, 100);
+        GameStatusWriter.releaseThreadBuffer(small);
+        ByteArrayOutputStream large = GameStatusWriter.threadBuffer();
+        assertSame(small, large);
+        large.write(new byte[GameStatusWriter.MAX_KEPT_BYTES + 1], 0, GameStatusWriter.MAX_KEPT_BYTES + 1);
+        GameStatusWriter.releaseThreadBuffer(large);
+        assertNotSame(large, GameStatusWriter.threadBuffer());
+    }
+
+    // Quotes, escapes, non ascii text and nulls
+    @Test
+    public void testEscaping() throws Exception {
+        Map<String, List<String>> options = new HashMap<>();
+        options.put("go", Arrays.asList("\"north\"", "down\\stairs"));
+        options.put("take", null);
+        GameStatus status = new GameStatus(true, 7, "Line\nbreak \u9b3c\u6ec5 \u00e9", null, "video",
+                new AdventureState(), options);
+        assertSameJson(status);
+        status.setFragment(StatusFragment.of(status.getMessage(), null, "video", options.get("go")));
+        assertSameJson(status);
+        assertSameJson(new GameStatus(false, 8, "", null, null, null, null));
+        assertSameJson(new GameStatus(false, 0, "", null, null, null, null));
+        assertSameJson(new GameStatus(false, Integer.MAX_VALUE, "", null, null, null, null));
+        assertSameJson(new GameStatus(false, -120, "", null, null, null, null));
+    }
+}
@@ -0,0 +1,85 @@
+package student.server;
+
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LeaderboardTest {
+    // Test if more items, fewer moves and less time score higher, never below 0
+    @Test
+    public void testScore() {
+        assertEquals(10000 + 500 - 400 - 2, Leaderboard.score(4, 1, 2500));
+        assertTrue(Leaderboard.score(4, 2, 0) > Leaderboard.score(4, 1, 0));
+        assertTrue(Leaderboard.score(3, 1, 0) > Leaderboard.score(4, 1, 0));
+        assertEquals(0, Leaderboard.score(1000, 0, 0));
+    }
+
+    // Test if only the best entries are kept, best first, ties going to the fastest
+    @Test
+    public void testTopEntries() {
+        Leaderboard leaderboard = new Leaderboard(3);
+        leaderboard.record(new LeaderboardEntry(1, 50, 4, 0, 100));
+        leaderboard.record(new LeaderboardEntry(2, 90, 4, 0, 100));
+        leaderboard.record(new LeaderboardEntry(3, 70, 4, 0, 100));
+        assertTrue(leaderboard.record(new LeaderboardEntry(4, 70, 4, 0, 50)));
+        assertFalse(leaderboard.record(new LeaderboardEntry(5, 10, 4, 0, 100)));
+        List<LeaderboardEntry> entries = leaderboard.getSnapshot().getEntries();
+        assertEquals(3, entries.size());
+        assertEquals(2, entries.get(0).getId());
+        assertEquals(4, entries.get(1).getId());
+        assertEquals(3, entries.get(2).getId());
+        assertEquals(5, leaderboard.getSnapshot().getCompletions() + 1);
+    }
+
+    // Test if the snapshot is only replaced when the board changes
+    @Test
+    public void testSnapshotSwapped() {
+        Leaderboard leaderboard = new Leaderboard(1);
+        leaderboard.record(new LeaderboardEntry(1, 50, 4, 0, 100));
+        LeaderboardSnapshot first = leaderboard.getSnapshot();
+        leaderboard.record(new LeaderboardEntry(2, 10, 4, 0, 100));
+        assertSame(first, leaderboard.getSnapshot());
+        leaderboard.record(new LeaderboardEntry(3, 60, 4, 0, 100));
+        assertNotSame(first, leaderboard.getSnapshot());
+        assertEquals(1, first.getEntries().get(0).getId());
+        assertTrue(leaderboard.getSnapshot().getVersion() > first.getVersion());
+    }
+
+    // Test if games finished by many threads at once end with exactly the best ones on the board
+    @Test
+    public void testConcurrentRecord() throws Exception {
+        Leaderboard leaderboard = new Leaderboard(50);
+        List<LeaderboardEntry> all = new ArrayList<>();
+        for (int id = 0; id < 40000; id++) {
+            all.add(new LeaderboardEntry(id, ThreadLocalRandom.current().nextInt(100000), 4, 0, id % 977));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            List<LeaderboardEntry> part = all.subList(thread * 10000, (thread + 1) * 10000);
+            futures.add(pool.submit(() -> part.forEach(leaderboard::record)));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+        all.sort(Comparator.comparingInt((LeaderboardEntry entry) -> -entry.getScore())
+                .thenComparingLong(LeaderboardEntry::getElapsedMillis)
+                .thenComparingInt(LeaderboardEntry::getId));
+        List<LeaderboardEntry> entries = leaderboard.getSnapshot().getEntries();
+        assertEquals(50, entries.size());
+        for (int i = 0; i < 50; i++) {
+            assertSame(all.get(i), entries.get(i));
+        }
+    }
+}
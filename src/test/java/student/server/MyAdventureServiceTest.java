@@ -1,9 +1,25 @@
 package student.server;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import student.adventure.BatchCommandException;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 // Since execute command has already been tested via other functions in game engine.
 // This file only test about new, destroy, and reset.
@@ -15,6 +31,11 @@ public class MyAdventureServiceTest {
         service = new MyAdventureService();
     }
 
+    @After
+    public void tearDown() {
+        service.shutdown();
+    }
+
     // Test if the id will increment for each time
     @Test
     public void testNewGame() throws Exception{
@@ -41,4 +62,546 @@ public class MyAdventureServiceTest {
         assertEquals(service.newGame(), 1);
     }
 
+    // Test if a game with the same id and version after a reset is told apart by the epoch
+    @Test
+    public void testResetChangesEpoch() throws Exception {
+        int id = service.newGame();
+        int version = service.getGameVersion(id);
+        long epoch = service.getEpoch();
+        assertEquals(epoch, service.getEpoch());
+        service.reset();
+        assertEquals(id, service.newGame());
+        assertEquals(version, service.getGameVersion(id));
+        assertTrue(service.getEpoch() > epoch);
+    }
+
+    // Test if the state and its version are read together
+    @Test
+    public void testVersionedGame() throws Exception {
+        int id = service.newGame();
+        service.executeCommand(id, new Command("go", "practice"));
+        VersionedStatus versioned = service.getVersionedGameAsync(id).get();
+        assertEquals(1, versioned.getVersion());
+        assertEquals(service.getGame(id).getMessage(), versioned.getStatus().getMessage());
+        assertEquals(null, service.getVersionedGameAsync(id + 1).get());
+    }
+
+    // Destroying a game should release its state in the engine
+    @Test
+    public void testDestroyGameReleasesState() throws Exception {
+        int id = service.newGame();
+        service.executeCommand(id, new Command("take", "Nezuko"));
+        assertEquals(service.destroyGame(id), true);
+        assertEquals(service.getGame(id), null);
+        assertEquals(service.getSessionStats().get("liveSessions"), Long.valueOf(0));
+    }
+
+    // A command to a game that does not exist should be ignored
+    @Test
+    public void testExecuteCommandMissingGame() {
+        service.executeCommand(42, new Command("go", "practice"));
+        assertEquals(service.getGame(42), null);
+    }
+
+    // The history can be read a page at a time
+    @Test
+    public void testGetHistoryPage() throws Exception {
+        int id = service.newGame();
+        service.executeCommand(id, new Command("go", "practice"));
+        service.executeCommand(id, new Command("go", "practice"));
+        service.executeCommand(id, new Command("go", "out"));
+        assertEquals(service.getHistorySize(id), 4);
+        assertEquals(service.getHistory(id, 1, 2), Arrays.asList("Practice", "Practice"));
+        assertEquals(service.getHistory(id + 1, 0, 2), null);
+    }
+
+    // Creating more games than allowed ends the older ones and counts them
+    @Test
+    public void testMaxSessions() throws Exception {
+        MyAdventureService limited = new MyAdventureService(60000, 2, 1000, 1);
+        limited.newGame();
+        limited.newGame();
+        limited.newGame();
+        assertEquals(limited.getSessionStats().get("liveSessions"), Long.valueOf(2));
+        assertEquals(limited.getSessionStats().get("capacityEvictions"), Long.valueOf(1));
+        limited.shutdown();
+    }
+
+    // The sweeper thread ends games nobody uses
+    @Test
+    public void testIdleSweep() throws Exception {
+        MyAdventureService shortLived = new MyAdventureService(50, 10, 10, 1);
+        int id = shortLived.newGame();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (shortLived.getSessionStats().get("liveSessions") > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(shortLived.getSessionStats().get("idleEvictions"), Long.valueOf(1));
+        assertEquals(shortLived.getGame(id), null);
+        shortLived.shutdown();
+    }
+
+    private static final int THREADS = 8;
+
+    // Runs the task on several threads at once and returns what each thread returned
+    private static <T> List<T> runConcurrently(Callable<T> task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Callable<T>> tasks = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                tasks.add(task);
+            }
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Games created from many threads at once should all get different ids and all be kept
+    @Test
+    public void testConcurrentNewGame() throws Exception {
+        int gamesPerThread = 500;
+        List<List<Integer>> ids = runConcurrently(() -> {
+            List<Integer> created = new ArrayList<>();
+            for (int i = 0; i < gamesPerThread; i++) {
+                created.add(service.newGame());
+            }
+            return created;
+        });
+        Set<Integer> distinct = new HashSet<>();
+        ids.forEach(distinct::addAll);
+        assertEquals(distinct.size(), THREADS * gamesPerThread);
+        assertEquals(service.getSessionStats().get("liveSessions"), Long.valueOf(THREADS * gamesPerThread));
+    }
+
+    // Commands sent to one game from many threads should all be applied, none lost
+    @Test
+    public void testConcurrentCommands() throws Exception {
+        int shared = service.newGame();
+        int movesPerThread = 1000;
+        runConcurrently(() -> {
+            int own = service.newGame();
+            for (int i = 0; i < movesPerThread; i++) {
+                service.executeCommand(shared, new Command("go", "practice"));
+                service.executeCommand(own, new Command("go", i % 2 == 0 ? "practice" : "out"));
+            }
+            return service.getHistorySize(own);
+        }).forEach(size -> assertEquals(size, Long.valueOf(movesPerThread + 1)));
+        assertEquals(service.getHistorySize(shared), THREADS * movesPerThread + 1);
+    }
+
+    // Items taken concurrently from one game are never duplicated or lost
+    @Test
+    public void testConcurrentTakeDrop() throws Exception {
+        int shared = service.newGame();
+        runConcurrently(() -> {
+            for (int i = 0; i < 1000; i++) {
+                service.executeCommand(shared, new Command("take", "dog"));
+                service.executeCommand(shared, new Command("drop", "dog"));
+            }
+            return null;
+        });
+        GameStatus status = service.getGame(shared);
+        assertEquals(status.getCommandOptions().get("take"), Arrays.asList("nezuko", "dog"));
+        assertEquals(status.getCommandOptions().get("drop"), new ArrayList<String>());
+    }
+
+    // The stats show the mailbox of every shard
+    @Test
+    public void testShardStats() throws Exception {
+        MyAdventureService sharded = new MyAdventureService(60000, 100, 1000, 3);
+        for (int i = 0; i < 6; i++) {
+            sharded.newGame();
+        }
+        assertEquals(sharded.getSessionStats().get("shards"), Long.valueOf(3));
+        assertEquals(sharded.getSessionStats().get("liveSessions"), Long.valueOf(6));
+        assertEquals(sharded.getSessionStats().get("shard2.queueDepth"), Long.valueOf(0));
+        assertTrue(sharded.getSessionStats().get("shard0.completedTasks") >= 2);
+        sharded.shutdown();
+    }
+
+    // The async command path completes with the state after the command
+    @Test
+    public void testExecuteCommandAsync() throws Exception {
+        int id = service.newGame();
+        GameStatus status = service.executeCommandAsync(id, new Command("go", "practice")).get();
+        assertEquals(status.getId(), id);
+        assertEquals(service.getHistorySize(id), 2);
+        assertEquals(service.executeCommandAsync(99, new Command("go", "practice")).get(), null);
+    }
+
+    // A batch returns the final state and, when asked, the room after each command
+    @Test
+    public void testExecuteCommands() throws Exception {
+        int id = service.newGame();
+        List<Command> commands = Arrays.asList(new Command("go", "practice"), new Command("go", "out"));
+        CommandBatchResult result = service.executeCommands(id, commands, true);
+        assertEquals(result.getSteps(), Arrays.asList("Practice", "Preparation"));
+        assertEquals(result.getStatus(), service.getGame(id));
+        assertEquals(service.executeCommands(id, commands, false).getSteps(), null);
+        assertEquals(service.getHistorySize(id), 5);
+        assertEquals(service.executeCommands(99, commands, true), null);
+    }
+
+    // Bulk creation takes one range of ids, and bulk destroy ends only the games in its range
+    @Test
+    public void testBulkGames() throws Exception {
+        service.newGame();
+        BulkOperationResult created = service.newGames(1000);
+        assertEquals(created.getFirstId(), 2);
+        assertEquals(created.getLastId(), 1001);
+        assertTrue(created.getPerSecond() > 0);
+        assertEquals(service.getGame(1001).getId(), 1001);
+        assertEquals(service.newGame(), 1002);
+        BulkOperationResult destroyed = service.destroyGames(500, 1001);
+        assertEquals(destroyed.getCount(), 502);
+        assertEquals(service.getGame(600), null);
+        assertEquals(service.getSessionStats().get("liveSessions"), Long.valueOf(500));
+    }
+
+    // Reading a game does not change its version, commands do
+    @Test
+    public void testGameVersion() throws Exception {
+        int id = service.newGame();
+        service.getGame(id);
+        assertEquals(service.getGameVersion(id), 0);
+        service.executeCommand(id, new Command("go", "practice"));
+        assertEquals(service.getGameVersion(id), 1);
+        assertEquals(service.getGameVersion(99), -1);
+    }
+
+    // Test if a command sent with the current version only returns what changed, and any other version resyncs
+    @Test
+    public void testExecuteCommandPatch() throws Exception {
+        int id = service.newGame();
+        StatusPatch patch = service.executeCommandPatch(id, new Command("go", "practice"), 0);
+        assertEquals(Integer.valueOf(0), patch.getBase());
+        assertEquals(1, patch.getVersion());
+        assertTrue(patch.getSet().containsKey("message"));
+        StatusPatch resync = service.executeCommandPatch(id, new Command("go", "out"), 0);
+        assertTrue(resync.getResync());
+        assertEquals(2, resync.getVersion());
+        assertEquals(service.getGame(id).getMessage(), resync.getStatus().getMessage());
+        assertEquals(null, service.executeCommandPatch(42, new Command("go", "out"), 0));
+    }
+
+    // Test if finished games show up on the leaderboard, best first, and a reset empties it
+    @Test
+    public void testLeaderboard() throws Exception {
+        assertEquals(0, service.fetchLeaderboard().getEntries().size());
+        int slow = service.newGame();
+        int fast = service.newGame();
+        List<Command> slowRun = Arrays.asList(new Command("go", "practice"), new Command("go", "out"),
+                new Command("go", "practice"), new Command("go", "out"), new Command("go", "fight"),
+                new Command("go", "Continue"));
+        List<Command> fastRun = Arrays.asList(new Command("take", "dog"), new Command("go", "practice"),
+                new Command("go", "out"), new Command("go", "fight"), new Command("go", "Continue"));
+        service.executeCommands(slow, slowRun, false);
+        service.executeCommands(fast, fastRun, false);
+        LeaderboardSnapshot snapshot = service.fetchLeaderboard();
+        assertEquals(2, snapshot.getEntries().size());
+        assertEquals(fast, snapshot.getEntries().get(0).getId());
+        assertEquals(slow, snapshot.getEntries().get(1).getId());
+        assertEquals(6, snapshot.getEntries().get(1).getMoves());
+        assertEquals(2, snapshot.getCompletions());
+        service.reset();
+        assertEquals(0, service.fetchLeaderboard().getEntries().size());
+    }
+
+    // Test if the leaderboard of a new service is warmed from the results kept by the one before
+    @Test
+    public void testLeaderboardWarmedFromStore() throws Exception {
+        String path = File.createTempFile("results", ".db").getPath();
+        MyAdventureService first = new MyAdventureService(60000, 1000, 1000, 1, new ResultStore(path, 100, 1, 1000));
+        int id = first.newGame();
+        first.executeCommands(id, Arrays.asList(new Command("go", "practice"), new Command("go", "out"),
+                new Command("go", "fight"), new Command("go", "Continue")), false);
+        first.shutdown();
+        MyAdventureService second = new MyAdventureService(60000, 1000, 1000, 1, new ResultStore(path, 100, 1, 1000));
+        try {
+            LeaderboardSnapshot snapshot = second.fetchLeaderboard();
+            assertEquals(1, snapshot.getEntries().size());
+            assertEquals(id, snapshot.getEntries().get(0).getId());
+            assertEquals(4, snapshot.getEntries().get(0).getMoves());
+            assertEquals(1, snapshot.getCompletions());
+        } finally {
+            second.shutdown();
+            new File(path).delete();
+        }
+    }
+
+    // Test if the games are rebuilt from the journal, here on another number of shards
+    @Test
+    public void testGamesReplayedFromJournal() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        MyAdventureService first = new MyAdventureService(60000, 1000, 1000, 2, null,
+                new CommandJournal(directory, 1, 1 << 20));
+        int id = first.newGame();
+        first.executeCommand(id, new Command("go", "practice"));
+        first.newGames(6);
+        first.destroyGames(2, 4);
+        int destroyedId = first.newGame();
+        first.destroyGame(destroyedId);
+        first.executeCommands(5, Arrays.asList(new Command("go", "practice"), new Command("go", "out")), false);
+        GameStatus expected = first.getGame(id);
+        GameStatus expectedBulk = first.getGame(5);
+        first.shutdown();
+        MyAdventureService second = new MyAdventureService(60000, 1000, 1000, 3, null,
+                new CommandJournal(directory, 1, 1 << 20));
+        try {
+            assertEquals(expected.getMessage(), second.getGame(id).getMessage());
+            assertEquals(expectedBulk.getMessage(), second.getGame(5).getMessage());
+            assertEquals(null, second.getGame(3));
+            assertEquals(null, second.getGame(destroyedId));
+            assertTrue(second.getGame(7) != null);
+            assertEquals(destroyedId + 1, second.newGame());
+            // The ten game records and the layout marker written when the first service started
+            assertEquals(11L, (long) second.getSessionStats().get("journalReplayedRecords"));
+        } finally {
+            second.shutdown();
+        }
+    }
+
+    // Test if a command the journal could not record is refused before it changes the game
+    @Test
+    public void testTooLongCommandRefused() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        MyAdventureService journaled = new MyAdventureService(60000, 1000, 1000, 2, null,
+                new CommandJournal(directory, 1, 1 << 20));
+        try {
+            int id = journaled.newGame();
+            GameStatus before = journaled.getGame(id);
+            char[] name = new char[CommandJournal.MAX_STRING_BYTES + 1];
+            Arrays.fill(name, 'a');
+            try {
+                journaled.executeCommand(id, new Command(new String(name), "practice"));
+                fail();
+            } catch (IllegalArgumentException expected) {
+                // Refused
+            }
+            assertEquals(before.getMessage(), journaled.getGame(id).getMessage());
+            assertEquals(0, journaled.getGameVersion(id));
+        } finally {
+            journaled.shutdown();
+        }
+    }
+
+    // Test if the games cannot change once the journal failed, as the changes would not be recorded
+    @Test
+    public void testFailedJournalRefusesChanges() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        // Every write starts a new segment, which cannot be created once the directory is gone
+        CommandJournal journal = new CommandJournal(directory, 1, 1);
+        MyAdventureService journaled = new MyAdventureService(60000, 1000, 1000, 2, null, journal);
+        try {
+            int id = journaled.newGame();
+            GameStatus before = journaled.getGame(id);
+            for (File file : directory.toFile().listFiles()) {
+                Files.delete(file.toPath());
+            }
+            Files.delete(directory);
+            journaled.newGame();
+            for (int i = 0; i < 200 && !journal.isFailed(); i++) {
+                Thread.sleep(5);
+            }
+            assertTrue(journal.isFailed());
+            try {
+                journaled.executeCommand(id, new Command("go", "practice"));
+                fail();
+            } catch (IllegalStateException expected) {
+                // Refused
+            }
+            assertEquals(before.getMessage(), journaled.getGame(id).getMessage());
+            assertEquals(0, journaled.getGameVersion(id));
+            try {
+                journaled.destroyGame(id);
+                fail();
+            } catch (IllegalStateException expected) {
+                // Refused
+            }
+            assertTrue(journaled.getGame(id) != null);
+        } finally {
+            journaled.shutdown();
+        }
+    }
+
+    // Test if games created while a reset runs are recorded on the side of the reset they were made on
+    @Test
+    public void testResetAlongsideCreates() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        MyAdventureService first = new MyAdventureService(60000, 1000, 1000, 2, null,
+                new CommandJournal(directory, 1, 1 << 20));
+        ExecutorService creator = Executors.newSingleThreadExecutor();
+        Future<?> creates = creator.submit(() -> {
+            for (int i = 0; i < 300; i++) {
+                first.newGame();
+            }
+            return null;
+        });
+        while (first.getSessionStats().get("liveSessions") < 50) {
+            Thread.sleep(1);
+        }
+        first.reset();
+        creates.get();
+        creator.shutdown();
+        int next = first.newGame();
+        Set<Integer> live = new HashSet<>();
+        for (int id = 1; id <= 300; id++) {
+            if (first.getGame(id) != null) {
+                live.add(id);
+            }
+        }
+        for (int id : live) {
+            assertTrue(id <= next);
+        }
+        first.shutdown();
+        MyAdventureService second = new MyAdventureService(60000, 1000, 1000, 2, null,
+                new CommandJournal(directory, 1, 1 << 20));
+        try {
+            for (int id = 1; id <= 300; id++) {
+                assertEquals(live.contains(id), second.getGame(id) != null);
+            }
+        } finally {
+            second.shutdown();
+        }
+    }
+
+    // Test if the commands after a restart are kept when the records up to the latest cut were lost
+    @Test
+    public void testRecordsAfterLostCutKept() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        MyAdventureService first = new MyAdventureService(60000, 1000, 1000, 2, null,
+                new CommandJournal(directory, 1, 1 << 20));
+        first.newGame();
+        int id = first.newGame();
+        first.snapshot();
+        first.shutdown();
+        // As if the shard of the game was cut well after the records the journal still holds
+        SnapshotStore store = new SnapshotStore(directory);
+        SnapshotStore.Snapshot snapshot = store.load();
+        long[] cuts = snapshot.getCuts().clone();
+        cuts[id % 2] += 100;
+        store.write(snapshot.getLastId(), snapshot.getLayoutFingerprint(), cuts, snapshot.getSections());
+        MyAdventureService second = new MyAdventureService(60000, 1000, 1000, 2, null,
+                new CommandJournal(directory, 1, 1 << 20));
+        second.executeCommand(id, new Command("go", "practice"));
+        GameStatus expected = second.getGame(id);
+        second.shutdown();
+        MyAdventureService third = new MyAdventureService(60000, 1000, 1000, 2, null,
+                new CommandJournal(directory, 1, 1 << 20));
+        try {
+            assertEquals(expected.getMessage(), third.getGame(id).getMessage());
+            assertEquals(2, third.getHistorySize(id));
+        } finally {
+            third.shutdown();
+        }
+    }
+
+    // Test if a snapshot and the records after it, written with another layout, are not used
+    @Test
+    public void testOtherLayoutNotRestored() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        MyAdventureService first = new MyAdventureService(60000, 1000, 1000, 2, null,
+                new CommandJournal(directory, 1, 1 << 20));
+        first.newGames(4);
+        first.snapshot();
+        int id = first.newGame();
+        first.executeCommand(1, new Command("go", "practice"));
+        first.shutdown();
+        // The same snapshot, as if game.json changed since it was taken
+        SnapshotStore store = new SnapshotStore(directory);
+        SnapshotStore.Snapshot snapshot = store.load();
+        assertTrue(snapshot.getLayoutFingerprint() != 0);
+        store.write(snapshot.getLastId(), snapshot.getLayoutFingerprint() + 1, snapshot.getCuts(),
+                snapshot.getSections());
+        MyAdventureService second = new MyAdventureService(60000, 1000, 1000, 2, null,
+                new CommandJournal(directory, 1, 1 << 20));
+        try {
+            assertEquals(null, second.getGame(1));
+            assertEquals(null, second.getGame(id));
+            assertEquals(2L, (long) second.getSessionStats().get("skippedRecords"));
+            assertEquals(id + 1, second.newGame());
+        } finally {
+            second.shutdown();
+        }
+    }
+
+    // Test if the commands of a batch run before a failure are journaled, and an invalid batch is refused
+    @Test
+    public void testFailedBatchJournaled() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        MyAdventureService first = new MyAdventureService(60000, 1000, 1000, 2, null,
+                new CommandJournal(directory, 1, 1 << 20));
+        int id = first.newGame();
+        // Read once when its length is checked, then broken when it runs
+        Command broken = new Command("go", "fight") {
+            private int reads;
+
+            @Override
+            public String getCommandValue() {
+                if (reads++ > 0) {
+                    throw new IllegalStateException("broken command");
+                }
+                return super.getCommandValue();
+            }
+        };
+        try {
+            first.executeCommands(id, Arrays.asList(new Command("go", "practice"), broken), false);
+            fail();
+        } catch (BatchCommandException expected) {
+            assertEquals(1, expected.getApplied());
+        }
+        try {
+            first.executeCommands(id, Arrays.asList(new Command("go", "out"), null), false);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // Nothing of the batch runs
+        }
+        GameStatus expected = first.getGame(id);
+        assertEquals(2, first.getHistorySize(id));
+        assertEquals(1, first.getGameVersion(id));
+        first.shutdown();
+        MyAdventureService second = new MyAdventureService(60000, 1000, 1000, 2, null,
+                new CommandJournal(directory, 1, 1 << 20));
+        try {
+            assertEquals(expected.getMessage(), second.getGame(id).getMessage());
+            assertEquals(2, second.getHistorySize(id));
+        } finally {
+            second.shutdown();
+        }
+    }
+
+    // Test if a restart loads the snapshot and only replays the journal after it
+    @Test
+    public void testGamesRestoredFromSnapshot() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        MyAdventureService first = new MyAdventureService(60000, 1000, 1000, 2, null,
+                new CommandJournal(directory, 1, 1 << 20));
+        first.newGames(4);
+        first.executeCommand(1, new Command("go", "practice"));
+        assertEquals(4, first.snapshot());
+        first.executeCommand(2, new Command("go", "practice"));
+        first.destroyGame(3);
+        int id = first.newGame();
+        GameStatus expected = first.getGame(1);
+        GameStatus expectedAfter = first.getGame(2);
+        first.shutdown();
+        MyAdventureService second = new MyAdventureService(60000, 1000, 1000, 3, null,
+                new CommandJournal(directory, 1, 1 << 20));
+        try {
+            assertEquals(expected.getMessage(), second.getGame(1).getMessage());
+            assertEquals(expectedAfter.getMessage(), second.getGame(2).getMessage());
+            assertEquals(null, second.getGame(3));
+            assertTrue(second.getGame(id) != null);
+            assertEquals(id + 1, second.newGame());
+            assertEquals(4L, (long) second.getSessionStats().get("restoredSessions"));
+            assertEquals(3L, (long) second.getSessionStats().get("journalReplayedRecords"));
+        } finally {
+            second.shutdown();
+        }
+    }
 }
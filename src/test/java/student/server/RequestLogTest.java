@@ -0,0 +1,82 @@
+package student.server;
+
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestLogTest {
+    // Test if entries are drained in order and formatted as one line
+    @Test
+    public void testRecordDrain() {
+        RequestLog log = new RequestLog(8);
+        log.record("POST", "instance/3/command", 3, 200, 85000, null);
+        log.record("GET", "ping", -1, 200, 1000, null);
+        List<String> lines = new ArrayList<>();
+        assertEquals(2, log.drain(entry -> {
+            StringBuilder line = new StringBuilder();
+            entry.format(line);
+            lines.add(line.toString());
+        }));
+        assertEquals("POST instance/3/command id=3 status=200 latencyUs=85", lines.get(0));
+        assertEquals("GET ping status=200 latencyUs=1", lines.get(1));
+        assertEquals(0, log.drain(entry -> { }));
+        assertEquals(2, log.getWritten());
+    }
+
+    // Test if a full ring drops entries instead of waiting, and takes entries again once drained
+    @Test
+    public void testFullRingDrops() {
+        RequestLog log = new RequestLog(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(log.record("GET", "ping", -1, 200, 0, null));
+        }
+        assertFalse(log.record("GET", "ping", -1, 200, 0, null));
+        assertEquals(1, log.getDropped());
+        log.drain(entry -> { });
+        assertTrue(log.record("GET", "instance/1", 1, 400, 0, "No game found with id '1'."));
+        List<String> payloads = new ArrayList<>();
+        log.drain(entry -> payloads.add(entry.getPayload()));
+        assertEquals("No game found with id '1'.", payloads.get(0));
+    }
+
+    // Test if the capacity is rounded up to a power of two
+    @Test
+    public void testCapacity() {
+        assertEquals(8, new RequestLog(5).getCapacity());
+        assertEquals(8, new RequestLog(8).getCapacity());
+    }
+
+    // Test if entries recorded by many threads at once are all drained exactly once, or counted as dropped
+    @Test
+    public void testConcurrentRecord() throws Exception {
+        RequestLog log = new RequestLog(1024);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            int first = thread * 10000;
+            futures.add(pool.submit(() -> {
+                for (int i = first; i < first + 10000; i++) {
+                    log.record("GET", "instance", i, 200, 0, null);
+                }
+            }));
+        }
+        boolean[] seen = new boolean[40000];
+        int[] drained = new int[1];
+        while (!futures.stream().allMatch(Future::isDone)) {
+            log.drain(entry -> {
+                assertFalse(seen[entry.getId()]);
+                seen[entry.getId()] = true;
+                drained[0]++;
+            });
+        }
+        log.drain(entry -> drained[0]++);
+        pool.shutdown();
+        assertEquals(40000, drained[0] + log.getDropped());
+    }
+}
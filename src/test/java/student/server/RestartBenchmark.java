@@ -0,0 +1,73 @@
+package student.server;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Measures how long a service takes to restart against the number of games, once by replaying the whole
+ * journal and once from a snapshot with a short journal tail. Run it with: RestartBenchmark [commandsPerGame]
+ */
+public class RestartBenchmark {
+    private static final int[] GAME_COUNTS = {10000, 100000, 500000};
+    private static final String[] DIRECTIONS = {"practice", "out"};
+
+    public static void main(String[] args) throws Exception {
+        int commands = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        for (int games : GAME_COUNTS) {
+            Path journalOnly = fill(games, commands, false);
+            Path withSnapshot = fill(games, commands, true);
+            report("journal ", games, restart(journalOnly));
+            report("snapshot", games, restart(withSnapshot));
+            delete(journalOnly.toFile());
+            delete(withSnapshot.toFile());
+        }
+    }
+
+    // Plays the games into a new journal, taking a snapshot before the last command of each game if asked
+    private static Path fill(int games, int commands, boolean snapshot) throws Exception {
+        Path directory = Files.createTempDirectory("restart");
+        MyAdventureService service = new MyAdventureService(24 * 60 * 60 * 1000L, games, 1000,
+                Runtime.getRuntime().availableProcessors(), null, new CommandJournal(directory, 10, 64L << 20));
+        int firstId = service.newGames(games).getFirstId();
+        for (int i = 0; i < commands; i++) {
+            if (snapshot && i == commands - 1) {
+                service.snapshot();
+            }
+            List<CompletableFuture<GameStatus>> round = new ArrayList<>(games);
+            for (int id = firstId; id < firstId + games; id++) {
+                round.add(service.executeCommandAsync(id, new Command("go", DIRECTIONS[i % 2])));
+            }
+            round.forEach(CompletableFuture::join);
+        }
+        service.shutdown();
+        return directory;
+    }
+
+    private static Map<String, Long> restart(Path directory) throws Exception {
+        MyAdventureService service = new MyAdventureService(24 * 60 * 60 * 1000L, Integer.MAX_VALUE, 1000,
+                Runtime.getRuntime().availableProcessors(), null, new CommandJournal(directory, 10, 64L << 20));
+        Map<String, Long> stats = service.getSessionStats();
+        service.shutdown();
+        return stats;
+    }
+
+    private static void report(String name, int games, Map<String, Long> stats) {
+        System.out.printf("%s %7d games: restart %6d ms, %7d restored, %8d records replayed%n", name, games,
+                stats.get("restartMillis"), stats.get("restoredSessions"), stats.get("journalReplayedRecords"));
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,104 @@
+package student.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResultStoreTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    String path;
+    ResultStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        path = folder.newFile("results.db").getPath();
+        store = new ResultStore(path, 100, 5, 1000);
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    // Test if saved results are kept after closing and read back best first
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        store.save(new LeaderboardEntry(1, 50, 4, 0, 100));
+        store.save(new LeaderboardEntry(2, 90, 4, 1, 100));
+        store.save(new LeaderboardEntry(3, 90, 6, 1, 50));
+        store.close();
+        store = new ResultStore(path, 100, 5, 1000);
+        List<LeaderboardEntry> best = store.loadBest(2);
+        assertEquals(2, best.size());
+        assertEquals(3, best.get(0).getId());
+        assertEquals(2, best.get(1).getId());
+        assertEquals(6, best.get(0).getMoves());
+        assertEquals(3, store.countResults());
+    }
+
+    // Test if many results waiting at once are committed in few transactions
+    @Test
+    public void testGroupCommit() throws Exception {
+        for (int id = 0; id < 1000; id++) {
+            store.save(new LeaderboardEntry(id, id, 4, 0, 100));
+        }
+        store.close();
+        Map<String, Long> stats = store.getStats();
+        assertEquals(1000L, (long) stats.get("resultsWritten"));
+        assertTrue(stats.get("resultBatches") < 1000);
+        assertTrue(stats.get("resultMaxBatchSize") > 1);
+        assertEquals(0L, (long) stats.get("resultQueueDepth"));
+        store = new ResultStore(path, 100, 5, 1000);
+        assertEquals(1000, store.countResults());
+    }
+
+    // Test if a full queue drops results instead of waiting
+    @Test
+    public void testFullQueueDrops() throws Exception {
+        store.close();
+        store = new ResultStore(path, 1, 0, 1);
+        int saved = 0;
+        for (int id = 0; id < 10000; id++) {
+            if (store.save(new LeaderboardEntry(id, id, 4, 0, 100))) {
+                saved++;
+            }
+        }
+        store.close();
+        assertEquals(10000 - saved, (long) store.getStats().get("resultsDropped"));
+        assertEquals((long) saved, (long) store.getStats().get("resultsWritten"));
+        assertFalse(saved == 10000);
+    }
+
+    // Test if a clear is not taken for a result waiting since the start of the clock
+    @Test
+    public void testClearLatency() throws Exception {
+        store.clear();
+        store.save(new LeaderboardEntry(1, 50, 4, 0, 100));
+        for (int i = 0; i < 200 && store.getStats().get("resultsWritten") == 0; i++) {
+            Thread.sleep(5);
+        }
+        assertEquals(1L, (long) store.getStats().get("resultsWritten"));
+        assertTrue(store.getStats().get("resultLastLatencyMicros") < 10000000L);
+    }
+
+    // Test if clearing deletes only the results saved before it
+    @Test
+    public void testClear() throws Exception {
+        store.save(new LeaderboardEntry(1, 50, 4, 0, 100));
+        store.clear();
+        store.save(new LeaderboardEntry(2, 60, 4, 0, 100));
+        store.close();
+        store = new ResultStore(path, 100, 5, 1000);
+        assertEquals(Arrays.asList(2), Arrays.asList(store.loadBest(10).get(0).getId()));
+        assertEquals(1, store.countResults());
+    }
+}
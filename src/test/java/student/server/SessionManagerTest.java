@@ -0,0 +1,163 @@
+package student.server;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import student.adventure.ColdSessionStore;
+import student.adventure.GameEngine;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SessionManagerTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    GameEngine engine;
+    SessionManager manager;
+
+    @Before
+    public void setUp() {
+        engine = new GameEngine();
+        // Games live 10 seconds, at most 3 of them, with 1 second ticks
+        manager = new SessionManager(engine, 10000, 3, 1000, 0);
+    }
+
+    private void start(int id, long now) throws Exception {
+        engine.startGame("game.json", id);
+        manager.created(id, now);
+    }
+
+    @Test
+    public void testIdleEviction() throws Exception {
+        start(1, 0);
+        start(2, 0);
+        manager.touched(2, 6000);
+        assertEquals(0, manager.sweep(9000));
+        assertEquals(1, manager.sweep(10000));
+        assertNull(engine.getGameStatus(1));
+        assertNotNull(engine.getGameStatus(2));
+        assertEquals(1, manager.sweep(16000));
+        assertEquals(2, manager.getIdleEvictions());
+        assertEquals(0, manager.getLiveSessions());
+    }
+
+    // Destroyed games are dropped from the wheel without being counted
+    @Test
+    public void testDestroyedGame() throws Exception {
+        start(1, 0);
+        engine.endGame(1);
+        assertEquals(0, manager.sweep(20000));
+        assertEquals(0, manager.getIdleEvictions());
+        assertEquals(0L, (long) manager.getStats().get("scheduledTimers"));
+    }
+
+    // Going over the limit ends the least recently used game
+    @Test
+    public void testCapacityEviction() throws Exception {
+        start(1, 0);
+        start(2, 1000);
+        start(3, 2000);
+        manager.touched(1, 3000);
+        start(4, 4000);
+        assertEquals(3, manager.getLiveSessions());
+        assertEquals(1, manager.getCapacityEvictions());
+        assertNull(engine.getGameStatus(2));
+        assertNotNull(engine.getGameStatus(4));
+    }
+
+    private ColdSessionStore tiered(long demoteAfterMillis, int maxHot) throws Exception {
+        ColdSessionStore coldStore = new ColdSessionStore(folder.getRoot().toPath(), 1024, 64 << 10);
+        engine.setColdStore(coldStore);
+        manager = new SessionManager(engine, 10000, 3, 1000, 0);
+        manager.setTiering(demoteAfterMillis, maxHot);
+        return coldStore;
+    }
+
+    // Idle games are moved off the heap by the sweep and come back when used
+    @Test
+    public void testIdleDemotion() throws Exception {
+        ColdSessionStore coldStore = tiered(3000, 3);
+        start(1, 0);
+        start(2, 0);
+        manager.touched(2, 2000);
+        assertEquals(0, manager.sweep(3000));
+        assertEquals(1, coldStore.size());
+        assertEquals(1, engine.getSessions().size());
+        assertEquals(2, manager.getLiveSessions());
+        assertTrue(manager.touched(1, 4000));
+        assertNotNull(engine.getGameStatus(1));
+        assertEquals(0, coldStore.size());
+        assertEquals(1L, (long) manager.getStats().get("promotions"));
+        assertEquals(1L, (long) manager.getStats().get("demotions"));
+        coldStore.close();
+    }
+
+    // Games off the heap still end when their time to live runs out
+    @Test
+    public void testColdIdleEviction() throws Exception {
+        ColdSessionStore coldStore = tiered(1000, 3);
+        start(1, 0);
+        manager.sweep(1000);
+        assertEquals(1, coldStore.size());
+        assertEquals(0, manager.sweep(9000));
+        assertEquals(1, manager.sweep(10000));
+        assertEquals(0, manager.getLiveSessions());
+        assertEquals(0L, (long) manager.getStats().get("coldSessions"));
+        coldStore.close();
+    }
+
+    // Going over the heap limit moves the least recently used games off it, without ending them
+    @Test
+    public void testHotLimit() throws Exception {
+        ColdSessionStore coldStore = tiered(0, 1);
+        start(1, 0);
+        start(2, 1000);
+        start(3, 2000);
+        assertEquals(1, engine.getSessions().size());
+        assertEquals(3, manager.getLiveSessions());
+        assertEquals(0, manager.getCapacityEvictions());
+        // The game just used stays on the heap
+        assertTrue(engine.getSessions().find(3) >= 0);
+        assertEquals(2, coldStore.size());
+        assertTrue(manager.touched(1, 3000));
+        assertTrue(engine.getSessions().find(1) >= 0);
+        assertEquals(1, engine.getSessions().size());
+        assertNotNull(engine.getGameStatus(2));
+        coldStore.close();
+    }
+
+    // With games off the heap, going over the limit ends the least recently used of them, not a game in use
+    @Test
+    public void testCapacityEvictionWithTiering() throws Exception {
+        ColdSessionStore coldStore = tiered(0, 1);
+        start(1, 0);
+        start(2, 1000);
+        start(3, 2000);
+        start(4, 3000);
+        assertEquals(3, manager.getLiveSessions());
+        assertEquals(1, manager.getCapacityEvictions());
+        assertEquals(2, coldStore.size());
+        assertTrue(engine.getSessions().find(4) >= 0);
+        start(5, 4000);
+        start(6, 5000);
+        assertEquals(3, manager.getLiveSessions());
+        assertEquals(3, manager.getCapacityEvictions());
+        // The newest games are kept, the oldest off the heap were ended
+        assertNotNull(engine.getGameStatus(6));
+        assertNull(engine.getGameStatus(1));
+        coldStore.close();
+    }
+
+    @Test
+    public void testTouchMissing() {
+        assertFalse(manager.touched(5, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLimit() {
+        new SessionManager(engine, 1000, 0, 1000, 0);
+    }
+}
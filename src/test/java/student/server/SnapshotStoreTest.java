@@ -0,0 +1,57 @@
+package student.server;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import static org.junit.Assert.assertEquals;
+
+public class SnapshotStoreTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static ByteBuffer section(int... values) {
+        ByteBuffer section = ByteBuffer.allocate(values.length * 4);
+        for (int value : values) {
+            section.putInt(value);
+        }
+        section.flip();
+        return section;
+    }
+
+    // Test if a snapshot is read back with its cuts and sections, and only the latest is kept
+    @Test
+    public void testWriteAndLoad() throws Exception {
+        Path directory = folder.newFolder("snapshots").toPath();
+        SnapshotStore store = new SnapshotStore(directory);
+        assertEquals(null, store.load());
+        store.write(4, 11, new long[] {5, 3}, new ByteBuffer[] {section(1), section(2, 3)});
+        store.write(9, 12, new long[] {8, 7}, new ByteBuffer[] {section(4, 5), section(6)});
+        assertEquals(1, directory.toFile().list().length);
+        SnapshotStore.Snapshot snapshot = store.load();
+        assertEquals(9, snapshot.getLastId());
+        assertEquals(12, snapshot.getLayoutFingerprint());
+        assertEquals(7, snapshot.getFirstSequence());
+        assertEquals(8, snapshot.getCuts()[0]);
+        assertEquals(8, snapshot.getSections()[0].remaining());
+        assertEquals(5, snapshot.getSections()[0].getInt(4));
+        assertEquals(6, snapshot.getSections()[1].getInt(0));
+    }
+
+    // Test if a damaged snapshot is not loaded
+    @Test
+    public void testDamagedSnapshotSkipped() throws Exception {
+        Path directory = folder.newFolder("snapshots").toPath();
+        SnapshotStore store = new SnapshotStore(directory);
+        store.write(1, 0, new long[] {2}, new ByteBuffer[] {section(1, 2, 3)});
+        File file = directory.toFile().listFiles()[0];
+        try (RandomAccessFile snapshot = new RandomAccessFile(file, "rw")) {
+            snapshot.seek(file.length() - 8);
+            snapshot.write(7);
+        }
+        assertEquals(null, store.load());
+    }
+}
@@ -0,0 +1,66 @@
+package student.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StatusPatchTest {
+    private static GameStatus status(String message, List<String> take, List<String> drop) {
+        Map<String, List<String>> options = new HashMap<>();
+        options.put("go", Arrays.asList("practice", "out"));
+        options.put("take", take);
+        options.put("drop", drop);
+        return new GameStatus(false, 1, message, "image", null, new AdventureState(), options);
+    }
+
+    // Test if a take only lists the two changed item lists
+    @Test
+    public void testDiffItemLists() {
+        GameStatus before = status("A long room", Arrays.asList("dog", "Sword"), null);
+        GameStatus after = status("A long room", Collections.singletonList("Sword"), Collections.singletonList("dog"));
+        StatusPatch patch = StatusPatch.diff(before, after, 3, 4);
+        assertEquals(Integer.valueOf(3), patch.getBase());
+        assertEquals(4, patch.getVersion());
+        assertEquals(1, patch.getSet().size());
+        Map<?, ?> options = (Map<?, ?>) patch.getSet().get("commandOptions");
+        assertEquals(Collections.singletonList("Sword"), options.get("take"));
+        assertEquals(Collections.singletonList("dog"), options.get("drop"));
+        assertNull(patch.getUnset());
+    }
+
+    // Test if fields that became null are unset
+    @Test
+    public void testDiffUnset() {
+        GameStatus before = status("Room", null, Collections.singletonList("dog"));
+        GameStatus after = new GameStatus(false, 1, "History", null, null, new AdventureState(),
+                before.getCommandOptions());
+        StatusPatch patch = StatusPatch.diff(before, after, 0, 1);
+        assertEquals("History", patch.getSet().get("message"));
+        assertEquals(Collections.singletonList("imageUrl"), patch.getUnset());
+    }
+
+    // Test if an unchanged state gives an empty patch, written without the empty parts
+    @Test
+    public void testDiffNothing() throws Exception {
+        GameStatus before = status("Room", null, null);
+        StatusPatch patch = StatusPatch.diff(before, status("Room", null, null), 5, 6);
+        assertEquals("{\"id\":1,\"version\":6,\"base\":5}", new ObjectMapper().writeValueAsString(patch));
+    }
+
+    // Test if a resync holds the whole state
+    @Test
+    public void testResync() {
+        GameStatus current = status("Room", null, null);
+        StatusPatch patch = StatusPatch.resync(current, 7);
+        assertTrue(patch.getResync());
+        assertEquals(current, patch.getStatus());
+        assertNull(patch.getBase());
+    }
+}
@@ -0,0 +1,147 @@
+package student.server;
+
+import org.glassfish.jersey.media.sse.OutboundEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import javax.ws.rs.sse.OutboundSseEvent;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseBroadcaster;
+import javax.ws.rs.sse.SseEventSink;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StatusPushHubTest {
+    MyAdventureService service;
+    StatusPushHub hub;
+    RecordingSink sink;
+
+    // Builds plain Jersey events, nothing is written to a connection
+    private static final Sse SSE = new Sse() {
+        @Override
+        public OutboundSseEvent.Builder newEventBuilder() {
+            return new OutboundEvent.Builder();
+        }
+
+        @Override
+        public SseBroadcaster newBroadcaster() {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    // Keeps the events sent to it
+    private static class RecordingSink implements SseEventSink {
+        final List<OutboundSseEvent> events = new ArrayList<>();
+        boolean closed;
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public CompletionStage<?> send(OutboundSseEvent event) {
+            events.add(event);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        service = new MyAdventureService();
+        // Flushed by hand in the tests
+        hub = new StatusPushHub(service, 60000, 60000);
+        sink = new RecordingSink();
+    }
+
+    @After
+    public void tearDown() {
+        hub.shutdown();
+        service.shutdown();
+    }
+
+    // Test if the current state is sent when subscribing
+    @Test
+    public void testSubscribeSendsState() throws Exception {
+        int id = service.newGame();
+        hub.subscribe(id, sink, SSE);
+        hub.flush().get();
+        assertEquals(1, sink.events.size());
+        assertEquals("status", sink.events.get(0).getName());
+        assertEquals(service.getEpoch() + "-" + id + ".0", sink.events.get(0).getId());
+    }
+
+    // Test if many changes between two flushes are sent as one event with the latest state
+    @Test
+    public void testChangesCoalesced() throws Exception {
+        int id = service.newGame();
+        hub.subscribe(id, sink, SSE);
+        hub.flush().get();
+        for (int i = 0; i < 10; i++) {
+            service.executeCommand(id, new Command("go", i % 2 == 0 ? "practice" : "out"));
+        }
+        hub.flush().get();
+        hub.flush().get();
+        assertEquals(2, sink.events.size());
+        assertEquals(service.getEpoch() + "-" + id + ".10", sink.events.get(1).getId());
+        assertEquals(10L, (long) hub.getStats().get("pushUpdates"));
+        assertEquals(2L, (long) hub.getStats().get("pushEvents"));
+    }
+
+    // Test if changes to other instances are not sent
+    @Test
+    public void testOtherInstanceIgnored() throws Exception {
+        int id = service.newGame();
+        int other = service.newGame();
+        hub.subscribe(id, sink, SSE);
+        hub.flush().get();
+        service.executeCommand(other, new Command("go", "practice"));
+        hub.flush().get();
+        assertEquals(1, sink.events.size());
+    }
+
+    // Test if a destroyed instance is told and the stream closed
+    @Test
+    public void testDestroyedInstanceGone() throws Exception {
+        int id = service.newGame();
+        hub.subscribe(id, sink, SSE);
+        hub.flush().get();
+        service.destroyGame(id);
+        hub.flush().get();
+        assertEquals("gone", sink.events.get(1).getName());
+        assertTrue(sink.closed);
+        assertEquals(0L, (long) hub.getStats().get("pushConnections"));
+    }
+
+    // Test if the heartbeat finds instances ended without a change, like a bulk delete
+    @Test
+    public void testHeartbeatFindsEndedInstance() throws Exception {
+        int id = service.newGame();
+        hub.subscribe(id, sink, SSE);
+        hub.flush().get();
+        service.destroyGames(id, id);
+        hub.heartbeat().get();
+        assertEquals("gone", sink.events.get(sink.events.size() - 1).getName());
+        assertTrue(sink.closed);
+    }
+
+    // Test if closed connections are dropped
+    @Test
+    public void testClosedSinkDropped() throws Exception {
+        int id = service.newGame();
+        hub.subscribe(id, sink, SSE);
+        hub.flush().get();
+        sink.close();
+        hub.heartbeat().get();
+        assertEquals(0L, (long) hub.getStats().get("pushConnections"));
+    }
+}
@@ -0,0 +1,74 @@
+package student.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import student.adventure.GameEngine;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares bytes allocated and time per response of Jackson with GameStatusWriter, writing the statuses
+ * of a walk through the game to a stream that drops everything. Run it with: StatusWriterBenchmark [responses]
+ */
+public class StatusWriterBenchmark {
+    private static final String[] DIRECTIONS = {"practice", "out", "fight", "practice", "out", "vacation"};
+    private static final OutputStream NOWHERE = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    /**
+     * Writes one status to the stream.
+     */
+    private interface StatusSink {
+        void write(GameStatus status) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int responses = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        List<GameStatus> statuses = walk();
+        ObjectMapper mapper = new ObjectMapper();
+        GameStatusWriter writer = new GameStatusWriter();
+        for (int round = 0; round < 3; round++) {
+            run("jackson", responses, statuses, status -> mapper.writeValue(NOWHERE, status));
+            run("writer ", responses, statuses, status -> writer.writeTo(status, GameStatus.class, GameStatus.class,
+                    null, null, null, NOWHERE));
+        }
+    }
+
+    private static List<GameStatus> walk() throws Exception {
+        GameEngine engine = new GameEngine();
+        List<GameStatus> statuses = new ArrayList<>();
+        GameStatus status = engine.startGame("game.json", 1);
+        statuses.add(status);
+        status = engine.runGameServer(status, new Command("take", "dog"));
+        statuses.add(status);
+        for (String direction : DIRECTIONS) {
+            status = engine.runGameServer(status, new Command("go", direction));
+            statuses.add(status);
+        }
+        return statuses;
+    }
+
+    private static void run(String name, int responses, List<GameStatus> statuses, StatusSink sink)
+            throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < responses; i++) {
+            sink.write(statuses.get(i % statuses.size()));
+        }
+        long nanos = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        System.out.printf("%s: %,d bytes allocated per response, %,.0f ns per response%n",
+                name, allocated / responses, (double) nanos / responses);
+    }
+}
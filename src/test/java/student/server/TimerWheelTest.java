@@ -0,0 +1,57 @@
+package student.server;
+
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+
+public class TimerWheelTest {
+    TimerWheel wheel = new TimerWheel(8, 0);
+    List<Integer> due = new ArrayList<>();
+
+    @Test
+    public void testAdvance() {
+        wheel.schedule(1, 3);
+        wheel.schedule(2, 5);
+        wheel.schedule(3, 3);
+        wheel.advance(2, due::add);
+        assertEquals(Collections.emptyList(), due);
+        wheel.advance(4, due::add);
+        assertEquals(Arrays.asList(1, 3), due);
+        assertEquals(1, wheel.size());
+    }
+
+    // A past tick means the next tick
+    @Test
+    public void testSchedulePast() {
+        wheel.advance(10, due::add);
+        wheel.schedule(7, 2);
+        wheel.advance(11, due::add);
+        assertEquals(Arrays.asList(7), due);
+    }
+
+    // A deadline past the end of the wheel comes early and can be put back
+    @Test
+    public void testFarDeadline() {
+        wheel.schedule(9, 100);
+        wheel.advance(8, id -> {
+            due.add(id);
+            wheel.schedule(id, 100);
+        });
+        assertEquals(Arrays.asList(9), due);
+        assertEquals(1, wheel.size());
+    }
+
+    // After a long pause every bucket is still visited
+    @Test
+    public void testLongPause() {
+        for (int id = 0; id < 8; id++) {
+            wheel.schedule(id, id + 1);
+        }
+        wheel.advance(1000, due::add);
+        assertEquals(8, due.size());
+        assertEquals(1000, wheel.getCurrentTick());
+    }
+}